@@ -0,0 +1,60 @@
+package pos.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import pos.model.Pricing;
+
+/**
+ * Generates reproducible pricing and shopping carts for benchmarks.
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {}
+
+    /**
+     * Product code of the product with the given number
+     */
+    public static String productCode(int n) {
+        return String.format("P%06d", n);
+    }
+
+    /**
+     * Generate pricing for the given number of products. Every product has the given number
+     * of pricing tiers, with counts 1, 3, 6, 12, etc. and prices with two decimal places.
+     */
+    public static Pricing[] pricing(int products, int tiers, long seed) {
+        Random random = new Random(seed);
+        List<Pricing> pricings = new ArrayList<>(products * tiers);
+        for (int n = 0; n < products; n++) {
+            String code = productCode(n);
+            long unitPrice = 10 + random.nextInt(10_000);
+            for (int t = 0; t < tiers; t++) {
+                int count = t == 0 ? 1 : 3 << (t - 1);
+                // larger packs are cheaper per unit
+                long price = unitPrice * count * (100 - 5 * t) / 100;
+                pricings.add(new Pricing(code, count, BigDecimal.valueOf(price, 2)));
+            }
+        }
+        return pricings.toArray(new Pricing[0]);
+    }
+
+    /**
+     * Generate a sequence of scans of the given number of distinct products (the cart size),
+     * each scanned between 1 and {@code maxQuantity} times.
+     */
+    public static String[] scans(int products, int cartSize, int maxQuantity, long seed) {
+        Random random = new Random(seed);
+        List<String> scans = new ArrayList<>();
+        for (int i = 0; i < cartSize; i++) {
+            String code = productCode(random.nextInt(products));
+            for (int q = 1 + random.nextInt(maxQuantity); q > 0; q--) {
+                scans.add(code);
+            }
+        }
+        return scans.toArray(new String[0]);
+    }
+
+}
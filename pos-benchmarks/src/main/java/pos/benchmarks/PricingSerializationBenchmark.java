@@ -0,0 +1,79 @@
+package pos.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cl.json.JsonMapper;
+import pos.model.BinaryCodec;
+import pos.model.Pricing;
+
+/**
+ * JSON serialization of {@code Pricing[]}, as done by the client (cl-json) and the server (Jackson),
+ * compared to the binary format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PricingSerializationBenchmark {
+
+    @Param({"100", "10000"})
+    private int catalogSize;
+
+    private Pricing[] pricings;
+    private String json;
+    private byte[] binary;
+    private ObjectMapper objectMapper;
+    private JsonMapper jsonMapper;
+
+    @Setup
+    public void setup() throws IOException {
+        pricings = BenchmarkData.pricing(catalogSize, 2, 1);
+        objectMapper = new ObjectMapper();
+        jsonMapper = JsonMapper.getJsonMapper();
+        json = objectMapper.writeValueAsString(pricings);
+        binary = BinaryCodec.encodePricing(pricings);
+    }
+
+    @Benchmark
+    public String clJsonToJson() {
+        return jsonMapper.toJson(pricings);
+    }
+
+    @Benchmark
+    public String jacksonToJson() throws IOException {
+        return objectMapper.writeValueAsString(pricings);
+    }
+
+    @Benchmark
+    public Pricing[] jacksonFromJson() throws IOException {
+        return objectMapper.readValue(json, Pricing[].class);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return BinaryCodec.encodePricing(pricings);
+    }
+
+    @Benchmark
+    public Pricing[] binaryDecode() {
+        return BinaryCodec.decodePricing(binary);
+    }
+
+}
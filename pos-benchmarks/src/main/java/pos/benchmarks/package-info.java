@@ -0,0 +1,4 @@
+/**
+ * JMH benchmarks which do not need access to the server internals, and benchmark test data.
+ */
+package pos.benchmarks;
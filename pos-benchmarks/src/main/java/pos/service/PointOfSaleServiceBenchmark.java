@@ -0,0 +1,99 @@
+package pos.service;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pos.benchmarks.BenchmarkData;
+import pos.service.TerminalRegistry.RejectionPolicy;
+
+/**
+ * {@link PointOfSaleServiceImpl} under contention: many threads either share one terminal
+ * (handheld and fixed scanner on the same lane), or each uses a terminal of its own
+ * (many lanes), while terminals are activated and closed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+public class PointOfSaleServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Service {
+
+        @Param({"10000"})
+        int catalogSize;
+
+        PointOfSaleServiceImpl service;
+        String sharedTerminalId;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            service = new PointOfSaleServiceImpl(
+                    new TerminalRegistry(3600, 1_000_000, RejectionPolicy.EVICT_LEAST_RECENTLY_USED, 3600));
+            service.publishCatalog(BenchmarkData.pricing(catalogSize, 3, 1));
+            sharedTerminalId = service.activate();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            service.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lane {
+
+        String terminalId;
+        String[] scans;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setup(Service s) {
+            terminalId = s.service.activate();
+            scans = BenchmarkData.scans(s.catalogSize, 100, 5, Thread.currentThread().getId());
+        }
+
+        String nextScan() {
+            String s = scans[next];
+            next = next + 1 == scans.length ? 0 : next + 1;
+            return s;
+        }
+    }
+
+    @Benchmark
+    public void scanSharedTerminal(Service s, Lane lane) {
+        s.service.scan(s.sharedTerminalId, lane.nextScan());
+    }
+
+    @Benchmark
+    public void scanOwnTerminal(Service s, Lane lane) {
+        s.service.scan(lane.terminalId, lane.nextScan());
+    }
+
+    @Benchmark
+    public BigDecimal checkout(Service s, Lane lane) {
+        String terminalId = s.service.activate();
+        for (int i = 0; i < 10; i++) {
+            s.service.scan(terminalId, lane.nextScan());
+        }
+        return s.service.calculateTotal(terminalId);
+    }
+
+}
@@ -0,0 +1,98 @@
+package pos.service;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pos.benchmarks.BenchmarkData;
+import pos.model.Pricing;
+
+/**
+ * Pricing engine hot path: loading pricing, scanning, and calculating the total of a single
+ * {@link PointOfSaleTerminalImpl}, across catalog sizes, pricing tier counts, pricing strategies and cart sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PointOfSaleTerminalBenchmark {
+
+    @State(Scope.Thread)
+    public static class Catalog {
+
+        @Param({"100", "10000", "50000"})
+        int catalogSize;
+
+        @Param({"1", "3", "5"})
+        int tiers;
+
+        @Param({"GREEDY", "OPTIMAL"})
+        PricingStrategy strategy;
+
+        Pricing[] pricings;
+
+        @Setup
+        public void setup() {
+            pricings = BenchmarkData.pricing(catalogSize, tiers, 1);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cart {
+
+        @Param({"10", "100", "1000"})
+        int cartSize;
+
+        PointOfSaleTerminalImpl terminal;
+        String[] scans;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setup(Catalog catalog) {
+            terminal = new PointOfSaleTerminalImpl(PriceCatalog.empty(catalog.strategy));
+            terminal.setPricing(catalog.pricings);
+            scans = BenchmarkData.scans(catalog.catalogSize, cartSize, 20, 2);
+            for (String s : scans) {
+                terminal.scan(s);
+            }
+        }
+
+        String nextScan() {
+            String s = scans[next];
+            next = next + 1 == scans.length ? 0 : next + 1;
+            return s;
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public PointOfSaleTerminalImpl setPricing(Catalog catalog) {
+        PointOfSaleTerminalImpl terminal = new PointOfSaleTerminalImpl(PriceCatalog.empty(catalog.strategy));
+        terminal.setPricing(catalog.pricings);
+        return terminal;
+    }
+
+    @Benchmark
+    public void scan(Cart cart) {
+        cart.terminal.scan(cart.nextScan());
+    }
+
+    @Benchmark
+    public BigDecimal calculateTotal(Cart cart) {
+        return cart.terminal.calculateTotal();
+    }
+
+}
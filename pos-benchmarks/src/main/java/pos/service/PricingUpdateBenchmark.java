@@ -0,0 +1,106 @@
+package pos.service;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pos.benchmarks.BenchmarkData;
+import pos.model.Pricing;
+import pos.model.PricingDelta;
+
+/**
+ * Price changes of a few products: a batch of {@link PricingDelta}s applied to a catalog, against
+ * a full reload of the changed price list, and scans of a terminal while its pricing is updated.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Group)
+public class PricingUpdateBenchmark {
+
+    @Param({"10000", "100000"})
+    int catalogSize;
+
+    @Param({"1", "100"})
+    int batchSize;
+
+    PriceCatalog catalog;
+    Pricing[] pricing;
+
+    // two versions of the price changes, which are applied in turns, so that every batch changes the catalog
+    PricingDelta[][] deltas;
+    Pricing[][] reloads;
+    int turn;
+
+    PointOfSaleTerminalImpl terminal;
+    String[] scans;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pricing = BenchmarkData.pricing(catalogSize, 3, 1);
+        catalog = PriceCatalog.of(pricing);
+        deltas = new PricingDelta[2][batchSize];
+        reloads = new Pricing[2][];
+        for (int version = 0; version < 2; version++) {
+            reloads[version] = pricing.clone();
+            for (int i = 0; i < batchSize; i++) {
+                // per-unit tiers of evenly spread products
+                int tier = (int) ((long) i * catalogSize / batchSize) * 3;
+                Pricing p = pricing[tier];
+                Pricing changed = new Pricing(p.getProductCode(), p.getCount(), p.getPrice().add(BigDecimal.valueOf(version + 1, 2)));
+                deltas[version][i] = PricingDelta.upsert(changed);
+                reloads[version][tier] = changed;
+            }
+        }
+        terminal = new PointOfSaleTerminalImpl(catalog);
+        scans = BenchmarkData.scans(catalogSize, 100, 5, 1);
+    }
+
+    @Benchmark
+    public PriceCatalog applyDeltas() {
+        turn ^= 1;
+        return catalog.withDeltas(deltas[turn]);
+    }
+
+    @Benchmark
+    public PriceCatalog fullReload() {
+        turn ^= 1;
+        return PriceCatalog.of(reloads[turn]);
+    }
+
+    @Benchmark
+    @Group("scanWhileUpdating")
+    @GroupThreads(3)
+    public void scan() {
+        // racing threads may skip or repeat a scan, which does not matter here
+        int n = next;
+        next = n + 1 == scans.length ? 0 : n + 1;
+        terminal.scan(scans[n]);
+    }
+
+    @Benchmark
+    @Group("scanWhileUpdating")
+    @GroupThreads(1)
+    public void update() {
+        turn ^= 1;
+        terminal.updatePricing(deltas[turn]);
+    }
+
+}
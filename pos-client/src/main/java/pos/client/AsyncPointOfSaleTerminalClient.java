@@ -0,0 +1,207 @@
+package pos.client;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import cl.json.JsonMapper;
+import pos.client.http.AsyncHTTPClient;
+import pos.client.http.HTTPClient.HTTPResponse;
+import pos.model.BinaryCodec;
+import pos.model.PointOfSaleTerminal;
+import pos.model.Pricing;
+import pos.model.PricingDelta;
+
+/**
+ * Non-blocking HTTP Java client for POS terminal service. It has the same operations as
+ * {@link PointOfSaleTerminal}, but they return immediately with a {@code CompletableFuture} of
+ * their result, so that a few threads may drive any number of terminals.
+ *
+ * Operations on one terminal are pipelined: the caller does not have to wait for an operation
+ * to complete before calling the next one. Scans are sent without waiting for each other, so that
+ * any number of them may be in flight at once, since the order of scans does not change the cart.
+ * Every other operation is sent once all the operations called before it have completed, and the
+ * operations called after it wait for it, so that, for example, a total always includes all the
+ * products scanned before it was requested, and a scan is priced with the pricing set before it.
+ * A failed operation does not cancel the following ones.
+ *
+ * Futures complete exceptionally with {@link PointOfSaleTerminalClientException} when the HTTP
+ * status is not OK.  They are completed by the I/O threads of the HTTP client, so actions attached
+ * to them should never block.
+ *
+ * Like {@link PointOfSaleTerminalClient}, the client sends JSON messages, unless the
+ * {@link WireFormat#BINARY} format is requested and supported by the service, and it sets pricing
+ * by its content hash first, like {@link PointOfSaleTerminalClient}.
+ */
+public class AsyncPointOfSaleTerminalClient {
+
+    private static final String HOST = "http://localhost:8080"; // normally is not hard-coded, but comes from configuration
+    private static final String URN_TERMINAL = "/terminal";
+    private static final String URN_TERMINAL_ACTIVATE = URN_TERMINAL + "/activate";
+    private static final String URN_PRICING = "/pricing";
+    private static final String URN_PRICING_DELTA = URN_PRICING + "/delta";
+    private static final String URN_PRICING_CACHED = URN_PRICING + "/cached/";
+    private static final String URN_SCAN = "/scan";
+    private static final String URN_SCAN_BATCH = URN_SCAN + "/batch";
+    private static final String URN_SUBTOTAL = "/subtotal";
+    private static final String URN_TOTAL = "/total";
+
+    // headers of a binary request without a body
+    private static final Map<String, String> BINARY_HEADERS = Collections.singletonMap("Content-Type", BinaryCodec.CONTENT_TYPE);
+
+    private static final int HTTP_STATUS_OK = 200;
+    private static final int HTTP_STATUS_NOT_FOUND = 404;
+
+    private final String id;
+    private final AsyncHTTPClient httpClient;
+    private final JsonMapper jsonMapper;
+    private final WireFormat format;
+
+    // completion of the last operation which is not a scan, successful or not, which scans wait for,
+    // and of all the operations, which other operations wait for
+    private CompletableFuture<Void> barrier;
+    private CompletableFuture<Void> all;
+
+    private AsyncPointOfSaleTerminalClient(String id, AsyncHTTPClient httpClient, WireFormat format) {
+        this.id = id;
+        this.httpClient = httpClient;
+        this.format = format;
+        jsonMapper = JsonMapper.getJsonMapper();
+        barrier = all = CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Activate a new terminal with the given HTTP client. The HTTP client is not closed by the terminal client.
+     */
+    public static CompletableFuture<AsyncPointOfSaleTerminalClient> activate(AsyncHTTPClient httpClient) {
+        return activate(httpClient, WireFormat.JSON);
+    }
+
+    /**
+     * Activate a new terminal with the given HTTP client, which is going to call the service
+     * in the given format. The HTTP client is not closed by the terminal client.
+     */
+    public static CompletableFuture<AsyncPointOfSaleTerminalClient> activate(AsyncHTTPClient httpClient, WireFormat format) {
+        if (format == WireFormat.BINARY) {
+            Boolean supported = WireFormat.binarySupport(httpClient);
+            if (supported == null) {
+                // asked once per HTTP client, like the blocking client does
+                return httpClient.get(HOST + WireFormat.URN_FORMAT, Collections.emptyMap(), BINARY_HEADERS)
+                        .thenCompose(r -> activate(httpClient, WireFormat.binarySupport(httpClient, r) ? format : WireFormat.JSON));
+            }
+            if (supported) {
+                return httpClient.postBytes(HOST + URN_TERMINAL_ACTIVATE, new byte[0], BinaryCodec.CONTENT_TYPE)
+                        .thenApply(r -> new AsyncPointOfSaleTerminalClient(
+                                BinaryCodec.decodeString(checkResponse(r).getContent()), httpClient, format));
+            }
+        }
+        return httpClient.postForm(HOST + URN_TERMINAL_ACTIVATE, Collections.emptyMap())
+                .thenApply(r -> new AsyncPointOfSaleTerminalClient(checkResponse(r).getBody(), httpClient, format));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Format of messages, which is JSON if the binary format has been requested,
+     * but it is not supported by the service
+     */
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Set pricing by its content hash, and send it in full if the service has not cached it.
+     * The pricing is encoded only when it is sent.
+     */
+    public CompletableFuture<Void> setPricing(Pricing... pricings) {
+        Supplier<CompletableFuture<HTTPResponse>> upload = format == WireFormat.BINARY ?
+                () -> httpClient.putBytes(url(URN_PRICING), BinaryCodec.encodePricing(pricings), BinaryCodec.CONTENT_TYPE) :
+                () -> httpClient.putJson(url(URN_PRICING), jsonMapper.toJson(pricings));
+        String hash = PointOfSaleTerminalClient.pricingHash(pricings);
+        if (hash == null) {
+            return enqueue(upload).thenAccept(r -> {});
+        }
+        return enqueue(() -> httpClient.putJson(url(URN_PRICING_CACHED + hash), "")
+                .thenCompose(r -> r.getStatusCode() == HTTP_STATUS_NOT_FOUND ? upload.get() : CompletableFuture.completedFuture(r)))
+                .thenAccept(r -> {});
+    }
+
+    /**
+     * Send the pricing changes, which are always sent in JSON
+     */
+    public CompletableFuture<Void> updatePricing(PricingDelta... deltas) {
+        String json = jsonMapper.toJson(deltas);
+        return enqueue(() -> httpClient.postJson(url(URN_PRICING_DELTA), json)).thenAccept(r -> {});
+    }
+
+    public CompletableFuture<Void> scan(String productCode) {
+        if (format == WireFormat.BINARY) {
+            byte[] body = BinaryCodec.encodeString(productCode);
+            return enqueueScan(() -> httpClient.putBytes(url(URN_SCAN), body, BinaryCodec.CONTENT_TYPE)).thenAccept(r -> {});
+        }
+        String json = jsonMapper.toJson(productCode);
+        return enqueueScan(() -> httpClient.putJson(url(URN_SCAN), json)).thenAccept(r -> {});
+    }
+
+    public CompletableFuture<Void> scanAll(Map<String, Integer> quantities) {
+        if (format == WireFormat.BINARY) {
+            byte[] body = BinaryCodec.encodeQuantities(quantities);
+            return enqueueScan(() -> httpClient.putBytes(url(URN_SCAN_BATCH), body, BinaryCodec.CONTENT_TYPE)).thenAccept(r -> {});
+        }
+        String json = jsonMapper.toJson(quantities);
+        return enqueueScan(() -> httpClient.putJson(url(URN_SCAN_BATCH), json)).thenAccept(r -> {});
+    }
+
+    public CompletableFuture<BigDecimal> subtotal() {
+        if (format == WireFormat.BINARY) {
+            return enqueue(() -> httpClient.get(url(URN_SUBTOTAL), Collections.emptyMap(), BINARY_HEADERS))
+                    .thenApply(r -> BinaryCodec.decodeDecimal(r.getContent()));
+        }
+        return enqueue(() -> httpClient.get(url(URN_SUBTOTAL)))
+                .thenApply(r -> new BigDecimal(r.getBody()));
+    }
+
+    public CompletableFuture<BigDecimal> calculateTotal() {
+        if (format == WireFormat.BINARY) {
+            return enqueue(() -> httpClient.postBytes(url(URN_TOTAL), new byte[0], BinaryCodec.CONTENT_TYPE))
+                    .thenApply(r -> BinaryCodec.decodeDecimal(r.getContent()));
+        }
+        return enqueue(() -> httpClient.postForm(url(URN_TOTAL), Collections.emptyMap()))
+                .thenApply(r -> new BigDecimal(r.getBody()));
+    }
+
+    // send the request when all the previous operations complete, successfully or not
+    private synchronized CompletableFuture<HTTPResponse> enqueue(Supplier<CompletableFuture<HTTPResponse>> request) {
+        CompletableFuture<HTTPResponse> f = send(all, request);
+        barrier = all = f.handle((r, e) -> null);
+        return f;
+    }
+
+    // send the scan when the last operation which is not a scan completes, without waiting for other scans
+    private synchronized CompletableFuture<HTTPResponse> enqueueScan(Supplier<CompletableFuture<HTTPResponse>> request) {
+        CompletableFuture<HTTPResponse> f = send(barrier, request);
+        all = CompletableFuture.allOf(all, f.handle((r, e) -> null));
+        return f;
+    }
+
+    private static CompletableFuture<HTTPResponse> send(CompletableFuture<Void> after,
+            Supplier<CompletableFuture<HTTPResponse>> request) {
+        return after.thenCompose(ignored -> request.get()).thenApply(AsyncPointOfSaleTerminalClient::checkResponse);
+    }
+
+    private String url(String urn) {
+        return HOST + URN_TERMINAL + "/" + id + urn;
+    }
+
+    private static HTTPResponse checkResponse(HTTPResponse r) {
+        if (r.getStatusCode() != HTTP_STATUS_OK) {
+            throw new PointOfSaleTerminalClientException(r);
+        }
+        return r;
+    }
+
+}
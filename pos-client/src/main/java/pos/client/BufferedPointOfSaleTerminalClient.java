@@ -0,0 +1,246 @@
+package pos.client;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import pos.model.PointOfSaleTerminal;
+import pos.model.PointOfSaleTerminalException;
+import pos.model.Pricing;
+import pos.model.PricingDelta;
+import pos.model.UnknownProductException;
+
+/**
+ * Terminal which buffers scans and sends them to another terminal, usually a {@link PointOfSaleTerminalClient},
+ * in batches of product quantities, so that a fast lane makes one call per batch instead of one call per item.
+ *
+ * Buffered scans are flushed (sent with {@link PointOfSaleTerminal#scanAll(Map)}) when the given number of them
+ * is reached, when the oldest of them has waited for the given time, and before any other operation, so that
+ * totals always include all the products scanned before them.
+ *
+ * Scans are not checked when they are buffered. When the service rejects a batch, because some of its products
+ * are not found in pricing, every product of the batch is sent on its own, and the operation which flushed the
+ * buffer throws {@link UnscannedProductsException} with the rejected products, after the rest of them have been
+ * added to the shopping cart. When a batch fails for another reason, such as a timeout, it may still have been
+ * added, so its scans are removed from the buffer without being sent again, and the operation throws
+ * {@link UnconfirmedScansException} with them. Errors of flushes on time are thrown by the next operation
+ * (a scan is buffered before it throws).
+ *
+ * The client is thread-safe.
+ */
+public class BufferedPointOfSaleTerminalClient implements PointOfSaleTerminal, AutoCloseable {
+
+    private static final int HTTP_STATUS_UNPROCESSABLE_ENTITY = 422;
+
+    private final PointOfSaleTerminal terminal;
+    private final int maxScans;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+
+    // buffered product quantities in the order of their first scans
+    private final Map<String, Integer> buffer;
+    private int buffered;
+    private ScheduledFuture<?> scheduledFlush;
+
+    // error of the last flush on time, which is thrown by the next operation
+    private RuntimeException deferredError;
+
+    /**
+     * Create a client which flushes scans only when {@code maxScans} of them are buffered, and before
+     * other operations.
+     */
+    public BufferedPointOfSaleTerminalClient(PointOfSaleTerminal terminal, int maxScans) {
+        this(terminal, maxScans, 0, null);
+    }
+
+    /**
+     * Create a client which also flushes scans at most {@code maxDelayMillis} after the first of them
+     * has been buffered, with the given scheduler, which may be shared by many clients.
+     */
+    public BufferedPointOfSaleTerminalClient(PointOfSaleTerminal terminal, int maxScans, long maxDelayMillis,
+            ScheduledExecutorService scheduler) {
+        if (maxScans <= 0) {
+            throw new IllegalArgumentException("maxScans must be positive, but was " + maxScans);
+        }
+        if (scheduler != null && maxDelayMillis <= 0) {
+            throw new IllegalArgumentException("maxDelayMillis must be positive, but was " + maxDelayMillis);
+        }
+        this.terminal = terminal;
+        this.maxScans = maxScans;
+        this.maxDelayMillis = maxDelayMillis;
+        this.scheduler = scheduler;
+        buffer = new LinkedHashMap<>();
+    }
+
+    @Override
+    public String getId() {
+        return terminal.getId();
+    }
+
+    @Override
+    public synchronized void setPricing(Pricing... pricings) {
+        flush();
+        terminal.setPricing(pricings);
+    }
+
+    @Override
+    public synchronized void updatePricing(PricingDelta... deltas) {
+        flush();
+        terminal.updatePricing(deltas);
+    }
+
+    /**
+     * Buffer the scan, and flush the buffer when it is full.
+     *
+     * @throws UnscannedProductsException when the buffer is flushed, and some of its products are rejected
+     */
+    @Override
+    public synchronized void scan(String productCode) {
+        if (productCode == null) {
+            throw new PointOfSaleTerminalException("Product code must not be null");
+        }
+        buffer.merge(productCode, 1, Integer::sum);
+        if (++buffered >= maxScans) {
+            flush();
+        } else {
+            if (scheduledFlush == null && scheduler != null) {
+                scheduledFlush = scheduler.schedule(this::flushOnTime, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+            throwDeferredError();
+        }
+    }
+
+    /**
+     * Flush the buffer, and send the batch as it is, so that it is still applied as a whole.
+     */
+    @Override
+    public synchronized void scanAll(Map<String, Integer> quantities) {
+        flush();
+        terminal.scanAll(quantities);
+    }
+
+    @Override
+    public synchronized BigDecimal subtotal() {
+        flush();
+        return terminal.subtotal();
+    }
+
+    @Override
+    public synchronized BigDecimal calculateTotal() {
+        flush();
+        return terminal.calculateTotal();
+    }
+
+    /**
+     * Number of buffered scans, which have not been sent yet
+     */
+    public synchronized int getBuffered() {
+        return buffered;
+    }
+
+    /**
+     * Send all the buffered scans.
+     *
+     * @throws UnscannedProductsException when some of the products are rejected by the service
+     * @throws UnconfirmedScansException when sent scans may not have been added, they are no longer buffered
+     */
+    public synchronized void flush() {
+        throwDeferredError();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (buffered == 0) {
+            return;
+        }
+        try {
+            terminal.scanAll(buffer);
+            clear();
+            return;
+        } catch (RuntimeException e) {
+            if (!isRejected(e)) {
+                UnconfirmedScansException unconfirmed = new UnconfirmedScansException(buffer, e);
+                clear();
+                throw unconfirmed;
+            }
+        }
+        // find the rejected products one by one
+        Map<String, Integer> rejected = new LinkedHashMap<>();
+        List<RuntimeException> causes = new ArrayList<>();
+        for (Iterator<Map.Entry<String, Integer>> it = buffer.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Integer> e = it.next();
+            try {
+                terminal.scanAll(Collections.singletonMap(e.getKey(), e.getValue()));
+            } catch (RuntimeException ex) {
+                if (!isRejected(ex)) {
+                    // the products after this one have not been sent, and stay in the buffer
+                    UnconfirmedScansException unconfirmed = new UnconfirmedScansException(
+                            Collections.singletonMap(e.getKey(), e.getValue()), ex);
+                    buffered -= e.getValue();
+                    it.remove();
+                    if (!rejected.isEmpty()) {
+                        unconfirmed.addSuppressed(new UnscannedProductsException(rejected, causes));
+                    }
+                    throw unconfirmed;
+                }
+                rejected.put(e.getKey(), e.getValue());
+                causes.add(ex);
+            }
+            buffered -= e.getValue();
+            it.remove();
+        }
+        if (!rejected.isEmpty()) {
+            throw new UnscannedProductsException(rejected, causes);
+        }
+    }
+
+    /**
+     * Flush the buffered scans.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private synchronized void flushOnTime() {
+        if (scheduledFlush == null) {
+            return; // flushed by another operation
+        }
+        scheduledFlush = null;
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            deferredError = e;
+        }
+    }
+
+    private void throwDeferredError() {
+        RuntimeException e = deferredError;
+        if (e != null) {
+            deferredError = null;
+            throw e;
+        }
+    }
+
+    private void clear() {
+        buffer.clear();
+        buffered = 0;
+    }
+
+    // whether the service has rejected products of the request, rather than failed to process it,
+    // for example, because the terminal is unknown
+    private static boolean isRejected(RuntimeException e) {
+        if (e instanceof PointOfSaleTerminalClientException) {
+            return ((PointOfSaleTerminalClientException) e).getHttpStatus() == HTTP_STATUS_UNPROCESSABLE_ENTITY;
+        }
+        return e instanceof UnknownProductException;
+    }
+
+}
@@ -1,20 +1,34 @@
 package pos.client;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Map;
 
 import cl.json.JsonMapper;
 import pos.client.http.ApacheHTTPClient;
 import pos.client.http.HTTPClient;
 import pos.client.http.HTTPClient.HTTPResponse;
+import pos.model.BinaryCodec;
 import pos.model.PointOfSaleTerminal;
 import pos.model.Pricing;
+import pos.model.PricingDelta;
+import pos.model.PricingDigest;
 
 /**
  * HTTP Java client for POS terminal service. It implements the same {@link PointOfSaleTerminal} interface,
  * but plainly delegates its functionality to the REST service.
  * 
  * The client throws {@link PointOfSaleTerminalClientException} when the HTTP status is not OK.
+ * 
+ * Unless an {@link HTTPClient} is given explicitly, all terminal clients share one pooled HTTP client,
+ * so that subsequent calls reuse already established connections.
+ * 
+ * Messages are JSON, unless the {@link WireFormat#BINARY} format is requested. When the service
+ * does not support the binary format, the client falls back to JSON.
+ * 
+ * Pricing is first set by its content hash (see {@link PricingDigest}), which is enough when the service
+ * has cached the same price list, and it is sent in full only when the service does not have it.
  */
 public class PointOfSaleTerminalClient implements PointOfSaleTerminal {
     
@@ -22,19 +36,53 @@ public class PointOfSaleTerminalClient implements PointOfSaleTerminal {
     private static final String URN_TERMINAL = "/terminal";
     private static final String URN_TERMINAL_ACTIVATE = URN_TERMINAL + "/activate";
     private static final String URN_PRICING = "/pricing";
+    private static final String URN_PRICING_DELTA = URN_PRICING + "/delta";
+    private static final String URN_PRICING_CACHED = URN_PRICING + "/cached/";
     private static final String URN_SCAN = "/scan";
+    private static final String URN_SCAN_BATCH = URN_SCAN + "/batch";
+    private static final String URN_SUBTOTAL = "/subtotal";
     private static final String URN_TOTAL = "/total";
     
+    // headers of a binary request without a body
+    private static final Map<String, String> BINARY_HEADERS = Collections.singletonMap("Content-Type", BinaryCodec.CONTENT_TYPE);
+    
     private static final int HTTP_STATUS_OK = 200;
+    private static final int HTTP_STATUS_NOT_FOUND = 404;
     
     private final String id;
     private final HTTPClient httpClient;
     private final JsonMapper jsonMapper;
+    private final WireFormat format;
     
     public PointOfSaleTerminalClient() {
-        httpClient = new ApacheHTTPClient();
+        this(DefaultHTTPClientHolder.INSTANCE);
+    }
+    
+    /**
+     * Create a terminal client which calls the service with the given HTTP client. 
+     * The HTTP client is not closed by the terminal client.
+     */
+    public PointOfSaleTerminalClient(HTTPClient httpClient) {
+        this(httpClient, WireFormat.JSON);
+    }
+    
+    /**
+     * Create a terminal client which calls the service with the given HTTP client in the given format.
+     * The HTTP client is not closed by the terminal client.
+     */
+    public PointOfSaleTerminalClient(HTTPClient httpClient, WireFormat format) {
+        this.httpClient = httpClient;
         jsonMapper = JsonMapper.getJsonMapper();
+        if (format == WireFormat.BINARY && supportsBinary(httpClient)) {
+            HTTPResponse r = httpClient.postBytes(HOST + URN_TERMINAL_ACTIVATE, new byte[0], BinaryCodec.CONTENT_TYPE);
+            checkResponse(r);
+            this.format = format;
+            id = BinaryCodec.decodeString(r.getContent());
+            return;
+        }
+        this.format = WireFormat.JSON;
         HTTPResponse r = httpClient.postForm(HOST + URN_TERMINAL_ACTIVATE, Collections.emptyMap());
+        checkResponse(r);
         id = r.getBody();
     }
 
@@ -42,26 +90,104 @@ public class PointOfSaleTerminalClient implements PointOfSaleTerminal {
     public String getId() {
         return id;
     }
+    
+    /**
+     * Format of messages, which is JSON if the binary format has been requested, 
+     * but it is not supported by the service
+     */
+    public WireFormat getFormat() {
+        return format;
+    }
 
+    /**
+     * Set pricing by its content hash, and send it in full if the service has not cached it
+     */
     @Override
     public void setPricing(Pricing... pricings) {
-        HTTPResponse r = httpClient.putJson(url(URN_PRICING), jsonMapper.toJson(pricings));
+        String hash = pricingHash(pricings);
+        if (hash != null) {
+            HTTPResponse r = httpClient.putJson(url(URN_PRICING_CACHED + hash), "");
+            if (r.getStatusCode() != HTTP_STATUS_NOT_FOUND) {
+                checkResponse(r);
+                return;
+            }
+        }
+        HTTPResponse r = format == WireFormat.BINARY ?
+                httpClient.putBytes(url(URN_PRICING), BinaryCodec.encodePricing(pricings), BinaryCodec.CONTENT_TYPE) :
+                httpClient.putJson(url(URN_PRICING), jsonMapper.toJson(pricings));
         checkResponse(r);
     }
 
+    /**
+     * Send the pricing changes. They are always sent in JSON, which is the only format the service
+     * accepts them in.
+     */
+    @Override
+    public void updatePricing(PricingDelta... deltas) {
+        checkResponse(httpClient.postJson(url(URN_PRICING_DELTA), jsonMapper.toJson(deltas)));
+    }
+
     @Override
     public void scan(String productCode) {
-        HTTPResponse r = httpClient.putJson(url(URN_SCAN), jsonMapper.toJson(productCode));
+        HTTPResponse r = format == WireFormat.BINARY ?
+                httpClient.putBytes(url(URN_SCAN), BinaryCodec.encodeString(productCode), BinaryCodec.CONTENT_TYPE) :
+                httpClient.putJson(url(URN_SCAN), jsonMapper.toJson(productCode));
         checkResponse(r);
     }
 
+    @Override
+    public void scanAll(Map<String, Integer> quantities) {
+        HTTPResponse r = format == WireFormat.BINARY ?
+                httpClient.putBytes(url(URN_SCAN_BATCH), BinaryCodec.encodeQuantities(quantities), BinaryCodec.CONTENT_TYPE) :
+                httpClient.putJson(url(URN_SCAN_BATCH), jsonMapper.toJson(quantities));
+        checkResponse(r);
+    }
+
+    @Override
+    public BigDecimal subtotal() {
+        if (format == WireFormat.BINARY) {
+            HTTPResponse r = httpClient.get(url(URN_SUBTOTAL), Collections.emptyMap(), BINARY_HEADERS);
+            checkResponse(r);
+            return BinaryCodec.decodeDecimal(r.getContent());
+        }
+        HTTPResponse r = httpClient.get(url(URN_SUBTOTAL));
+        checkResponse(r);
+        return new BigDecimal(r.getBody());
+    }
+
     @Override
     public BigDecimal calculateTotal() {
+        if (format == WireFormat.BINARY) {
+            HTTPResponse r = httpClient.postBytes(url(URN_TOTAL), new byte[0], BinaryCodec.CONTENT_TYPE);
+            checkResponse(r);
+            return BinaryCodec.decodeDecimal(r.getContent());
+        }
         HTTPResponse r = httpClient.postForm(url(URN_TOTAL), Collections.emptyMap());
         checkResponse(r);
         return new BigDecimal(r.getBody());
     }
     
+    // asked once per HTTP client, since a service without the binary format may accept a binary activation,
+    // and answer it in another format
+    private static boolean supportsBinary(HTTPClient httpClient) {
+        Boolean supported = WireFormat.binarySupport(httpClient);
+        if (supported != null) {
+            return supported;
+        }
+        return WireFormat.binarySupport(httpClient, httpClient.get(HOST + WireFormat.URN_FORMAT, Collections.emptyMap(), BINARY_HEADERS));
+    }
+    
+    /**
+     * Content hash of the pricing, or {@code null} if it is not worth caching, because it is empty,
+     * or it cannot be cached, because it is invalid
+     */
+    static String pricingHash(Pricing... pricings) {
+        if (pricings == null || pricings.length == 0 || Arrays.asList(pricings).contains(null)) {
+            return null;
+        }
+        return PricingDigest.of(pricings);
+    }
+    
     private String url(String urn) {
         return HOST + URN_TERMINAL + "/" + id + urn;
     }
@@ -71,5 +197,10 @@ public class PointOfSaleTerminalClient implements PointOfSaleTerminal {
             throw new PointOfSaleTerminalClientException(r);
         }
     }
+    
+    // lazily created HTTP client shared by all terminal clients for the lifetime of the JVM
+    private static final class DefaultHTTPClientHolder {
+        static final HTTPClient INSTANCE = new ApacheHTTPClient();
+    }
 
 }
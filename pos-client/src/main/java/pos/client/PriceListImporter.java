@@ -0,0 +1,111 @@
+package pos.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+import pos.client.http.HTTPClient;
+import pos.client.http.HTTPClient.HTTPResponse;
+import pos.model.PriceListFormat;
+
+/**
+ * HTTP Java client for bulk price list imports. Price lists are streamed to the service in chunks,
+ * so that neither the client nor the service has the whole list in memory.
+ *
+ * Progress is reported as the number of bytes sent so far, and the import methods return the number
+ * of imported {@code Pricing} objects. The client throws {@link PointOfSaleTerminalClientException}
+ * when the HTTP status is not OK, including a redirect to another node of a cluster which comes only after
+ * the price list has been sent, so that an import is never silently repeated with an exhausted stream.
+ */
+public class PriceListImporter {
+
+    private static final String HOST = "http://localhost:8080"; // normally is not hard-coded, but comes from configuration
+    private static final String URN_CATALOG_IMPORT = "/catalog/import";
+    private static final String URN_TERMINAL = "/terminal";
+    private static final String URN_PRICING_IMPORT = "/pricing/import";
+
+    private static final int HTTP_STATUS_OK = 200;
+
+    private final HTTPClient httpClient;
+
+    /**
+     * Create an importer which calls the service with the given HTTP client.
+     * The HTTP client is not closed by the importer.
+     */
+    public PriceListImporter(HTTPClient httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Import and publish a catalog of all the pricing in the price list. Nothing is published when
+     * the price list is invalid. The stream is not closed.
+     */
+    public int importCatalog(InputStream priceList, PriceListFormat format, LongConsumer progress) {
+        return upload(HOST + URN_CATALOG_IMPORT, priceList, format, progress);
+    }
+
+    /**
+     * Import the price list into the terminal's own pricing. When the price list is invalid,
+     * its batches set before the invalid line remain in effect. The stream is not closed.
+     */
+    public int importPricing(String terminalId, InputStream priceList, PriceListFormat format, LongConsumer progress) {
+        return upload(HOST + URN_TERMINAL + "/" + terminalId + URN_PRICING_IMPORT, priceList, format, progress);
+    }
+
+    private int upload(String url, InputStream priceList, PriceListFormat format, LongConsumer progress) {
+        HTTPResponse r = httpClient.putStream(url, new ProgressInputStream(priceList, progress), format.getContentType());
+        if (r.getStatusCode() != HTTP_STATUS_OK) {
+            throw new PointOfSaleTerminalClientException(r);
+        }
+        return Integer.parseInt(r.getBody().trim());
+    }
+
+    private static final class ProgressInputStream extends FilterInputStream {
+
+        private final LongConsumer progress;
+        private long count;
+
+        ProgressInputStream(InputStream in, LongConsumer progress) {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) advance(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) advance(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) advance(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the caller owns the stream
+        }
+
+        private void advance(long n) {
+            count += n;
+            progress.accept(count);
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package pos.client;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import pos.model.PointOfSaleTerminalException;
+
+/**
+ * Report scans which a {@link BufferedPointOfSaleTerminalClient} has sent, but which the service has
+ * not confirmed, for example because the request has timed out, so that they may or may not have been
+ * added to the shopping cart. The client does not send them again, since that could add them twice;
+ * the subtotal tells whether they have been added. The error of the request is the cause.
+ */
+@SuppressWarnings("serial")
+public class UnconfirmedScansException extends PointOfSaleTerminalException {
+
+    private final Map<String, Integer> quantities;
+
+    public UnconfirmedScansException(Map<String, Integer> quantities, RuntimeException cause) {
+        super(cause);
+        this.quantities = Collections.unmodifiableMap(new LinkedHashMap<>(quantities));
+    }
+
+    /**
+     * Unconfirmed product codes mapped to how many of their scans have been sent
+     */
+    public Map<String, Integer> getQuantities() {
+        return quantities;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Scans not confirmed: " + quantities + ", " + getCause();
+    }
+
+}
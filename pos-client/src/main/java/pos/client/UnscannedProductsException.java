@@ -0,0 +1,36 @@
+package pos.client;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import pos.model.PointOfSaleTerminalException;
+
+/**
+ * Report products which a {@link BufferedPointOfSaleTerminalClient} has accepted, but the service has
+ * rejected when their scans were sent, for example because their codes are not found in pricing.
+ * The other buffered products have been added to the shopping cart.
+ */
+@SuppressWarnings("serial")
+public class UnscannedProductsException extends PointOfSaleTerminalException {
+
+    private final Map<String, Integer> quantities;
+
+    public UnscannedProductsException(Map<String, Integer> quantities, List<RuntimeException> causes) {
+        super("Products not scanned: " + quantities);
+        this.quantities = Collections.unmodifiableMap(new LinkedHashMap<>(quantities));
+        for (RuntimeException cause : causes) {
+            addSuppressed(cause);
+        }
+    }
+
+    /**
+     * Rejected product codes mapped to how many of their scans were rejected. The errors of the
+     * products are suppressed by this exception.
+     */
+    public Map<String, Integer> getQuantities() {
+        return quantities;
+    }
+
+}
@@ -0,0 +1,48 @@
+package pos.client;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import pos.client.http.HTTPClient.HTTPResponse;
+import pos.model.BinaryCodec;
+
+/**
+ * Format of messages exchanged between a terminal client and the service
+ */
+public enum WireFormat {
+    /** JSON messages */
+    JSON,
+    /** Compact binary messages of {@link BinaryCodec} */
+    BINARY;
+
+    static final String URN_FORMAT = "/format";
+
+    // HTTP clients mapped to whether their service supports the binary format, which is asked once per client
+    private static final Map<Object, Boolean> binarySupport = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Whether the service of the HTTP client is known to support the binary format, or {@code null}
+     * if it has not been asked yet
+     */
+    static Boolean binarySupport(Object httpClient) {
+        return binarySupport.get(httpClient);
+    }
+
+    /**
+     * Remember whether the service supports the binary format by its response to a binary request of
+     * {@value #URN_FORMAT}, which has no side effects, and which services without the binary format do not map.
+     */
+    static boolean binarySupport(Object httpClient, HTTPResponse formatResponse) {
+        boolean supported = false;
+        if (formatResponse.getStatusCode() == HTTPResponse.OK) {
+            try {
+                supported = BinaryCodec.CONTENT_TYPE.equals(BinaryCodec.decodeString(formatResponse.getContent()));
+            } catch (IllegalArgumentException e) {
+                // any other response means that the format is not supported
+            }
+        }
+        binarySupport.put(httpClient, supported);
+        return supported;
+    }
+}
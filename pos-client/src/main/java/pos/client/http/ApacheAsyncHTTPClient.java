@@ -0,0 +1,187 @@
+package pos.client.http;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import pos.client.http.HTTPClient.HTTPClientException;
+import pos.client.http.HTTPClient.HTTPResponse;
+
+import static java.util.stream.Collectors.toList;
+import static pos.client.http.ApacheHTTPClient.*;
+
+/**
+ * Implementation of non-blocking HTTP client interface with Apache HTTP async client 4.1.x
+ *
+ * A fixed number of I/O threads (see {@link HTTPClientConfig#getIoThreadCount()}) multiplex all
+ * pooled connections, so the number of requests in progress is not limited by the number of threads.
+ * The I/O threads are started when the client is created, and stopped in {@link #close()}.
+ */
+public final class ApacheAsyncHTTPClient implements AsyncHTTPClient {
+
+    private final CloseableHttpAsyncClient client;
+
+    public ApacheAsyncHTTPClient() {
+        this(HTTPClientConfig.defaults());
+    }
+
+    public ApacheAsyncHTTPClient(HTTPClientConfig config) {
+        this(config, null);
+    }
+
+    public ApacheAsyncHTTPClient(HTTPClientConfig config, String username, String password) {
+        this(config, credentialsProvider(username, password));
+    }
+
+    private ApacheAsyncHTTPClient(HTTPClientConfig config, CredentialsProvider credentialsProvider) {
+        int timeout = config.getTimeoutSeconds() * 1000;
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(config.getIoThreadCount())
+                .setConnectTimeout(timeout)
+                .setSoTimeout(timeout)
+                .build();
+
+        PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        } catch (IOReactorException e) {
+            throw new HTTPClientException(e);
+        }
+        connectionManager.setMaxTotal(config.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxPerRoute());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setSocketTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .setConnectTimeout(timeout)
+                .build();
+
+        HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy(config.getKeepAliveSeconds() * 1000L))
+                .setRedirectStrategy(redirectStrategy());
+        if (credentialsProvider != null) {
+            builder.setDefaultCredentialsProvider(credentialsProvider);
+        }
+        client = builder.build();
+        client.start();
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> get(String url, Map<String, Object> parameters, Map<String, String> headers) {
+        return execute(new HttpGet(url + toQueryString(parameters)), headers);
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> postForm(String url, Map<String, String> formData, Map<String, String> headers) {
+        HttpPost req = new HttpPost(url);
+        List<NameValuePair> params = formData.entrySet().stream()
+                .map(e -> new BasicNameValuePair(e.getKey(), e.getValue())).collect(toList());
+        req.setEntity(new UrlEncodedFormEntity(params, StandardCharsets.UTF_8));
+        req.addHeader("Content-Type", "application/x-www-form-urlencoded");
+        return execute(req, headers);
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> postJson(String url, String json, Map<String, String> headers) {
+        HttpPost req = new HttpPost(url);
+        req.setEntity(new StringEntity(json, StandardCharsets.UTF_8));
+        req.addHeader("Content-Type", "application/json");
+        return execute(req, headers);
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> putJson(String url, String json, Map<String, String> headers) {
+        HttpPut req = new HttpPut(url);
+        req.setEntity(new StringEntity(json, StandardCharsets.UTF_8));
+        req.addHeader("Content-Type", "application/json");
+        return execute(req, headers);
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> postBytes(String url, byte[] body, String contentType, Map<String, String> headers) {
+        HttpPost req = new HttpPost(url);
+        setBytes(req, body, contentType);
+        return execute(req, headers);
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> putBytes(String url, byte[] body, String contentType, Map<String, String> headers) {
+        HttpPut req = new HttpPut(url);
+        setBytes(req, body, contentType);
+        return execute(req, headers);
+    }
+
+    @Override
+    public CompletableFuture<HTTPResponse> delete(String url, Map<String, String> headers) {
+        return execute(new HttpDelete(url), headers);
+    }
+
+    /**
+     * Stop the I/O threads, and close all pooled connections.
+     */
+    @Override
+    public void close() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            throw new HTTPClientException(e);
+        }
+    }
+
+    private CompletableFuture<HTTPResponse> execute(HttpUriRequest req, Map<String, String> headers) {
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            req.addHeader(e.getKey(), e.getValue());
+        }
+
+        CompletableFuture<HTTPResponse> result = new CompletableFuture<>();
+        // the response body is buffered by the client before the callback is called
+        client.execute(req, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    result.complete(toResponse(response));
+                } catch (UncheckedIOException e) {
+                    result.completeExceptionally(new HTTPClientException(e));
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                result.completeExceptionally(new HTTPClientException(e));
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+        return result;
+    }
+
+}
@@ -1,31 +1,46 @@
 package pos.client.http;
 
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
+import org.apache.http.ProtocolException;
 import org.apache.http.StatusLine;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.RedirectStrategy;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.*;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 
 import java.io.*;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -34,20 +49,42 @@ import static java.util.stream.Collectors.toList;
 
 /**
  * Implementation of HTTP client interface with Apache HTTP client 4.5.x
+ * 
+ * The client keeps a pool of persistent connections, which is shared by all requests and by all
+ * threads using the client. Since the pool is only released in {@link #close()}, an instance
+ * is supposed to be long-lived.
  */
 public final class ApacheHTTPClient implements HTTPClient {
     
-    private final CredentialsProvider credentialsProvider;
+    private final CloseableHttpClient client;
+    
+    // streamed bodies are sent only after the server has accepted the request, so that a redirect
+    // can still send the body to the location
+    private final RequestConfig streamRequestConfig;
     
     public ApacheHTTPClient() {
-        credentialsProvider = null;
+        this(HTTPClientConfig.defaults());
     }
     
     public ApacheHTTPClient(String username, String password) {
-        UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(username, password);
-        CredentialsProvider provider = new BasicCredentialsProvider();
-        provider.setCredentials(AuthScope.ANY, credentials);
-        this.credentialsProvider = provider;
+        this(HTTPClientConfig.defaults(), username, password);
+    }
+    
+    public ApacheHTTPClient(HTTPClientConfig config) {
+        this(config, null);
+    }
+    
+    public ApacheHTTPClient(HTTPClientConfig config, String username, String password) {
+        this(config, credentialsProvider(username, password));
+    }
+    
+    private ApacheHTTPClient(HTTPClientConfig config, CredentialsProvider credentialsProvider) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(config.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxPerRoute());
+        connectionManager.setValidateAfterInactivity(config.getValidateAfterInactivityMillis());
+        client = buildClient(config, connectionManager, credentialsProvider);
+        streamRequestConfig = RequestConfig.copy(requestConfig(config)).setExpectContinueEnabled(true).build();
     }
 
     @Override
@@ -123,34 +160,112 @@ public final class ApacheHTTPClient implements HTTPClient {
         return execute(req, headers, ApacheHTTPClient::toResponse);
     }
 
+    @Override
+    public HTTPResponse postBytes(String url, byte[] body, String contentType, Map<String, String> headers) {
+        HttpPost req = new HttpPost(url);
+        setBytes(req, body, contentType);
+        return execute(req, headers, ApacheHTTPClient::toResponse);
+    }
+
+    @Override
+    public HTTPResponse putBytes(String url, byte[] body, String contentType, Map<String, String> headers) {
+        HttpPut req = new HttpPut(url);
+        setBytes(req, body, contentType);
+        return execute(req, headers, ApacheHTTPClient::toResponse);
+    }
+
+    @Override
+    public HTTPResponse putStream(String url, InputStream body, String contentType, Map<String, String> headers) {
+        HttpPut req = new HttpPut(url);
+        req.setConfig(streamRequestConfig);
+        req.setEntity(new StreamEntity(body, ContentType.parse(contentType)));
+        return execute(req, headers, ApacheHTTPClient::toResponse);
+    }
+
     @Override
     public HTTPResponse delete(String url, Map<String, String> headers) {
         HttpDelete req = new HttpDelete(url);
         return execute(req, headers, ApacheHTTPClient::toResponse);
     }
     
-    private CloseableHttpClient getClient() {
-        int timeout = 60;
-        RequestConfig config = RequestConfig.custom()
-                .setSocketTimeout(timeout * 1000)
-                .setConnectionRequestTimeout(timeout * 1000)
-                .setConnectTimeout(timeout * 1000)
-                .build();
-
-        HttpClientBuilder builder = HttpClients.custom().setDefaultRequestConfig(config);
+    /**
+     * Close all pooled connections, and stop the idle connection eviction thread.
+     */
+    @Override
+    public void close() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            throw new HTTPClientException(e);
+        }
+    }
+    
+    private static CloseableHttpClient buildClient(HTTPClientConfig config,
+            PoolingHttpClientConnectionManager connectionManager, CredentialsProvider credentialsProvider) {
+        HttpClientBuilder builder = HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig(config))
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy(config.getKeepAliveSeconds() * 1000L))
+                .setRedirectStrategy(redirectStrategy())
+                .evictExpiredConnections()
+                .evictIdleConnections(config.getIdleEvictionSeconds(), TimeUnit.SECONDS);
         if (credentialsProvider != null) {
             builder.setDefaultCredentialsProvider(credentialsProvider);
         }
         return builder.build();
     }
+    
+    private static RequestConfig requestConfig(HTTPClientConfig config) {
+        int timeout = config.getTimeoutSeconds();
+        return RequestConfig.custom()
+                .setSocketTimeout(timeout * 1000)
+                .setConnectionRequestTimeout(timeout * 1000)
+                .setConnectTimeout(timeout * 1000)
+                .build();
+    }
+    
+    // honor the server's Keep-Alive header, but never keep a connection longer than configured
+    static ConnectionKeepAliveStrategy keepAliveStrategy(long maxKeepAliveMillis) {
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, maxKeepAliveMillis) : maxKeepAliveMillis;
+        };
+    }
+    
+    // besides the default redirects, repeat requests of every method on 307 (Temporary Redirect),
+    // which a clustered service returns for terminals owned by another node, unless the request's
+    // streamed body has already been sent, and it cannot be sent again
+    static RedirectStrategy redirectStrategy() {
+        return new DefaultRedirectStrategy() {
+            @Override
+            public boolean isRedirected(HttpRequest request, HttpResponse response, HttpContext context)
+                    throws ProtocolException {
+                if (request instanceof HttpEntityEnclosingRequest) {
+                    HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+                    if (entity instanceof StreamEntity && ((StreamEntity) entity).isSent()) {
+                        return false;
+                    }
+                }
+                return response.getStatusLine().getStatusCode() == HttpStatus.SC_TEMPORARY_REDIRECT ||
+                        super.isRedirected(request, response, context);
+            }
+        };
+    }
+    
+    static CredentialsProvider credentialsProvider(String username, String password) {
+        UsernamePasswordCredentials credentials = new UsernamePasswordCredentials(username, password);
+        CredentialsProvider provider = new BasicCredentialsProvider();
+        provider.setCredentials(AuthScope.ANY, credentials);
+        return provider;
+    }
 
     private <T>T execute(HttpUriRequest req, Map<String, String> headers, Function<CloseableHttpResponse, T> handleResponse) {
         for (Map.Entry<String, String> e : headers.entrySet()) {
             req.addHeader(e.getKey(), e.getValue());
         }
 
-        try (CloseableHttpClient client = getClient()) {
-            CloseableHttpResponse res = client.execute(req);
+        // closing the response returns the connection to the pool (as long as the entity is consumed)
+        try (CloseableHttpResponse res = client.execute(req)) {
             return handleResponse.apply(res);
         } catch (IOException | UncheckedIOException e) {
             // only happens when the HTTP call could not succeed
@@ -158,18 +273,49 @@ public final class ApacheHTTPClient implements HTTPClient {
         }
     }
 
-    private static HTTPResponse toResponse(CloseableHttpResponse r) {
+    /**
+     * Body streamed from an input stream, which can be sent only once. Its unknown length makes it chunked.
+     */
+    static final class StreamEntity extends InputStreamEntity {
+        
+        private volatile boolean sent;
+        
+        StreamEntity(InputStream body, ContentType contentType) {
+            super(body, -1, contentType);
+        }
+        
+        @Override
+        public void writeTo(OutputStream output) throws IOException {
+            sent = true;
+            super.writeTo(output);
+        }
+        
+        boolean isSent() {
+            return sent;
+        }
+    }
+
+    static void setBytes(HttpEntityEnclosingRequestBase req, byte[] body, String contentType) {
+        req.setEntity(new ByteArrayEntity(body, ContentType.create(contentType)));
+        req.addHeader("Accept", contentType);
+    }
+
+    // the body is decoded as text only when it is requested, with the charset of the response
+    static HTTPResponse toResponse(HttpResponse r) {
         try {
             StatusLine statusLine = r.getStatusLine();
             HttpEntity e = r.getEntity();
-            String body = e != null ? EntityUtils.toString(e, StandardCharsets.UTF_8) : null;
-            return new HTTPResponse(statusLine.getStatusCode(), statusLine.getReasonPhrase(), body);
+            byte[] content = e != null ? EntityUtils.toByteArray(e) : null;
+            ContentType contentType = e != null ? ContentType.get(e) : null;
+            Charset charset = contentType != null && contentType.getCharset() != null ?
+                    contentType.getCharset() : StandardCharsets.UTF_8;
+            return new HTTPResponse(statusLine.getStatusCode(), statusLine.getReasonPhrase(), content, charset);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
-    private static String toQueryString(Map<String, Object> params) {
+    static String toQueryString(Map<String, Object> params) {
         if (params.isEmpty()) return "";
         
         String queryString = "?" + params.entrySet().stream().map(e -> {
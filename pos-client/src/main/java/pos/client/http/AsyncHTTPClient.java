@@ -0,0 +1,155 @@
+package pos.client.http;
+
+import static java.util.Collections.*;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import pos.client.http.HTTPClient.HTTPResponse;
+
+/**
+ * Non-blocking HTTP client interface. Every method sends a request and returns immediately,
+ * and the returned future is completed with the response once it arrives, or exceptionally
+ * with {@link HTTPClient.HTTPClientException} when the call could not be made.
+ *
+ * Futures are completed by the client's I/O threads, so actions attached to them
+ * should never block.
+ *
+ * Implementations are thread-safe, and a single instance should be shared and reused,
+ * and closed when it is no longer needed.
+ */
+public interface AsyncHTTPClient extends AutoCloseable {
+
+    /**
+     * Execute a GET request.
+     * @param url      request URL
+     * @param params   parameters which will be converted to a query string
+     * @param headers  request headers
+     * @return         future HTTP response object
+     */
+    CompletableFuture<HTTPResponse> get(String url, Map<String, Object> params, Map<String, String> headers);
+
+    /**
+     * Execute a GET request with no parameters and headers.
+     */
+    default CompletableFuture<HTTPResponse> get(String url) {
+        return get(url, emptyMap(), emptyMap());
+    }
+
+    /**
+     * Execute a POST form-URL-encoded request (submits a form).
+     * @param url      request URL
+     * @param formData map of keys and values, representing form data
+     * @param headers  request headers
+     * @return         future HTTP response object
+     */
+    CompletableFuture<HTTPResponse> postForm(String url, Map<String, String> formData, Map<String, String> headers);
+
+    /**
+     * Execute a POST form-URL-encoded request (submit a form) with empty header map
+     */
+    default CompletableFuture<HTTPResponse> postForm(String url, Map<String, String> formData) {
+        return postForm(url, formData, emptyMap());
+    }
+
+    /**
+     * Execute a POST request which content type is application/JSON.
+     * @param url      request URL
+     * @param json     data in JSON format
+     * @param headers  request headers
+     * @return         future HTTP response object
+     */
+    CompletableFuture<HTTPResponse> postJson(String url, String json, Map<String, String> headers);
+
+    /**
+     * Execute a POST request with content type is application/JSON and empty header map.
+     */
+    default CompletableFuture<HTTPResponse> postJson(String url, String json) {
+        return postJson(url, json, emptyMap());
+    }
+
+    /**
+     * Execute a PUT request which content type is application/JSON
+     * @param url      request URL
+     * @param json     data in JSON format
+     * @param headers  request headers
+     * @return         future HTTP response object
+     */
+    CompletableFuture<HTTPResponse> putJson(String url, String json, Map<String, String> headers);
+
+    /**
+     * Execute a PUT request with content type is application/JSON and empty header map.
+     */
+    default CompletableFuture<HTTPResponse> putJson(String url, String json) {
+        return putJson(url, json, emptyMap());
+    }
+
+    /**
+     * Execute a POST request with a binary body. The content type is also sent as the accepted
+     * content type of the response.
+     * @param url          request URL
+     * @param body         request body
+     * @param contentType  content type of the body
+     * @param headers      request headers
+     * @return             future HTTP response object
+     */
+    CompletableFuture<HTTPResponse> postBytes(String url, byte[] body, String contentType, Map<String, String> headers);
+
+    /**
+     * Execute a POST request with a binary body and empty header map.
+     */
+    default CompletableFuture<HTTPResponse> postBytes(String url, byte[] body, String contentType) {
+        return postBytes(url, body, contentType, emptyMap());
+    }
+
+    /**
+     * Execute a PUT request with a binary body. The content type is also sent as the accepted
+     * content type of the response.
+     * @param url          request URL
+     * @param body         request body
+     * @param contentType  content type of the body
+     * @param headers      request headers
+     * @return             future HTTP response object
+     */
+    CompletableFuture<HTTPResponse> putBytes(String url, byte[] body, String contentType, Map<String, String> headers);
+
+    /**
+     * Execute a PUT request with a binary body and empty header map.
+     */
+    default CompletableFuture<HTTPResponse> putBytes(String url, byte[] body, String contentType) {
+        return putBytes(url, body, contentType, emptyMap());
+    }
+
+    /**
+     * Execute a DELETE request with headers
+     */
+    CompletableFuture<HTTPResponse> delete(String url, Map<String, String> headers);
+
+    /**
+     * Execute a DELETE request without parameters and headers
+     */
+    default CompletableFuture<HTTPResponse> delete(String url) {
+        return delete(url, emptyMap());
+    }
+
+    /**
+     * Stop the I/O threads, and release all connections. Requests in progress are aborted.
+     */
+    @Override
+    void close();
+
+    /**
+     * Get default non-blocking HTTP client implementation.
+     */
+    static AsyncHTTPClient getClient() {
+        return new ApacheAsyncHTTPClient();
+    }
+
+    /**
+     * Get default non-blocking HTTP client implementation with the given connection pool configuration.
+     */
+    static AsyncHTTPClient getClient(HTTPClientConfig config) {
+        return new ApacheAsyncHTTPClient(config);
+    }
+
+}
@@ -4,15 +4,20 @@ import static java.util.Collections.*;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
 
 /**
- * HTTP client interface 
+ * HTTP client interface.
+ * 
+ * Implementations are thread-safe and may hold resources, such as pooled connections, so a single
+ * instance should be shared and reused, and closed when it is no longer needed.
  */
-public interface HTTPClient {
+public interface HTTPClient extends AutoCloseable {
 
     /**
      * Execute a GET request.
@@ -122,6 +127,63 @@ public interface HTTPClient {
         return putJson(url, json, emptyMap());
     }
 
+    /**
+     * Execute a POST request with a binary body. The content type is also sent as the accepted
+     * content type of the response.
+     * @param url          request URL
+     * @param body         request body
+     * @param contentType  content type of the body
+     * @param headers      request headers
+     * @return             HTTP response object
+     */
+    HTTPResponse postBytes(String url, byte[] body, String contentType, Map<String, String> headers);
+
+    /**
+     * Execute a POST request with a binary body and empty header map.
+     */
+    default HTTPResponse postBytes(String url, byte[] body, String contentType) {
+        return postBytes(url, body, contentType, emptyMap());
+    }
+
+    /**
+     * Execute a PUT request with a binary body. The content type is also sent as the accepted
+     * content type of the response.
+     * @param url          request URL
+     * @param body         request body
+     * @param contentType  content type of the body
+     * @param headers      request headers
+     * @return             HTTP response object
+     */
+    HTTPResponse putBytes(String url, byte[] body, String contentType, Map<String, String> headers);
+
+    /**
+     * Execute a PUT request with a binary body and empty header map.
+     */
+    default HTTPResponse putBytes(String url, byte[] body, String contentType) {
+        return putBytes(url, body, contentType, emptyMap());
+    }
+
+    /**
+     * Execute a PUT request, which body is streamed from the input stream in chunks, so that
+     * the body does not have to fit in memory. The stream is read until its end, but not closed.
+     * The body is sent only after the server has accepted the request (HTTP {@code Expect: 100-continue}),
+     * so that a redirect is followed before it is read; a redirect which comes after the body has been sent
+     * is returned as the response, because the stream cannot be read again.
+     * @param url          request URL
+     * @param body         stream of the request body
+     * @param contentType  content type of the body
+     * @param headers      request headers
+     * @return             HTTP response object
+     */
+    HTTPResponse putStream(String url, InputStream body, String contentType, Map<String, String> headers);
+
+    /**
+     * Execute a PUT request with a streamed body and empty header map.
+     */
+    default HTTPResponse putStream(String url, InputStream body, String contentType) {
+        return putStream(url, body, contentType, emptyMap());
+    }
+
     /**
      * Execute a DELETE request with headers
      */
@@ -134,6 +196,12 @@ public interface HTTPClient {
         return delete(url, emptyMap());
     }
     
+    /**
+     * Release resources held by the client. The client cannot be used after it is closed.
+     */
+    @Override
+    void close();
+    
     /**
      * Get default HTTP client implementation.
      */
@@ -141,6 +209,13 @@ public interface HTTPClient {
         return new ApacheHTTPClient();
     }
     
+    /**
+     * Get default HTTP client implementation with the given connection pool configuration.
+     */
+    static HTTPClient getClient(HTTPClientConfig config) {
+        return new ApacheHTTPClient(config);
+    }
+    
     /**
      * Get HTTP client with credentials info.
      */
@@ -156,16 +231,28 @@ public interface HTTPClient {
         public static final int OK = 200;
         public static final int BAD_REQUEST = 400;
         public static final int NOT_FOUND = 404;
+        public static final int UNSUPPORTED_MEDIA_TYPE = 415;
+        public static final int UNPROCESSABLE_ENTITY = 422;
         public static final int INTERNAL_SERVER_ERROR = 500;
 
         private final int statusCode;
         private final String statusText;
-        private final String body;
+        private final byte[] content;
+        private final Charset charset;
+        
+        // decoded from content when it is requested
+        private String body;
         
         HTTPResponse(int statusCode, String statusText, String body) {
+            this(statusCode, statusText, body == null ? null : body.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            this.body = body;
+        }
+        
+        HTTPResponse(int statusCode, String statusText, byte[] content, Charset charset) {
             this.statusCode = statusCode;
             this.statusText = statusText;
-            this.body = body;
+            this.content = content;
+            this.charset = charset;
         }
 
         public int getStatusCode() {
@@ -176,14 +263,27 @@ public interface HTTPClient {
             return statusText;
         }
 
+        /**
+         * Response body as text
+         */
         public String getBody() {
+            if (body == null && content != null) {
+                body = new String(content, charset);
+            }
             return body;
         }
         
+        /**
+         * Response body as bytes
+         */
+        public byte[] getContent() {
+            return content;
+        }
+        
         @Override
         public String toString() {
             return "HTTPResponse [statusCode=" + statusCode + ", statusText=" + statusText
-                    + ", body=" + body + "]";
+                    + ", body=" + getBody() + "]";
         }
         
         static HTTPResponse internalServerError(Exception e) {
@@ -0,0 +1,161 @@
+package pos.client.http;
+
+/**
+ * Connection pool and timeout settings of an {@link HTTPClient} or an {@link AsyncHTTPClient}. Instances are immutable,
+ * and are created with {@link #custom()} builder, or obtained with {@link #defaults()}.
+ */
+public final class HTTPClientConfig {
+
+    private static final HTTPClientConfig DEFAULTS = custom().build();
+
+    private final int maxTotal;
+    private final int maxPerRoute;
+    private final int timeoutSeconds;
+    private final int idleEvictionSeconds;
+    private final int keepAliveSeconds;
+    private final int validateAfterInactivityMillis;
+    private final int ioThreadCount;
+
+    private HTTPClientConfig(Builder b) {
+        this.maxTotal = b.maxTotal;
+        this.maxPerRoute = b.maxPerRoute;
+        this.timeoutSeconds = b.timeoutSeconds;
+        this.idleEvictionSeconds = b.idleEvictionSeconds;
+        this.keepAliveSeconds = b.keepAliveSeconds;
+        this.validateAfterInactivityMillis = b.validateAfterInactivityMillis;
+        this.ioThreadCount = b.ioThreadCount;
+    }
+
+    /**
+     * Maximum number of pooled connections across all routes
+     */
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    /**
+     * Maximum number of pooled connections to a single host
+     */
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    /**
+     * Connect, socket and pool lease timeout
+     */
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * Pooled connections which stay idle longer than this are closed by a background thread
+     */
+    public int getIdleEvictionSeconds() {
+        return idleEvictionSeconds;
+    }
+
+    /**
+     * How long to keep a connection alive when the server does not send the Keep-Alive header.
+     * This is also an upper bound for the keep-alive timeout announced by the server.
+     */
+    public int getKeepAliveSeconds() {
+        return keepAliveSeconds;
+    }
+
+    /**
+     * Pooled connections idle for longer than this are re-validated before being reused
+     */
+    public int getValidateAfterInactivityMillis() {
+        return validateAfterInactivityMillis;
+    }
+
+    /**
+     * Number of I/O threads of an {@link AsyncHTTPClient}, which serve all its connections
+     */
+    public int getIoThreadCount() {
+        return ioThreadCount;
+    }
+
+    @Override
+    public String toString() {
+        return "HTTPClientConfig [maxTotal=" + maxTotal + ", maxPerRoute=" + maxPerRoute
+                + ", timeoutSeconds=" + timeoutSeconds + ", idleEvictionSeconds=" + idleEvictionSeconds
+                + ", keepAliveSeconds=" + keepAliveSeconds
+                + ", validateAfterInactivityMillis=" + validateAfterInactivityMillis
+                + ", ioThreadCount=" + ioThreadCount + "]";
+    }
+
+    /**
+     * Get default configuration
+     */
+    public static HTTPClientConfig defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Start building a custom configuration. Values which are not set explicitly keep their defaults.
+     */
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+
+        private int maxTotal = 200;
+        private int maxPerRoute = 50;
+        private int timeoutSeconds = 60;
+        private int idleEvictionSeconds = 30;
+        private int keepAliveSeconds = 30;
+        private int validateAfterInactivityMillis = 2000;
+        private int ioThreadCount = Runtime.getRuntime().availableProcessors();
+
+        private Builder() {}
+
+        public Builder setMaxTotal(int maxTotal) {
+            this.maxTotal = positive(maxTotal, "maxTotal");
+            return this;
+        }
+
+        public Builder setMaxPerRoute(int maxPerRoute) {
+            this.maxPerRoute = positive(maxPerRoute, "maxPerRoute");
+            return this;
+        }
+
+        public Builder setTimeoutSeconds(int timeoutSeconds) {
+            this.timeoutSeconds = positive(timeoutSeconds, "timeoutSeconds");
+            return this;
+        }
+
+        public Builder setIdleEvictionSeconds(int idleEvictionSeconds) {
+            this.idleEvictionSeconds = positive(idleEvictionSeconds, "idleEvictionSeconds");
+            return this;
+        }
+
+        public Builder setKeepAliveSeconds(int keepAliveSeconds) {
+            this.keepAliveSeconds = positive(keepAliveSeconds, "keepAliveSeconds");
+            return this;
+        }
+
+        public Builder setValidateAfterInactivityMillis(int validateAfterInactivityMillis) {
+            this.validateAfterInactivityMillis = positive(validateAfterInactivityMillis, "validateAfterInactivityMillis");
+            return this;
+        }
+
+        public Builder setIoThreadCount(int ioThreadCount) {
+            this.ioThreadCount = positive(ioThreadCount, "ioThreadCount");
+            return this;
+        }
+
+        public HTTPClientConfig build() {
+            return new HTTPClientConfig(this);
+        }
+
+        private static int positive(int value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " must be positive, but was " + value);
+            }
+            return value;
+        }
+    }
+
+}
@@ -0,0 +1,292 @@
+package pos.loadgen;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import pos.client.WireFormat;
+
+/**
+ * Settings of a load test. Instances are immutable, and are created with {@link #custom()} builder,
+ * or parsed from command line options with {@link #parse(String...)}.
+ */
+public final class LoadConfig {
+
+    /**
+     * How sessions (activate, set pricing, scans and total) are started
+     */
+    public enum Workload {
+        /** Every lane starts its next session when the previous one is over, after a think time */
+        CLOSED,
+        /** Sessions arrive at random with the given rate, whether or not earlier ones are over */
+        OPEN
+    }
+
+    private final int lanes;
+    private final int scans;
+    private final int products;
+    private final int tiers;
+    private final long thinkMillis;
+    private final Workload workload;
+    private final double arrivalRate;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final WireFormat format;
+    private final String serverJar;
+    private final List<String> serverOptions;
+
+    private LoadConfig(Builder b) {
+        this.lanes = b.lanes;
+        this.scans = b.scans;
+        this.products = b.products;
+        this.tiers = b.tiers;
+        this.thinkMillis = b.thinkMillis;
+        this.workload = b.workload;
+        this.arrivalRate = b.arrivalRate;
+        this.warmupSeconds = b.warmupSeconds;
+        this.durationSeconds = b.durationSeconds;
+        this.format = b.format;
+        this.serverJar = b.serverJar;
+        this.serverOptions = Collections.unmodifiableList(new ArrayList<>(b.serverOptions));
+    }
+
+    /**
+     * Number of lanes of the closed workload, and the largest number of concurrent sessions of the open one
+     */
+    public int getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Number of scans in a session
+     */
+    public int getScans() {
+        return scans;
+    }
+
+    /**
+     * Number of products, which scanned products are chosen from
+     */
+    public int getProducts() {
+        return products;
+    }
+
+    /**
+     * Number of pricing tiers of every product
+     */
+    public int getTiers() {
+        return tiers;
+    }
+
+    /**
+     * Mean time a lane waits between operations, the actual times are exponentially distributed.
+     * Zero means that the next operation is sent as soon as the previous one completes.
+     */
+    public long getThinkMillis() {
+        return thinkMillis;
+    }
+
+    public Workload getWorkload() {
+        return workload;
+    }
+
+    /**
+     * Mean number of sessions started every second in the open workload
+     */
+    public double getArrivalRate() {
+        return arrivalRate;
+    }
+
+    /**
+     * Time before the measurement, which is not included in the report
+     */
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    /**
+     * Time of the measurement
+     */
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Executable server jar, which the load generator starts before the load test and stops after it,
+     * or {@code null} if the load test drives a server which is already running
+     */
+    public String getServerJar() {
+        return serverJar;
+    }
+
+    /**
+     * JVM options of the server which the load generator starts, such as {@code -Xmx2g} or
+     * {@code -Dpos.server.execution-mode=VIRTUAL}
+     */
+    public List<String> getServerOptions() {
+        return serverOptions;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadConfig [lanes=" + lanes + ", scans=" + scans + ", products=" + products + ", tiers=" + tiers
+                + ", thinkMillis=" + thinkMillis + ", workload=" + workload + ", arrivalRate=" + arrivalRate
+                + ", warmupSeconds=" + warmupSeconds + ", durationSeconds=" + durationSeconds
+                + ", format=" + format + ", serverJar=" + serverJar + ", serverOptions=" + serverOptions + "]";
+    }
+
+    /**
+     * Start building a custom configuration. Values which are not set explicitly keep their defaults.
+     */
+    public static Builder custom() {
+        return new Builder();
+    }
+
+    /**
+     * Parse command line options, such as {@code --lanes=100}, which names are the same as the names
+     * of the builder's setters, for example {@code --think-millis=500} or {@code --workload=OPEN}.
+     * Option {@code --server-option} may be given any number of times.
+     *
+     * @throws IllegalArgumentException if an option is unknown or its value is invalid
+     */
+    public static LoadConfig parse(String... args) {
+        Builder b = custom();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Option must be --name=value, but was " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            try {
+                switch (name) {
+                    case "lanes": b.setLanes(Integer.parseInt(value)); break;
+                    case "scans": b.setScans(Integer.parseInt(value)); break;
+                    case "products": b.setProducts(Integer.parseInt(value)); break;
+                    case "tiers": b.setTiers(Integer.parseInt(value)); break;
+                    case "think-millis": b.setThinkMillis(Long.parseLong(value)); break;
+                    case "workload": b.setWorkload(Workload.valueOf(value.toUpperCase())); break;
+                    case "arrival-rate": b.setArrivalRate(Double.parseDouble(value)); break;
+                    case "warmup-seconds": b.setWarmupSeconds(Integer.parseInt(value)); break;
+                    case "duration-seconds": b.setDurationSeconds(Integer.parseInt(value)); break;
+                    case "format": b.setFormat(WireFormat.valueOf(value.toUpperCase())); break;
+                    case "server-jar": b.setServerJar(value); break;
+                    case "server-option": b.addServerOption(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value of option " + arg);
+            }
+        }
+        return b.build();
+    }
+
+    public static final class Builder {
+
+        private int lanes = 100;
+        private int scans = 20;
+        private int products = 1000;
+        private int tiers = 3;
+        private long thinkMillis = 0;
+        private Workload workload = Workload.CLOSED;
+        private double arrivalRate = 100;
+        private int warmupSeconds = 5;
+        private int durationSeconds = 30;
+        private WireFormat format = WireFormat.JSON;
+        private String serverJar;
+        private final List<String> serverOptions = new ArrayList<>();
+
+        private Builder() {}
+
+        public Builder setLanes(int lanes) {
+            this.lanes = positive(lanes, "lanes");
+            return this;
+        }
+
+        public Builder setScans(int scans) {
+            this.scans = positive(scans, "scans");
+            return this;
+        }
+
+        public Builder setProducts(int products) {
+            this.products = positive(products, "products");
+            return this;
+        }
+
+        public Builder setTiers(int tiers) {
+            this.tiers = positive(tiers, "tiers");
+            return this;
+        }
+
+        public Builder setThinkMillis(long thinkMillis) {
+            if (thinkMillis < 0) {
+                throw new IllegalArgumentException("thinkMillis must not be negative, but was " + thinkMillis);
+            }
+            this.thinkMillis = thinkMillis;
+            return this;
+        }
+
+        public Builder setWorkload(Workload workload) {
+            this.workload = workload;
+            return this;
+        }
+
+        public Builder setArrivalRate(double arrivalRate) {
+            if (!(arrivalRate > 0)) {
+                throw new IllegalArgumentException("arrivalRate must be positive, but was " + arrivalRate);
+            }
+            this.arrivalRate = arrivalRate;
+            return this;
+        }
+
+        public Builder setWarmupSeconds(int warmupSeconds) {
+            if (warmupSeconds < 0) {
+                throw new IllegalArgumentException("warmupSeconds must not be negative, but was " + warmupSeconds);
+            }
+            this.warmupSeconds = warmupSeconds;
+            return this;
+        }
+
+        public Builder setDurationSeconds(int durationSeconds) {
+            this.durationSeconds = positive(durationSeconds, "durationSeconds");
+            return this;
+        }
+
+        public Builder setFormat(WireFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        public Builder setServerJar(String serverJar) {
+            this.serverJar = serverJar == null || serverJar.isEmpty() ? null : serverJar;
+            return this;
+        }
+
+        public Builder addServerOption(String serverOption) {
+            if (!serverOption.startsWith("-")) {
+                throw new IllegalArgumentException("serverOption must be a JVM option, but was " + serverOption);
+            }
+            serverOptions.add(serverOption);
+            return this;
+        }
+
+        public LoadConfig build() {
+            if (serverJar == null && !serverOptions.isEmpty()) {
+                throw new IllegalArgumentException("serverOptions require serverJar");
+            }
+            return new LoadConfig(this);
+        }
+
+        private static int positive(int value, String name) {
+            if (value <= 0) {
+                throw new IllegalArgumentException(name + " must be positive, but was " + value);
+            }
+            return value;
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package pos.loadgen;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import pos.model.Pricing;
+
+/**
+ * Generates reproducible pricing of the products which lanes scan.
+ */
+final class LoadData {
+
+    private LoadData() {}
+
+    /**
+     * Product code of the product with the given number
+     */
+    static String productCode(int n) {
+        return String.format("P%06d", n);
+    }
+
+    /**
+     * Generate pricing for the given number of products, ordered by product number. Every product
+     * has the given number of pricing tiers, with counts 1, 3, 6, 12, etc. and prices with two
+     * decimal places.
+     */
+    static Pricing[] pricing(int products, int tiers, long seed) {
+        Random random = new Random(seed);
+        Pricing[] pricings = new Pricing[products * tiers];
+        for (int n = 0; n < products; n++) {
+            String code = productCode(n);
+            long unitPrice = 10 + random.nextInt(10_000);
+            for (int t = 0; t < tiers; t++) {
+                int count = t == 0 ? 1 : 3 << (t - 1);
+                // larger packs are cheaper per unit
+                long price = unitPrice * count * (100 - 5 * t) / 100;
+                pricings[n * tiers + t] = new Pricing(code, count, BigDecimal.valueOf(price, 2));
+            }
+        }
+        return pricings;
+    }
+
+}
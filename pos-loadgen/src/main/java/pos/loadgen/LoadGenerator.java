@@ -0,0 +1,282 @@
+package pos.loadgen;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import pos.client.AsyncPointOfSaleTerminalClient;
+import pos.client.http.AsyncHTTPClient;
+import pos.client.http.HTTPClientConfig;
+import pos.metrics.Histogram;
+import pos.model.Pricing;
+
+/**
+ * Drives a server with store lanes. Every lane runs sessions of a shopper: it activates a terminal,
+ * sets pricing of the products the shopper buys, scans them one by one and calculates the total,
+ * waiting for a think time before every operation. The server is either already running, or is
+ * started as a {@link LocalServer} before the load test, and stopped after it.
+ *
+ * In the {@link LoadConfig.Workload#CLOSED closed} workload every lane starts its next session when
+ * the previous one is over, so the load drops when the server slows down. In the
+ * {@link LoadConfig.Workload#OPEN open} workload sessions arrive at random (a Poisson process) with
+ * the configured rate, regardless of the server's response times, and a session which arrives when
+ * all the lanes are busy is dropped and counted.
+ *
+ * Latencies of the operations and of whole sessions are recorded in histograms, from the time the
+ * operation was called to the time its response arrived, but only for operations started after the
+ * warmup and before the end of the measurement. The same non-blocking HTTP client is shared by all
+ * the lanes, so that a few threads drive any number of them.
+ */
+public final class LoadGenerator {
+
+    /**
+     * Measured operations
+     */
+    enum Operation {
+        ACTIVATE, PRICING, SCAN, TOTAL, SESSION
+    }
+
+    private static final long SEED = 42;
+
+    // how long to wait for the sessions in flight when the measurement is over
+    private static final long DRAIN_SECONDS = 30;
+
+    private final LoadConfig config;
+    private final AsyncHTTPClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final Pricing[] pricing;
+
+    private final Map<Operation, Histogram> latencies;
+    private final Map<Operation, AtomicLong> errors;
+    private final AtomicLong dropped;
+    private final AtomicInteger inFlight;
+
+    // measurement window in System.nanoTime(), operations started outside of it are not recorded
+    private volatile long measureStart = Long.MAX_VALUE;
+    private volatile long measureEnd = Long.MAX_VALUE;
+    private volatile boolean running;
+
+    LoadGenerator(LoadConfig config, AsyncHTTPClient httpClient) {
+        this.config = config;
+        this.httpClient = httpClient;
+        this.scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "loadgen-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        this.pricing = LoadData.pricing(config.getProducts(), config.getTiers(), SEED);
+        latencies = new EnumMap<>(Operation.class);
+        errors = new EnumMap<>(Operation.class);
+        for (Operation op : Operation.values()) {
+            latencies.put(op, new Histogram());
+            errors.put(op, new AtomicLong());
+        }
+        dropped = new AtomicLong();
+        inFlight = new AtomicInteger();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadConfig config;
+        try {
+            config = LoadConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.println(config);
+        if (config.getServerJar() == null) {
+            run(config);
+            return;
+        }
+        LocalServer server;
+        try {
+            server = LocalServer.start(config.getServerJar(), config.getServerOptions());
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        try {
+            System.out.println("Started server, its log is " + server.getLog());
+            run(config);
+        } finally {
+            server.close();
+        }
+    }
+
+    private static void run(LoadConfig config) throws InterruptedException {
+        HTTPClientConfig httpConfig = HTTPClientConfig.custom()
+                .setMaxTotal(config.getLanes())
+                .setMaxPerRoute(config.getLanes())
+                .build();
+        try (AsyncHTTPClient httpClient = AsyncHTTPClient.getClient(httpConfig)) {
+            LoadGenerator generator = new LoadGenerator(config, httpClient);
+            generator.run();
+            generator.report(System.out);
+        }
+    }
+
+    /**
+     * Run the warmup and the measurement, and wait for the sessions in flight to complete.
+     */
+    void run() throws InterruptedException {
+        running = true;
+        if (config.getWorkload() == LoadConfig.Workload.CLOSED) {
+            for (int lane = 0; lane < config.getLanes(); lane++) {
+                delay(think()).thenRunAsync(this::lane, scheduler);
+            }
+        } else {
+            scheduleArrival();
+        }
+        TimeUnit.SECONDS.sleep(config.getWarmupSeconds());
+        measureStart = System.nanoTime();
+        TimeUnit.SECONDS.sleep(config.getDurationSeconds());
+        measureEnd = System.nanoTime();
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_SECONDS);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Print throughput and latency percentiles of every operation
+     */
+    void report(PrintStream out) {
+        double seconds = (measureEnd - measureStart) / 1e9;
+        out.printf("%-10s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "per sec", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Operation op : Operation.values()) {
+            Histogram.Snapshot s = latencies.get(op).snapshot();
+            out.printf("%-10s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                    op.name().toLowerCase(), s.getCount(), errors.get(op).get(), s.getCount() / seconds,
+                    millis(s.valueAtQuantile(0.5)), millis(s.valueAtQuantile(0.9)), millis(s.valueAtQuantile(0.99)),
+                    millis(s.valueAtQuantile(0.999)), millis(s.valueAtQuantile(1)));
+        }
+        if (config.getWorkload() == LoadConfig.Workload.OPEN) {
+            out.printf("dropped sessions: %d%n", dropped.get());
+        }
+        if (inFlight.get() > 0) {
+            out.printf("sessions not completed: %d%n", inFlight.get());
+        }
+    }
+
+    // closed workload: run sessions one after another (on the scheduler, so that sessions which fail
+    // at once do not recurse)
+    private void lane() {
+        if (!running) return;
+        inFlight.incrementAndGet();
+        session().whenComplete((r, e) -> {
+            inFlight.decrementAndGet();
+            if (running) {
+                delay(think()).thenRunAsync(this::lane, scheduler);
+            }
+        });
+    }
+
+    // open workload: start a session, if a lane is free, and schedule the next arrival
+    private void scheduleArrival() {
+        if (!running) return;
+        long interval = exponential(TimeUnit.SECONDS.toNanos(1) / config.getArrivalRate());
+        scheduler.schedule(() -> {
+            if (!running) return;
+            scheduleArrival();
+            if (inFlight.incrementAndGet() > config.getLanes()) {
+                inFlight.decrementAndGet();
+                if (measuring(System.nanoTime())) {
+                    dropped.incrementAndGet();
+                }
+                return;
+            }
+            session().whenComplete((r, e) -> inFlight.decrementAndGet());
+        }, interval, TimeUnit.NANOSECONDS);
+    }
+
+    private CompletableFuture<Void> session() {
+        long start = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] products = new int[config.getScans()];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = random.nextInt(config.getProducts());
+        }
+        CompletableFuture<Void> f = timed(Operation.ACTIVATE, () -> AsyncPointOfSaleTerminalClient.activate(httpClient, config.getFormat()))
+                .thenCompose(terminal -> {
+                    CompletableFuture<Void> next = delay(think())
+                            .thenCompose(v -> timed(Operation.PRICING, () -> terminal.setPricing(pricingOf(products))));
+                    for (int product : products) {
+                        String code = LoadData.productCode(product);
+                        next = next.thenCompose(v -> delay(think()))
+                                .thenCompose(v -> timed(Operation.SCAN, () -> terminal.scan(code)));
+                    }
+                    return next.thenCompose(v -> delay(think()))
+                            .thenCompose(v -> timed(Operation.TOTAL, terminal::calculateTotal))
+                            .thenAccept(total -> {});
+                });
+        return f.whenComplete((r, e) -> record(Operation.SESSION, start, e));
+    }
+
+    // pricing of all the tiers of the distinct products
+    private Pricing[] pricingOf(int[] products) {
+        int[] distinct = Arrays.stream(products).distinct().toArray();
+        int tiers = config.getTiers();
+        Pricing[] result = new Pricing[distinct.length * tiers];
+        for (int i = 0; i < distinct.length; i++) {
+            System.arraycopy(pricing, distinct[i] * tiers, result, i * tiers, tiers);
+        }
+        return result;
+    }
+
+    private <T> CompletableFuture<T> timed(Operation op, Supplier<CompletableFuture<T>> operation) {
+        long start = System.nanoTime();
+        return operation.get().whenComplete((r, e) -> record(op, start, e));
+    }
+
+    private void record(Operation op, long start, Throwable error) {
+        if (!measuring(start)) return;
+        if (error != null) {
+            errors.get(op).incrementAndGet();
+        } else {
+            latencies.get(op).record(System.nanoTime() - start);
+        }
+    }
+
+    private boolean measuring(long time) {
+        return time >= measureStart && time < measureEnd;
+    }
+
+    private CompletableFuture<Void> delay(long nanos) {
+        if (nanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        scheduler.schedule(() -> f.complete(null), nanos, TimeUnit.NANOSECONDS);
+        return f;
+    }
+
+    private long think() {
+        return exponential(TimeUnit.MILLISECONDS.toNanos(config.getThinkMillis()));
+    }
+
+    // exponentially distributed time with the given mean
+    static long exponential(double meanNanos) {
+        if (meanNanos <= 0) return 0;
+        return (long) (-meanNanos * Math.log(1 - ThreadLocalRandom.current().nextDouble()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+}
@@ -0,0 +1,90 @@
+package pos.loadgen;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * POS server which the load generator starts in a separate JVM, and stops when the load test is
+ * over, so that every run measures a freshly started server with the given JVM options. The server
+ * listens on {@code localhost:8080}, where the clients call it, and its output goes to a log file.
+ */
+final class LocalServer implements AutoCloseable {
+
+    private static final String HOST = "localhost";
+    private static final int PORT = 8080;
+
+    // how long the server may take to start accepting connections
+    private static final long START_SECONDS = 120;
+    private static final long STOP_SECONDS = 30;
+
+    private final Process process;
+    private final File log;
+
+    private LocalServer(Process process, File log) {
+        this.process = process;
+        this.log = log;
+    }
+
+    /**
+     * Start the executable server jar with the given JVM options, and wait until it accepts connections
+     *
+     * @throws IOException if the port is taken, or the server fails to start in time
+     */
+    static LocalServer start(String jar, List<String> jvmOptions) throws IOException, InterruptedException {
+        if (accepts()) {
+            throw new IOException("Another server is already listening on " + HOST + ":" + PORT);
+        }
+        File log = File.createTempFile("pos-server-", ".log");
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-jar");
+        command.add(jar);
+        command.add("--server.port=" + PORT);
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+        LocalServer server = new LocalServer(process, log);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(START_SECONDS);
+        while (!accepts()) {
+            if (!process.isAlive() || System.nanoTime() > deadline) {
+                server.close();
+                throw new IOException("Server has not started, see " + log);
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+        return server;
+    }
+
+    File getLog() {
+        return log;
+    }
+
+    /**
+     * Stop the server, and wait until it has exited
+     */
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(STOP_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static boolean accepts() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(HOST, PORT), 1000);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Load generator, which drives the REST API of a running server with many concurrent terminal lanes
+ * and reports throughput and latency percentiles.
+ */
+package pos.loadgen;
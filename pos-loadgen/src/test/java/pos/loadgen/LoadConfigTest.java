@@ -0,0 +1,75 @@
+package pos.loadgen;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import pos.client.WireFormat;
+
+/**
+ * Test parsing of load generator options.
+ */
+public class LoadConfigTest {
+
+    @Test
+    public void defaultsAreUsedWithoutOptions() {
+        LoadConfig config = LoadConfig.parse();
+        assertEquals(100, config.getLanes());
+        assertEquals(20, config.getScans());
+        assertEquals(LoadConfig.Workload.CLOSED, config.getWorkload());
+        assertEquals(WireFormat.JSON, config.getFormat());
+    }
+
+    @Test
+    public void optionsAreParsed() {
+        LoadConfig config = LoadConfig.parse("--lanes=500", "--scans=5", "--products=10", "--tiers=2",
+                "--think-millis=250", "--workload=open", "--arrival-rate=12.5", "--warmup-seconds=0",
+                "--duration-seconds=60", "--format=binary");
+        assertEquals(500, config.getLanes());
+        assertEquals(5, config.getScans());
+        assertEquals(10, config.getProducts());
+        assertEquals(2, config.getTiers());
+        assertEquals(250, config.getThinkMillis());
+        assertEquals(LoadConfig.Workload.OPEN, config.getWorkload());
+        assertEquals(12.5, config.getArrivalRate());
+        assertEquals(0, config.getWarmupSeconds());
+        assertEquals(60, config.getDurationSeconds());
+        assertEquals(WireFormat.BINARY, config.getFormat());
+        assertNull(config.getServerJar());
+    }
+
+    @Test
+    public void serverOptionsAreCollected() {
+        LoadConfig config = LoadConfig.parse("--server-jar=server.jar", "--server-option=-Xmx2g",
+                "--server-option=-Dpos.server.execution-mode=VIRTUAL");
+        assertEquals("server.jar", config.getServerJar());
+        assertEquals(Arrays.asList("-Xmx2g", "-Dpos.server.execution-mode=VIRTUAL"), config.getServerOptions());
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse("--server-option=-Xmx2g"));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse("--server-jar=server.jar", "--server-option=Xmx2g"));
+    }
+
+    @Test
+    public void invalidOptionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse("--lanes"));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse("lanes=1"));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse("--threads=1"));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse("--lanes=0"));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse("--lanes=many"));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse("--think-millis=-1"));
+        assertThrows(IllegalArgumentException.class, () -> LoadConfig.parse("--workload=spiky"));
+    }
+
+    @Test
+    public void thinkTimesAverageToTheMean() {
+        long sum = 0;
+        int n = 100_000;
+        for (int i = 0; i < n; i++) {
+            sum += LoadGenerator.exponential(1_000_000);
+        }
+        assertEquals(1_000_000.0, (double) sum / n, 20_000.0);
+        assertEquals(0, LoadGenerator.exponential(0));
+    }
+
+}
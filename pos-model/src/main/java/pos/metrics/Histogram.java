@@ -0,0 +1,115 @@
+package pos.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of non-negative {@code long} values, such as latencies in nanoseconds.
+ *
+ * Like HDR histograms, it has log-linear buckets: every power of two range is split into
+ * {@value #SUB_BUCKETS} buckets of the same width, so that any value is kept with relative error
+ * of at most 1/{@value #SUB_BUCKETS}, and the whole {@code long} range fits into a couple of
+ * thousand counters.  Recording a value is a few bit operations and an atomic increment,
+ * without locks or allocation.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder sum;
+
+    public Histogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        sum = new LongAdder();
+    }
+
+    /**
+     * Record the value. Negative values are recorded as zero.
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(index(value));
+        sum.add(value);
+    }
+
+    /**
+     * Get a consistent enough copy of the histogram, which may be used to calculate quantiles.
+     * Values recorded while the copy is taken may or may not be included.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum());
+    }
+
+    // values below SUB_BUCKETS have buckets of their own, the rest are bucketed by
+    // their highest bit (the power of two range), and the next SUB_BUCKET_BITS bits
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKETS + subBucket - SUB_BUCKETS;
+    }
+
+    // the largest value which falls into the bucket
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Immutable copy of a histogram
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        private Snapshot(long[] counts, long count, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /**
+         * Number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Sum of recorded values
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * The value which is greater than or equal to the given fraction of recorded values
+         * (within the histogram precision), or zero if there are no values.
+         *
+         * @param quantile  fraction of values from 0 to 1, for example 0.99 for the 99th percentile
+         */
+        public long valueAtQuantile(double quantile) {
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return highestValue(i);
+            }
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,272 @@
+package pos.model;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of POS terminal messages, an alternative to JSON for lane traffic.
+ * Its content type is {@value #CONTENT_TYPE}.
+ *
+ * Messages are built of the following values:
+ * <ul>
+ * <li>varint: an unsigned integer in 7-bit groups, least significant group first, where
+ *     the high bit of every byte tells whether more bytes follow</li>
+ * <li>length: varint of the length plus one, where zero stands for {@code null}</li>
+ * <li>string: length of its UTF-8 bytes, followed by the bytes</li>
+ * <li>integer: varint of the zig-zag encoded value plus one, where zero stands for {@code null}</li>
+ * <li>decimal: varint of the zig-zag encoded scale plus one (zero stands for {@code null}), followed
+ *     by length and bytes of the unscaled value in two's complement, big-endian</li>
+ * </ul>
+ * A pricing message is a length of the array followed by every {@code Pricing} as a string
+ * (product code), an integer (count) and a decimal (price). A quantities message is a length of
+ * the map followed by product codes (strings) and quantities (integers). A product code, a terminal ID
+ * and a total are a single string or decimal.
+ *
+ * Decoding methods throw {@code IllegalArgumentException} when the message is malformed.
+ */
+public final class BinaryCodec {
+
+    public static final String CONTENT_TYPE = "application/x-pos-binary";
+
+    private BinaryCodec() {}
+
+    public static byte[] encodeString(String s) {
+        Writer w = new Writer(16);
+        w.string(s);
+        return w.toByteArray();
+    }
+
+    public static String decodeString(byte[] message) {
+        Reader r = new Reader(message);
+        String s = r.string();
+        r.end();
+        return s;
+    }
+
+    public static byte[] encodeDecimal(BigDecimal d) {
+        Writer w = new Writer(16);
+        w.decimal(d);
+        return w.toByteArray();
+    }
+
+    public static BigDecimal decodeDecimal(byte[] message) {
+        Reader r = new Reader(message);
+        BigDecimal d = r.decimal();
+        r.end();
+        return d;
+    }
+
+    /**
+     * @throws IllegalArgumentException if any of the {@code Pricing} objects is {@code null}
+     */
+    public static byte[] encodePricing(Pricing... pricings) {
+        Writer w = new Writer(pricings == null ? 1 : 1 + pricings.length * 16);
+        w.length(pricings == null ? -1 : pricings.length);
+        if (pricings != null) {
+            for (Pricing p : pricings) {
+                if (p == null) {
+                    throw new IllegalArgumentException("Pricing array contains null");
+                }
+                w.string(p.getProductCode());
+                w.integer(p.getCount());
+                w.decimal(p.getPrice());
+            }
+        }
+        return w.toByteArray();
+    }
+
+    public static Pricing[] decodePricing(byte[] message) {
+        Reader r = new Reader(message);
+        int n = r.length();
+        Pricing[] pricings = null;
+        if (n >= 0) {
+            pricings = new Pricing[n];
+            for (int i = 0; i < n; i++) {
+                pricings[i] = new Pricing(r.string(), r.integer(), r.decimal());
+            }
+        }
+        r.end();
+        return pricings;
+    }
+
+    public static byte[] encodeQuantities(Map<String, Integer> quantities) {
+        Writer w = new Writer(quantities == null ? 1 : 1 + quantities.size() * 12);
+        w.length(quantities == null ? -1 : quantities.size());
+        if (quantities != null) {
+            for (Map.Entry<String, Integer> e : quantities.entrySet()) {
+                w.string(e.getKey());
+                w.integer(e.getValue());
+            }
+        }
+        return w.toByteArray();
+    }
+
+    public static Map<String, Integer> decodeQuantities(byte[] message) {
+        Reader r = new Reader(message);
+        int n = r.length();
+        Map<String, Integer> quantities = null;
+        if (n >= 0) {
+            quantities = new LinkedHashMap<>();
+            for (int i = 0; i < n; i++) {
+                quantities.put(r.string(), r.integer());
+            }
+        }
+        r.end();
+        return quantities;
+    }
+
+    private static final class Writer {
+
+        private byte[] buf;
+        private int size;
+
+        Writer(int capacity) {
+            buf = new byte[Math.max(capacity, 16)];
+        }
+
+        void varint(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+        }
+
+        void length(int length) {
+            varint(length + 1L);
+        }
+
+        void bytes(byte[] b) {
+            length(b.length);
+            ensure(b.length);
+            System.arraycopy(b, 0, buf, size, b.length);
+            size += b.length;
+        }
+
+        void string(String s) {
+            if (s == null) {
+                length(-1);
+            } else {
+                bytes(s.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void integer(Integer i) {
+            varint(i == null ? 0 : zigZag(i) + 1);
+        }
+
+        void decimal(BigDecimal d) {
+            if (d == null) {
+                varint(0);
+            } else {
+                varint(zigZag(d.scale()) + 1);
+                bytes(d.unscaledValue().toByteArray());
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void ensure(int n) {
+            if (size + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+            }
+        }
+
+        private static long zigZag(int v) {
+            return ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            if (buf == null) {
+                throw malformed("no message");
+            }
+            this.buf = buf;
+        }
+
+        long varint() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos == buf.length) {
+                    throw malformed("truncated at " + pos);
+                }
+                byte b = buf[pos++];
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+            throw malformed("varint is too long at " + pos);
+        }
+
+        // -1 for null
+        int length() {
+            long v = varint();
+            if (v - 1 > buf.length - pos) {
+                throw malformed("length " + (v - 1) + " exceeds the message at " + pos);
+            }
+            return (int) (v - 1);
+        }
+
+        byte[] bytes(int length) {
+            byte[] b = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return b;
+        }
+
+        String string() {
+            int length = length();
+            if (length < 0) return null;
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        Integer integer() {
+            long v = varint();
+            if (v == 0) return null;
+            if (v - 1 > 0xFFFFFFFFL) {
+                throw malformed("integer is out of range at " + pos);
+            }
+            return unZigZag((int) (v - 1));
+        }
+
+        BigDecimal decimal() {
+            long scale = varint();
+            if (scale == 0) return null;
+            if (scale - 1 > 0xFFFFFFFFL) {
+                throw malformed("scale is out of range at " + pos);
+            }
+            int length = length();
+            if (length <= 0) {
+                throw malformed("decimal has no unscaled value at " + pos);
+            }
+            return new BigDecimal(new BigInteger(bytes(length)), unZigZag((int) (scale - 1)));
+        }
+
+        void end() {
+            if (pos != buf.length) {
+                throw malformed((buf.length - pos) + " unexpected trailing bytes");
+            }
+        }
+
+        private static int unZigZag(int v) {
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        private static IllegalArgumentException malformed(String reason) {
+            return new IllegalArgumentException("Malformed binary message: " + reason);
+        }
+    }
+
+}
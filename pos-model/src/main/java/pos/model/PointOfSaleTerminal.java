@@ -1,6 +1,7 @@
 package pos.model;
 
 import java.math.BigDecimal;
+import java.util.Map;
 
 /**
  * Describes the POS terminal contract, implemented by the client terminal and server implementation. 
@@ -16,6 +17,19 @@ public interface PointOfSaleTerminal {
      * Add zero or more {@link Pricing} objects to the terminal.
      */
     void setPricing(Pricing ... pricings);
+    
+    /**
+     * Apply a batch of pricing changes: set prices of tiers, and remove tiers.  Deltas are applied
+     * in their order, and the batch is applied as a whole: scans and totals see the pricing either
+     * before or after the whole batch.  A product without tiers is removed from pricing, unless
+     * it is in the shopping cart, in which case the batch is rejected, so that scanned pieces
+     * are never left without a price.
+     * 
+     * @param deltas  Zero or more pricing changes
+     * @throws PointOfSaleTerminalException when any of the deltas is invalid, or removes the last tier
+     *         of a product in the shopping cart, and then none is applied
+     */
+    void updatePricing(PricingDelta ... deltas) throws PointOfSaleTerminalException;
 
     /**
      * Scan a single product code.  Scanning a product will add on piece of it to the shopping cart.
@@ -26,6 +40,24 @@ public interface PointOfSaleTerminal {
      */
     void scan(String productCode) throws PointOfSaleTerminalException;
     
+    /**
+     * Scan a batch of products at once.  Scanning a batch is the same as scanning every product
+     * as many times as its quantity, except that the batch is applied as a whole: when any product
+     * code in the batch is not found in pricing, none of the products is added to the shopping cart.
+     * 
+     * @param quantities  Product codes mapped to how many pieces of the product are scanned
+     * @throws PointOfSaleTerminalException when any of the product codes is not found in pricing,
+     * or when any of the quantities is not positive
+     */
+    void scanAll(Map<String, Integer> quantities) throws PointOfSaleTerminalException;
+    
+    /**
+     * Get the running total of the shopping cart, which is the same as its grand total, but
+     * which does not end the sale, so that it may be shown after every scan.  If the shopping
+     * cart is empty, the method returns 0.00
+     */
+    BigDecimal subtotal();
+    
     /**
      * Calculate the shopping cart's grand total.  If the shopping cart is empty, the method
      * return 0.00
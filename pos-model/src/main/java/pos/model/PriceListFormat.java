@@ -0,0 +1,46 @@
+package pos.model;
+
+/**
+ * Formats of price lists, which are imported as a stream, one {@code Pricing} per line.
+ */
+public enum PriceListFormat {
+
+    /**
+     * Comma-separated product code, count and price, optionally preceded by a header line,
+     * for example {@code A,3,3.00}
+     */
+    CSV(PriceListFormat.CSV_CONTENT_TYPE),
+
+    /**
+     * JSON lines (newline-delimited JSON), where every line is a {@code Pricing} object,
+     * for example <code>{"productCode":"A","count":3,"price":3.00}</code>
+     */
+    JSON_LINES(PriceListFormat.JSON_LINES_CONTENT_TYPE);
+
+    public static final String CSV_CONTENT_TYPE = "text/csv";
+    public static final String JSON_LINES_CONTENT_TYPE = "application/x-ndjson";
+
+    private final String contentType;
+
+    PriceListFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Get the format of the given content type, ignoring its parameters, such as charset
+     *
+     * @throws IllegalArgumentException if the content type is not a price list format
+     */
+    public static PriceListFormat forContentType(String contentType) {
+        String mimeType = contentType == null ? "" : contentType.split(";")[0].trim();
+        for (PriceListFormat f : values()) {
+            if (f.contentType.equalsIgnoreCase(mimeType)) return f;
+        }
+        throw new IllegalArgumentException("Not a price list content type: " + contentType);
+    }
+
+}
@@ -0,0 +1,100 @@
+package pos.model;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * A change of one pricing tier of a product: either an upsert, which sets the price of the tier
+ * with the given count (adding the tier, if the product has none with this count), or a removal
+ * of the tier with the given count.
+ */
+public final class PricingDelta {
+
+    public enum Type {
+        /** Set the price of the tier */
+        UPSERT,
+        /** Remove the tier */
+        REMOVE
+    }
+
+    private final Type type;
+    private final String productCode;
+    private final Integer count;
+    private final BigDecimal price;
+
+    // necessary for JSON parsing
+    @SuppressWarnings("unused")
+    private PricingDelta() {
+        this(null, null, null, null);
+    }
+
+    public PricingDelta(Type type, String productCode, Integer count, BigDecimal price) {
+        this.type = type;
+        this.productCode = productCode;
+        this.count = count;
+        this.price = price;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getProductCode() {
+        return productCode;
+    }
+
+    public Integer getCount() {
+        return count;
+    }
+
+    /**
+     * New price of the tier, which is {@code null} for a removal
+     */
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    /**
+     * The tier as a {@code Pricing} object, if this is an upsert
+     */
+    public Pricing toPricing() {
+        return new Pricing(productCode, count, price);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (getClass() != obj.getClass()) return false;
+        PricingDelta other = (PricingDelta) obj;
+        return type == other.type &&
+               Objects.equals(productCode, other.productCode) &&
+               Objects.equals(count, other.count) &&
+               Objects.equals(price, other.price);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, productCode, count, price);
+    }
+
+    @Override
+    public String toString() {
+        return "PricingDelta [type=" + type + ", productCode=" + productCode + ", count=" + count + ", price=" + price + "]";
+    }
+
+    /**
+     * Convenience method to return a delta which sets the price of the tier
+     */
+    public static PricingDelta upsert(Pricing pricing) {
+        return new PricingDelta(Type.UPSERT, pricing.getProductCode(), pricing.getCount(), pricing.getPrice());
+    }
+
+    /**
+     * Convenience method to return a delta which removes the tier of the product with the given count
+     */
+    public static PricingDelta remove(String productCode, int count) {
+        return new PricingDelta(Type.REMOVE, productCode, count, null);
+    }
+
+}
@@ -0,0 +1,40 @@
+package pos.model;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hash of a list of {@code Pricing} objects, which identifies the list when it is set
+ * again, so that a client may send the hash of a price list the service has already seen instead
+ * of the list itself.
+ *
+ * The hash is the SHA-256 of the pricing message of {@link BinaryCodec} in lower case hex, so it
+ * depends on the order of the objects and on the scale of their prices, but not on the format
+ * the list has been sent in.
+ */
+public final class PricingDigest {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private PricingDigest() {}
+
+    public static String of(Pricing... pricings) {
+        byte[] hash = sha256().digest(BinaryCodec.encodePricing(pricings));
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package pos.model;
+
+/**
+ * Report that a scanned product has no pricing on the terminal, so that the scan is rejected,
+ * and the rest of the terminal is not affected
+ */
+@SuppressWarnings("serial")
+public class UnknownProductException extends PointOfSaleTerminalException {
+
+    public UnknownProductException(String message) {
+        super(message);
+    }
+
+}
@@ -8,7 +8,7 @@ import org.springframework.context.annotation.ComponentScan;
  * Starts POS terminal server
  */
 @SpringBootApplication
-@ComponentScan(basePackages = {"pos.controller", "pos.service"})
+@ComponentScan(basePackages = {"pos.controller", "pos.service", "pos.metrics", "pos.cluster"})
 public class Application {
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
@@ -0,0 +1,168 @@
+package pos.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import pos.service.TerminalIds;
+
+/**
+ * Membership of this server in a cluster of POS servers, which decides what node owns a terminal.
+ *
+ * Terminal IDs start with a shard number (see {@link TerminalIds}), and shards
+ * are assigned to nodes by a consistent-hash {@link HashRing} of node base URLs. Terminals are only
+ * activated in shards owned by this node, so that a terminal is always owned by the node where it
+ * has been activated, until the membership changes.
+ *
+ * A server which is not configured with its own URL is a standalone server, which owns all the shards.
+ */
+@Component
+public final class Cluster {
+
+    public static final int SHARD_COUNT = TerminalIds.SHARD_COUNT;
+
+    static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private final String self;
+    private final int virtualNodes;
+    private final AtomicReference<Membership> membership;
+
+    /**
+     * Create a standalone server
+     */
+    public Cluster() {
+        this("", "", DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param self          base URL of this server, as other nodes call it, or empty for a standalone server
+     * @param nodes         comma-separated base URLs of all the nodes (this one may be omitted)
+     * @param virtualNodes  number of points of every node on the hash ring
+     */
+    @Autowired
+    public Cluster(
+            @Value("${pos.cluster.self:}") String self,
+            @Value("${pos.cluster.nodes:}") String nodes,
+            @Value("${pos.cluster.virtual-nodes:128}") int virtualNodes) {
+        this.self = normalize(self);
+        this.virtualNodes = virtualNodes;
+        List<String> urls = new ArrayList<>();
+        if (!nodes.isEmpty()) {
+            urls.addAll(Arrays.asList(nodes.split(",")));
+        }
+        if (!isStandalone()) {
+            urls.add(this.self);
+        }
+        membership = new AtomicReference<>(membership(urls));
+    }
+
+    /**
+     * Base URL of this server, which is empty if the server is standalone
+     */
+    public String getSelf() {
+        return self;
+    }
+
+    public boolean isStandalone() {
+        return self.isEmpty();
+    }
+
+    /**
+     * Base URLs of all the nodes of the cluster in the order of their names
+     */
+    public List<String> getNodes() {
+        return membership.get().ring.getNodes();
+    }
+
+    /**
+     * Replace the nodes of the cluster. When this node is not one of them, it has left the cluster,
+     * and it owns no shards.
+     *
+     * @throws IllegalStateException if this server is standalone
+     */
+    public void setNodes(Collection<String> nodes) {
+        if (isStandalone()) {
+            throw new IllegalStateException("Standalone server cannot join a cluster, its URL is not configured");
+        }
+        membership.set(membership(nodes));
+    }
+
+    /**
+     * Create a new unique terminal ID in one of the shards owned by this node
+     */
+    public String newTerminalId() {
+        int[] owned = membership.get().ownedShards;
+        int shard = owned[ThreadLocalRandom.current().nextInt(owned.length)];
+        return TerminalIds.newId(shard);
+    }
+
+    /**
+     * Find the base URL of the node which owns the terminal, or return {@code null} when it is
+     * this node, or when the ID does not belong to any shard
+     */
+    public String ownerOf(String terminalId) {
+        if (isStandalone()) return null;
+        int shard = shardOf(terminalId);
+        if (shard < 0) return null;
+        String owner = membership.get().owners[shard];
+        return owner.equals(self) ? null : owner;
+    }
+
+    /**
+     * Get the shard number encoded in the terminal ID, or -1 if the ID is not valid
+     */
+    public static int shardOf(String terminalId) {
+        long id = TerminalIds.parse(terminalId);
+        return id == TerminalIds.INVALID ? -1 : TerminalIds.shard(id);
+    }
+
+    private Membership membership(Collection<String> nodes) {
+        List<String> urls = new ArrayList<>();
+        for (String node : nodes) {
+            String url = normalize(node);
+            if (!url.isEmpty()) urls.add(url);
+        }
+        return new Membership(new HashRing(urls, virtualNodes), self);
+    }
+
+    private static String normalize(String url) {
+        String s = url.trim();
+        return s.endsWith("/") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    /**
+     * Immutable ring and owners of every shard
+     */
+    private static final class Membership {
+        final HashRing ring;
+        final String[] owners;
+        final int[] ownedShards;
+
+        Membership(HashRing ring, String self) {
+            this.ring = ring;
+            owners = new String[SHARD_COUNT];
+            int[] owned = new int[SHARD_COUNT];
+            int n = 0;
+            for (int shard = 0; shard < SHARD_COUNT; shard++) {
+                owners[shard] = ring.isEmpty() ? self : ring.nodeFor(Integer.toString(shard));
+                if (owners[shard].equals(self)) {
+                    owned[n++] = shard;
+                }
+            }
+            if (n == 0) {
+                // a node which has left the cluster still has to activate terminals, they are
+                // served here while they are here, and handed off on the next membership change
+                owned[n++] = 0;
+            }
+            ownedShards = Arrays.copyOf(owned, n);
+        }
+    }
+
+}
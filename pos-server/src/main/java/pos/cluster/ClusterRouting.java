@@ -0,0 +1,69 @@
+package pos.cluster;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import pos.service.TerminalTransfer;
+
+/**
+ * Redirects requests for terminals owned by other nodes to their owners with HTTP status
+ * 307 (Temporary Redirect), which tells clients to repeat the same request there.
+ *
+ * A terminal which is still on this node is served here, even if it belongs to another node,
+ * so that its requests do not fail while it is being handed off.
+ *
+ * Requests with {@code Expect: 100-continue}, such as streamed price lists, are redirected before
+ * their body is read, so that clients can send it to the owner.
+ */
+@Configuration
+public class ClusterRouting implements WebMvcConfigurer, HandlerInterceptor {
+
+    private static final String TERMINAL_ID = "terminalId";
+
+    private final Cluster cluster;
+    private final TerminalTransfer transfer;
+
+    @Autowired
+    public ClusterRouting(Cluster cluster, TerminalTransfer transfer) {
+        this.cluster = cluster;
+        this.transfer = transfer;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String terminalId = variables == null ? null : variables.get(TERMINAL_ID);
+        if (terminalId == null || transfer.contains(terminalId)) {
+            return true;
+        }
+        String owner = cluster.ownerOf(terminalId);
+        if (owner == null) {
+            return true;
+        }
+        String query = request.getQueryString();
+        response.setStatus(HttpStatus.TEMPORARY_REDIRECT.value());
+        response.setHeader("Location", owner + request.getRequestURI() + (query == null ? "" : "?" + query));
+        if (request.getHeader("Expect") != null) {
+            // the client has not sent the body, and will send it to the owner, so the connection is not reused
+            response.setHeader("Connection", "close");
+        }
+        return false;
+    }
+
+}
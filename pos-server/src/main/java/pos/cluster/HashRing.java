@@ -0,0 +1,101 @@
+package pos.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent-hash ring of cluster nodes. Every node is placed on the ring at a number of
+ * points (virtual nodes), and a key belongs to the node of the first point at or after the key's hash,
+ * so that when a node joins or leaves, only the keys next to its points change their owner.
+ *
+ * Hashes are derived from MD5, so that all the nodes of a cluster agree on the owners.
+ */
+public final class HashRing {
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * @param nodes         node names, for example base URLs
+     * @param virtualNodes  number of points of every node
+     */
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Number of virtual nodes must be positive: " + virtualNodes);
+        }
+        TreeSet<String> sorted = new TreeSet<>(nodes);
+        this.nodes = Collections.unmodifiableList(Arrays.asList(sorted.toArray(new String[0])));
+
+        int n = sorted.size() * virtualNodes;
+        long[] unsortedPoints = new long[n];
+        String[] unsortedOwners = new String[n];
+        int i = 0;
+        for (String node : sorted) {
+            for (int v = 0; v < virtualNodes; v++, i++) {
+                unsortedPoints[i] = hash(node + "#" + v);
+                unsortedOwners[i] = node;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int j = 0; j < n; j++) {
+            order[j] = j;
+        }
+        // equal points are ordered by node name, so that every node builds the same ring
+        Arrays.sort(order, (a, b) -> unsortedPoints[a] != unsortedPoints[b] ?
+                Long.compare(unsortedPoints[a], unsortedPoints[b]) : unsortedOwners[a].compareTo(unsortedOwners[b]));
+        points = new long[n];
+        owners = new String[n];
+        for (int j = 0; j < n; j++) {
+            points[j] = unsortedPoints[order[j]];
+            owners[j] = unsortedOwners[order[j]];
+        }
+    }
+
+    /**
+     * Nodes of the ring in the order of their names
+     */
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * Find the node which owns the key, or return {@code null} if the ring is empty
+     */
+    public String nodeFor(String key) {
+        if (points.length == 0) return null;
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        } else {
+            // the first of equal points
+            while (i > 0 && points[i - 1] == points[i]) i--;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+
+    static long hash(String s) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(s.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every Java platform supports MD5
+        }
+        long h = 0;
+        for (int i = 0; i < 8; i++) {
+            h = (h << 8) | (digest[i] & 0xFF);
+        }
+        return h;
+    }
+
+}
@@ -0,0 +1,207 @@
+package pos.cluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import pos.client.http.HTTPClient;
+import pos.client.http.HTTPClient.HTTPResponse;
+import pos.service.TerminalState;
+import pos.service.TerminalTransfer;
+
+/**
+ * Rebalances terminals when the cluster membership changes: the new list of nodes is sent
+ * to all the old and new nodes, and then every node hands off the terminals it no longer owns
+ * to their new owners. When a node rejects the change, the nodes which have already accepted it
+ * are sent their previous lists of nodes again.
+ *
+ * Terminals are sent to every owner in batches. A batch carries the pricing shared by its terminals
+ * once, and leaves out the pricing which is the same as the owner's store-wide catalog, which is found
+ * out by its hash. A terminal is detached before it is sent, so that it is never changed on two nodes,
+ * and attached back when its batch could not be sent, in which case it stays on this node, where
+ * requests for it are still served, until the next membership change.
+ */
+@Component
+public final class TerminalHandoff {
+
+    public static final String URN_CLUSTER_NODES = "/cluster/nodes";
+    public static final String URN_CLUSTER_TERMINALS = "/cluster/terminals";
+    public static final String URN_CLUSTER_CATALOG = "/cluster/catalog";
+
+    // largest number of terminals sent in one request
+    static final int BATCH_SIZE = 500;
+
+    private final Cluster cluster;
+    private final TerminalTransfer transfer;
+    private final ObjectMapper objectMapper;
+    private final HTTPClient httpClient;
+
+    @Autowired
+    public TerminalHandoff(Cluster cluster, TerminalTransfer transfer, ObjectMapper objectMapper) {
+        this(cluster, transfer, objectMapper, HTTPClient.getClient());
+    }
+
+    TerminalHandoff(Cluster cluster, TerminalTransfer transfer, ObjectMapper objectMapper, HTTPClient httpClient) {
+        this.cluster = cluster;
+        this.transfer = transfer;
+        this.objectMapper = objectMapper;
+        this.httpClient = httpClient;
+    }
+
+    @PreDestroy
+    void close() {
+        httpClient.close();
+    }
+
+    /**
+     * Replace the nodes of the cluster on this node, and, if requested, on all the other old and new nodes,
+     * and then hand off the terminals this node no longer owns.
+     *
+     * @return number of terminals handed off by this node
+     * @throws IllegalStateException if this server is standalone
+     */
+    public synchronized int changeMembership(List<String> nodes, boolean propagate) {
+        List<String> previous = cluster.getNodes();
+        Set<String> notified = new LinkedHashSet<>(previous);
+        cluster.setNodes(nodes);
+        if (propagate) {
+            notified.addAll(cluster.getNodes());
+            notified.remove(cluster.getSelf());
+            String json = toJson(cluster.getNodes());
+            // nodes which have accepted the change, mapped to their previous nodes
+            Map<String, String> changed = new LinkedHashMap<>();
+            for (String node : notified) {
+                String before = nodesOf(node);
+                String rejection = before == null ? "its nodes could not be read" : setNodes(node, json);
+                if (rejection != null) {
+                    rollBack(previous, changed);
+                    throw new IllegalStateException("Node " + node + " rejected the membership change: " + rejection);
+                }
+                changed.put(node, before);
+            }
+        }
+        return handOff();
+    }
+
+    /**
+     * Send every terminal owned by another node to its owner
+     *
+     * @return number of terminals handed off
+     */
+    public int handOff() {
+        int moved = 0;
+        Map<String, List<TerminalState>> batches = new HashMap<>();
+        Map<String, String> catalogHashes = new HashMap<>();
+        for (String terminalId : transfer.terminalIds()) {
+            String owner = cluster.ownerOf(terminalId);
+            if (owner == null) continue;
+            TerminalState state = transfer.detach(terminalId);
+            if (state == null) continue; // closed in the meantime
+            List<TerminalState> batch = batches.computeIfAbsent(owner, o -> new ArrayList<>());
+            batch.add(state);
+            if (batch.size() == BATCH_SIZE) {
+                moved += send(owner, batch, catalogHashes);
+                batch.clear();
+            }
+        }
+        for (Map.Entry<String, List<TerminalState>> e : batches.entrySet()) {
+            if (!e.getValue().isEmpty()) {
+                moved += send(e.getKey(), e.getValue(), catalogHashes);
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Content hash of the pricing of this node's store-wide catalog
+     */
+    public String catalogHash() {
+        return transfer.catalogHash();
+    }
+
+    /**
+     * Attach terminals handed off by another node
+     */
+    public void receive(List<TerminalState> states) {
+        transfer.attach(states);
+    }
+
+    // send the batch, or attach it back, and return the number of terminals sent
+    private int send(String node, List<TerminalState> batch, Map<String, String> catalogHashes) {
+        // the node's catalog hash is asked once per handoff, and it is empty when it could not be found out
+        String catalogHash = catalogHashes.computeIfAbsent(node, this::catalogHashOf);
+        Set<String> known = new HashSet<>();
+        known.add(catalogHash);
+        List<TerminalState> sent = new ArrayList<>(batch.size());
+        for (TerminalState state : batch) {
+            sent.add(known.add(state.getPricingHash()) ? state : state.withoutPricing());
+        }
+        try {
+            HTTPResponse r = httpClient.putJson(node + URN_CLUSTER_TERMINALS, toJson(sent));
+            if (r.getStatusCode() == HTTPResponse.OK) {
+                return batch.size();
+            }
+        } catch (HTTPClient.HTTPClientException e) {
+            // attached back below
+        }
+        transfer.attach(batch);
+        return 0;
+    }
+
+    private String catalogHashOf(String node) {
+        try {
+            HTTPResponse r = httpClient.get(node + URN_CLUSTER_CATALOG);
+            return r.getStatusCode() == HTTPResponse.OK ? r.getBody() : "";
+        } catch (HTTPClient.HTTPClientException e) {
+            return "";
+        }
+    }
+
+    // nodes of the cluster on the node as JSON, or null if they could not be read
+    private String nodesOf(String node) {
+        try {
+            HTTPResponse r = httpClient.get(node + URN_CLUSTER_NODES);
+            return r.getStatusCode() == HTTPResponse.OK ? r.getBody() : null;
+        } catch (HTTPClient.HTTPClientException e) {
+            return null;
+        }
+    }
+
+    // set the nodes of the cluster on the node without passing them on, and return why it has failed, or null
+    private String setNodes(String node, String json) {
+        try {
+            HTTPResponse r = httpClient.putJson(node + URN_CLUSTER_NODES + "?propagate=false", json);
+            return r.getStatusCode() == HTTPResponse.OK ? null : r.getBody();
+        } catch (HTTPClient.HTTPClientException e) {
+            return e.getMessage();
+        }
+    }
+
+    // restore the previous nodes of the cluster on this node, and on the nodes which have accepted the change
+    private void rollBack(List<String> previous, Map<String, String> changed) {
+        cluster.setNodes(previous);
+        changed.forEach(this::setNodes);
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains clustering of POS servers: terminals are spread over the nodes of the cluster
+ * by consistent hashing of the shards encoded in their IDs, requests are redirected to the owning node,
+ * and terminals are handed off to their new owners when nodes join or leave
+ */
+package pos.cluster;
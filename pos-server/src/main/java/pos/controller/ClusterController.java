@@ -0,0 +1,75 @@
+package pos.controller;
+
+import static pos.cluster.TerminalHandoff.*;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import pos.cluster.Cluster;
+import pos.cluster.TerminalHandoff;
+import pos.service.TerminalState;
+
+/**
+ * Manages cluster membership, and receives terminals handed off by other nodes.
+ */
+@RestController
+public class ClusterController {
+
+    private final Cluster cluster;
+    private final TerminalHandoff handoff;
+
+    @Autowired
+    public ClusterController(Cluster cluster, TerminalHandoff handoff) {
+        this.cluster = cluster;
+        this.handoff = handoff;
+    }
+
+    @GetMapping(URN_CLUSTER_NODES)
+    public List<String> nodes() {
+        return cluster.getNodes();
+    }
+
+    /**
+     * Replace the nodes of the cluster, and return the number of terminals this node has handed off
+     */
+    @PutMapping(URN_CLUSTER_NODES)
+    public int setNodes(@RequestBody List<String> nodes, @RequestParam(defaultValue = "true") boolean propagate) {
+        return handoff.changeMembership(nodes, propagate);
+    }
+
+    /**
+     * Content hash of the pricing of this node's store-wide catalog, which terminals handed off to it leave out
+     */
+    @GetMapping(URN_CLUSTER_CATALOG)
+    public String catalogHash() {
+        return handoff.catalogHash();
+    }
+
+    /**
+     * Attach a batch of terminals handed off by another node
+     */
+    @PutMapping(URN_CLUSTER_TERMINALS)
+    public void receive(@RequestBody List<TerminalState> states) {
+        handoff.receive(states);
+    }
+
+    /**
+     * Return HTTP status "Conflict" when a standalone server is asked to join a cluster,
+     * or other nodes reject the membership change
+     */
+    @ExceptionHandler(IllegalStateException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    String membershipConflict(IllegalStateException e) {
+        return e.getMessage();
+    }
+
+}
@@ -0,0 +1,32 @@
+package pos.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import pos.metrics.Metrics;
+
+/**
+ * Exposes server metrics in Prometheus text format, so that they may be scraped by Prometheus.
+ */
+@RestController
+public class MetricsController {
+
+    private static final String URN_METRICS = "/metrics";
+    private static final String PROMETHEUS_TEXT_FORMAT = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Metrics metrics;
+
+    @Autowired
+    public MetricsController(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @GetMapping(value = URN_METRICS, produces = PROMETHEUS_TEXT_FORMAT)
+    public String metrics() {
+        StringBuilder out = new StringBuilder(4096);
+        metrics.writeTo(out);
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,88 @@
+package pos.controller;
+
+import static pos.controller.PointOfSaleController.*;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import pos.model.BinaryCodec;
+import pos.service.PointOfSaleService;
+
+/**
+ * Serves POS terminal operations in the compact binary format of {@link BinaryCodec}.
+ *
+ * It is mapped to the same URLs as {@link PointOfSaleController}, but only for requests which
+ * content type is {@value BinaryCodec#CONTENT_TYPE}, so that the client chooses the format
+ * by the content type of its requests.  Every request has to have the content type, even
+ * the one without a body.
+ */
+@RestController
+@RequestMapping(consumes = BinaryCodec.CONTENT_TYPE, produces = BinaryCodec.CONTENT_TYPE)
+public class PointOfSaleBinaryController {
+
+    private final PointOfSaleService posService;
+
+    @Autowired
+    public PointOfSaleBinaryController(PointOfSaleService posService) {
+        this.posService = posService;
+    }
+
+    /**
+     * Tell a client that the binary format is supported. A service without it does not map this URN
+     * for any format, so, unlike other requests, a binary request of it has no effect on such a service.
+     */
+    @GetMapping(URN_FORMAT)
+    public byte[] format() {
+        return BinaryCodec.encodeString(BinaryCodec.CONTENT_TYPE);
+    }
+
+    @PostMapping(URN_TERMINAL_ACTIVATE)
+    public byte[] activate() {
+        return BinaryCodec.encodeString(posService.activate());
+    }
+
+    @PutMapping(URN_PRICING)
+    public ResponseEntity<Void> setPricing(@PathVariable String terminalId, @RequestBody byte[] body) {
+        return withETag(posService.setPricing(terminalId, BinaryCodec.decodePricing(body)));
+    }
+
+    @PutMapping(URN_SCAN)
+    public void scan(@PathVariable String terminalId, @RequestBody byte[] body) {
+        posService.scan(terminalId, BinaryCodec.decodeString(body));
+    }
+
+    @PutMapping(URN_SCAN_BATCH)
+    public void scanAll(@PathVariable String terminalId, @RequestBody byte[] body) {
+        posService.scanAll(terminalId, BinaryCodec.decodeQuantities(body));
+    }
+
+    @GetMapping(URN_SUBTOTAL)
+    public byte[] subtotal(@PathVariable String terminalId) {
+        return BinaryCodec.encodeDecimal(posService.subtotal(terminalId));
+    }
+
+    @PostMapping(URN_TOTAL)
+    public byte[] calculateTotal(@PathVariable String terminalId) {
+        return BinaryCodec.encodeDecimal(posService.calculateTotal(terminalId));
+    }
+
+    /**
+     * Return HTTP status "Bad Request" when a message cannot be decoded
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    String malformedMessage(IllegalArgumentException e) {
+        return e.getMessage();
+    }
+
+}
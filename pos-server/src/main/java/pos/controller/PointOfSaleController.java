@@ -1,23 +1,36 @@
 package pos.controller;
 
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import pos.model.PointOfSaleTerminalException;
+import pos.model.PriceListFormat;
 import pos.model.Pricing;
+import pos.model.PricingDelta;
+import pos.model.UnknownProductException;
 import pos.service.PointOfSaleService;
 import pos.service.PointOfSaleServiceException;
+import pos.service.TerminalLimitExceededException;
 
 /**
  * This controller implements {@link PointOfSaleService} by parsing HTTP requests, delegating
@@ -27,18 +40,32 @@ import pos.service.PointOfSaleServiceException;
 @RequestMapping
 public class PointOfSaleController implements PointOfSaleService {
 
-    private static final String URN_TERMINAL = "/terminal";
-    private static final String URN_TERMINAL_ACTIVATE = URN_TERMINAL + "/activate";
-    private static final String URN_TERMINAL_ID = URN_TERMINAL + "/{terminalId}";
-    private static final String URN_PRICING = URN_TERMINAL_ID + "/pricing";
-    private static final String URN_SCAN = URN_TERMINAL_ID + "/scan";
-    private static final String URN_TOTAL = URN_TERMINAL_ID + "/total";
+    static final String URN_CATALOG = "/catalog";
+    static final String URN_CATALOG_IMPORT = URN_CATALOG + "/import";
+    static final String URN_CATALOG_PRICING = URN_CATALOG + "/pricing";
+    static final String URN_FORMAT = "/format";
+    static final String URN_TERMINAL = "/terminal";
+    static final String URN_TERMINAL_ACTIVATE = URN_TERMINAL + "/activate";
+    static final String URN_TERMINAL_ID = URN_TERMINAL + "/{terminalId}";
+    static final String URN_PRICING = URN_TERMINAL_ID + "/pricing";
+    static final String URN_PRICING_IMPORT = URN_PRICING + "/import";
+    static final String URN_PRICING_DELTA = URN_PRICING + "/delta";
+    static final String URN_PRICING_CACHED = URN_PRICING + "/cached/{pricingHash}";
+    static final String URN_SCAN = URN_TERMINAL_ID + "/scan";
+    static final String URN_SCAN_BATCH = URN_SCAN + "/batch";
+    static final String URN_SUBTOTAL = URN_TERMINAL_ID + "/subtotal";
+    static final String URN_TOTAL = URN_TERMINAL_ID + "/total";
+    
+    // the largest number of products found by a pricing query, unless the request limits it
+    private static final String DEFAULT_FIND_LIMIT = "1000";
     
     private final PointOfSaleService posService;
+    private final ObjectMapper objectMapper;
     
     @Autowired
-    public PointOfSaleController(PointOfSaleService posService) {
+    public PointOfSaleController(PointOfSaleService posService, ObjectMapper objectMapper) {
         this.posService = posService;
+        this.objectMapper = objectMapper;
     }
     
     @PostMapping(URN_TERMINAL_ACTIVATE)
@@ -47,10 +74,89 @@ public class PointOfSaleController implements PointOfSaleService {
         return posService.activate();
     }
 
+    @PutMapping(URN_CATALOG)
+    @Override
+    public long publishCatalog(@RequestBody Pricing... pricings) {
+        return posService.publishCatalog(pricings);
+    }
+
+    /**
+     * Publish a new catalog from a price list, which is parsed as it is being received
+     */
+    @PutMapping(value = URN_CATALOG_IMPORT,
+            consumes = {PriceListFormat.CSV_CONTENT_TYPE, PriceListFormat.JSON_LINES_CONTENT_TYPE})
+    public int importCatalog(@RequestHeader("Content-Type") String contentType, InputStream priceList) {
+        return importCatalog(PriceListParser.parse(PriceListFormat.forContentType(contentType), priceList, objectMapper));
+    }
+
+    @Override
+    public int importCatalog(Iterator<Pricing> pricings) {
+        return posService.importCatalog(pricings);
+    }
+
+    /**
+     * Set pricing, and return its content hash in the ETag header
+     */
     @PutMapping(URN_PRICING)
+    public ResponseEntity<Void> putPricing(@PathVariable String terminalId, @RequestBody Pricing... pricings) {
+        return withETag(setPricing(terminalId, pricings));
+    }
+
     @Override
-    public void setPricing(@PathVariable String terminalId, @RequestBody Pricing... pricings) {
-        posService.setPricing(terminalId, pricings);
+    public String setPricing(String terminalId, Pricing... pricings) {
+        return posService.setPricing(terminalId, pricings);
+    }
+
+    /**
+     * Set pricing by its content hash, or return "Not Found" if it is not cached, so that
+     * the client sends it in full
+     */
+    @PutMapping(URN_PRICING_CACHED)
+    public ResponseEntity<Void> putCachedPricing(@PathVariable String terminalId, @PathVariable String pricingHash) {
+        return setCachedPricing(terminalId, pricingHash) ? withETag(pricingHash) : ResponseEntity.notFound().build();
+    }
+
+    @Override
+    public boolean setCachedPricing(String terminalId, String pricingHash) {
+        return posService.setCachedPricing(terminalId, pricingHash);
+    }
+
+    @PostMapping(URN_PRICING_DELTA)
+    @Override
+    public void updatePricing(@PathVariable String terminalId, @RequestBody PricingDelta... deltas) {
+        posService.updatePricing(terminalId, deltas);
+    }
+
+    /**
+     * Set pricing from a price list, which is parsed as it is being received
+     */
+    @PutMapping(value = URN_PRICING_IMPORT,
+            consumes = {PriceListFormat.CSV_CONTENT_TYPE, PriceListFormat.JSON_LINES_CONTENT_TYPE})
+    public int importPricing(@PathVariable String terminalId, @RequestHeader("Content-Type") String contentType,
+            InputStream priceList) {
+        return importPricing(terminalId,
+                PriceListParser.parse(PriceListFormat.forContentType(contentType), priceList, objectMapper));
+    }
+
+    @Override
+    public int importPricing(String terminalId, Iterator<Pricing> pricings) {
+        return posService.importPricing(terminalId, pricings);
+    }
+
+    @GetMapping(URN_CATALOG_PRICING)
+    @Override
+    public Pricing[] findCatalogPricing(@RequestParam(defaultValue = "") String prefix,
+            @RequestParam(required = false) String from, @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = DEFAULT_FIND_LIMIT) int limit) {
+        return posService.findCatalogPricing(prefix, from, to, limit);
+    }
+
+    @GetMapping(URN_PRICING)
+    @Override
+    public Pricing[] findPricing(@PathVariable String terminalId, @RequestParam(defaultValue = "") String prefix,
+            @RequestParam(required = false) String from, @RequestParam(required = false) String to,
+            @RequestParam(defaultValue = DEFAULT_FIND_LIMIT) int limit) {
+        return posService.findPricing(terminalId, prefix, from, to, limit);
     }
 
     @PutMapping(URN_SCAN)
@@ -60,17 +166,36 @@ public class PointOfSaleController implements PointOfSaleService {
         posService.scan(terminalId, productCode.replaceAll("\"", ""));
     }
 
+    @PutMapping(URN_SCAN_BATCH)
+    @Override
+    public void scanAll(@PathVariable String terminalId, @RequestBody Map<String, Integer> quantities) {
+        posService.scanAll(terminalId, quantities);
+    }
+
+    @GetMapping(URN_SUBTOTAL)
+    @Override
+    public BigDecimal subtotal(@PathVariable String terminalId) {
+        return posService.subtotal(terminalId);
+    }
+
     @PostMapping(URN_TOTAL)
     @Override
     public BigDecimal calculateTotal(@PathVariable String terminalId) {
         return posService.calculateTotal(terminalId);
     }
     
+    // OK response with the content hash of pricing as its entity tag, unless pricing is not cached
+    static ResponseEntity<Void> withETag(String pricingHash) {
+        return pricingHash == null ? ResponseEntity.ok().build() : ResponseEntity.ok().eTag('"' + pricingHash + '"').build();
+    }
+    
     /**
-     * Return HTTP status "Bad Request" when either terminal ID is incorrect,
-     * or product code is not found in pricing
+     * Return HTTP status "Bad Request" when either terminal ID is incorrect, or the request
+     * is invalid, "Unprocessable Entity" when product code is not found in pricing, so that
+     * clients can tell rejected products from other errors, and "Service Unavailable" when
+     * there are too many active terminals
      */
-    @ControllerAdvice(assignableTypes = {PointOfSaleController.class})
+    @ControllerAdvice(assignableTypes = {PointOfSaleController.class, PointOfSaleBinaryController.class, ClusterController.class})
     static class ErrorHandler {
         @ExceptionHandler(PointOfSaleServiceException.class)
         @ResponseStatus(HttpStatus.BAD_REQUEST)
@@ -78,10 +203,22 @@ public class PointOfSaleController implements PointOfSaleService {
             return e.getMessage();
         }
         
+        @ExceptionHandler(TerminalLimitExceededException.class)
+        @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+        String tooManyTerminals(TerminalLimitExceededException e) {
+            return e.getMessage();
+        }
+        
         @ExceptionHandler(PointOfSaleTerminalException.class)
         @ResponseStatus(HttpStatus.BAD_REQUEST)
         String badTerminalState(PointOfSaleTerminalException e) {
             return e.getMessage();
         }
+        
+        @ExceptionHandler(UnknownProductException.class)
+        @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+        String unknownProduct(UnknownProductException e) {
+            return e.getMessage();
+        }
     }
 }
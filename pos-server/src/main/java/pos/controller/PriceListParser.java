@@ -0,0 +1,134 @@
+package pos.controller;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import pos.model.PriceListFormat;
+import pos.model.Pricing;
+import pos.service.PointOfSaleServiceException;
+
+/**
+ * Parses price lists incrementally: every {@code Pricing} object is parsed only when it is requested
+ * from the returned iterator, so that the price list is never in memory as a whole.
+ *
+ * Iterators throw {@link PointOfSaleServiceException} with the line number, when a line cannot be parsed.
+ */
+final class PriceListParser {
+
+    private PriceListParser() {}
+
+    static Iterator<Pricing> parse(PriceListFormat format, InputStream in, ObjectMapper objectMapper) {
+        switch (format) {
+            case CSV:
+                return new CsvIterator(in);
+            case JSON_LINES:
+                return jsonLines(in, objectMapper);
+            default:
+                throw new IllegalArgumentException("Unsupported price list format: " + format);
+        }
+    }
+
+    private static Iterator<Pricing> jsonLines(InputStream in, ObjectMapper objectMapper) {
+        MappingIterator<Pricing> values;
+        try {
+            values = objectMapper.readerFor(Pricing.class).readValues(in);
+        } catch (IOException e) {
+            throw new PointOfSaleServiceException("Invalid price list: " + e.getMessage());
+        }
+        return new Iterator<Pricing>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return values.hasNextValue();
+                } catch (IOException e) {
+                    throw invalidLine(values.getCurrentLocation().getLineNr(), e.getMessage());
+                }
+            }
+
+            @Override
+            public Pricing next() {
+                try {
+                    return values.nextValue();
+                } catch (IOException e) {
+                    throw invalidLine(values.getCurrentLocation().getLineNr(), e.getMessage());
+                }
+            }
+        };
+    }
+
+    private static PointOfSaleServiceException invalidLine(int lineNumber, String reason) {
+        return new PointOfSaleServiceException("Invalid price list line " + lineNumber + ": " + reason);
+    }
+
+    /**
+     * Lines of product code, count and price. Blank lines are skipped, and so is the first line,
+     * when its count is not a number (a header).
+     */
+    private static final class CsvIterator implements Iterator<Pricing> {
+
+        private final BufferedReader reader;
+        private int lineNumber;
+        private Pricing next;
+
+        CsvIterator(InputStream in) {
+            reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = readNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public Pricing next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Pricing p = next;
+            next = null;
+            return p;
+        }
+
+        private Pricing readNext() {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.trim().isEmpty()) continue;
+
+                    String[] fields = line.split(",", -1);
+                    if (fields.length != 3) {
+                        throw invalidLine(lineNumber, "expected product code, count and price, but was " + line);
+                    }
+                    Integer count;
+                    try {
+                        count = Integer.valueOf(fields[1].trim());
+                    } catch (NumberFormatException e) {
+                        if (lineNumber == 1) continue;
+                        throw invalidLine(lineNumber, "invalid count in " + line);
+                    }
+                    try {
+                        return new Pricing(fields[0].trim(), count, new BigDecimal(fields[2].trim()));
+                    } catch (NumberFormatException e) {
+                        throw invalidLine(lineNumber, "invalid price in " + line);
+                    }
+                }
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package pos.controller;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Selects the threads which run requests in the embedded Tomcat.
+ *
+ * By default requests run on Tomcat's pool of platform threads, so that lanes on a slow network,
+ * which hold a thread while their requests are read and their responses are written, may use up
+ * the pool while the CPU is idle. In {@link Mode#VIRTUAL} mode every request runs on its own
+ * virtual thread, which releases its carrier thread whenever it waits for the network, so that
+ * the number of concurrent requests is limited only by the number of connections.
+ *
+ * Virtual threads are looked up by reflection, since the server is built for Java 8, and the server
+ * does not start in {@link Mode#VIRTUAL} mode on Java versions which do not have them.
+ */
+@Configuration
+public class ServerExecution implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+    /**
+     * Threads which run requests
+     */
+    public enum Mode {
+        /** Tomcat's pool of platform threads, which size is {@code server.tomcat.max-threads} */
+        PLATFORM,
+        /** A new virtual thread for every request (Java 21 or later) */
+        VIRTUAL
+    }
+
+    private final Mode mode;
+
+    // executor of virtual threads, null in platform mode
+    private final ExecutorService executor;
+
+    @Autowired
+    public ServerExecution(@Value("${pos.server.execution-mode:PLATFORM}") Mode mode) {
+        this.mode = mode;
+        executor = mode == Mode.VIRTUAL ? newVirtualThreadExecutor() : null;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    @Override
+    public void customize(TomcatServletWebServerFactory factory) {
+        if (executor != null) {
+            factory.addConnectorCustomizers(connector ->
+                    ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(executor));
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Whether this Java version has virtual threads
+     */
+    public static boolean virtualThreadsSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create an executor which starts a new virtual thread for every task
+     *
+     * @throws IllegalStateException if this Java version does not have virtual threads
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later, but this is Java "
+                    + System.getProperty("java.version"));
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+
+}
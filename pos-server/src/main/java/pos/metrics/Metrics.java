@@ -0,0 +1,167 @@
+package pos.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Metrics of the POS service: latency histograms of every operation, size histogram of loaded
+ * pricing, error counters, and gauges and counters, which are registered by the components they measure.
+ *
+ * Recording is lock-free and does not allocate, so that it may be done on every scan.
+ * All the metrics are written in Prometheus text exposition format by {@link #writeTo(StringBuilder)}.
+ */
+@Component
+public final class Metrics {
+
+    /**
+     * Measured POS service operations
+     */
+    public enum Operation {
+        ACTIVATE("activate"),
+        PUBLISH_CATALOG("publish_catalog"),
+        IMPORT_CATALOG("import_catalog"),
+        SET_PRICING("set_pricing"),
+        SET_CACHED_PRICING("set_cached_pricing"),
+        IMPORT_PRICING("import_pricing"),
+        UPDATE_PRICING("update_pricing"),
+        FIND_PRICING("find_pricing"),
+        SCAN("scan"),
+        SCAN_BATCH("scan_batch"),
+        SUBTOTAL("subtotal"),
+        CALCULATE_TOTAL("calculate_total");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Histogram[] latencies;
+    private final Histogram pricingLoadSizes;
+    private final LongAdder unknownTerminals;
+    private final LongAdder unknownProducts;
+    private final List<Supplied> supplied;
+
+    public Metrics() {
+        latencies = new Histogram[Operation.values().length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+        }
+        pricingLoadSizes = new Histogram();
+        unknownTerminals = new LongAdder();
+        unknownProducts = new LongAdder();
+        supplied = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Record how long the operation took
+     */
+    public void recordLatency(Operation operation, long nanos) {
+        latencies[operation.ordinal()].record(nanos);
+    }
+
+    /**
+     * Record the number of {@code Pricing} objects loaded at once
+     */
+    public void recordPricingLoad(int size) {
+        pricingLoadSizes.record(size);
+    }
+
+    /**
+     * Count an operation on a terminal which does not exist
+     */
+    public void unknownTerminal() {
+        unknownTerminals.increment();
+    }
+
+    /**
+     * Count a scan of a product which has no pricing
+     */
+    public void unknownProduct() {
+        unknownProducts.increment();
+    }
+
+    /**
+     * Register a gauge, which value is read whenever the metrics are written
+     */
+    public void gauge(String name, String help, LongSupplier value) {
+        supplied.add(new Supplied(name, help, "gauge", value));
+    }
+
+    /**
+     * Register a counter, which is kept by the component it counts in, and read whenever the metrics
+     * are written. Its value must never decrease.
+     */
+    public void counter(String name, String help, LongSupplier value) {
+        supplied.add(new Supplied(name, help, "counter", value));
+    }
+
+    /**
+     * Write all the metrics in Prometheus text format
+     */
+    public void writeTo(StringBuilder out) {
+        String latency = "pos_operation_latency_seconds";
+        header(out, latency, "Latency of POS service operations", "summary");
+        for (Operation op : Operation.values()) {
+            summary(out, latency, "operation=\"" + op.label + "\"", latencies[op.ordinal()].snapshot(), NANOS_PER_SECOND);
+        }
+
+        String pricingLoad = "pos_pricing_load_size";
+        header(out, pricingLoad, "Number of pricing objects in a catalog or terminal pricing load", "summary");
+        summary(out, pricingLoad, null, pricingLoadSizes.snapshot(), 1);
+
+        counter(out, "pos_unknown_terminal_errors_total", "Operations on terminals which do not exist", unknownTerminals);
+        counter(out, "pos_unknown_product_errors_total", "Scans of products which have no pricing", unknownProducts);
+
+        for (Supplied s : supplied) {
+            header(out, s.name, s.help, s.type);
+            out.append(s.name).append(' ').append(s.value.getAsLong()).append('\n');
+        }
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, Histogram.Snapshot s, double unit) {
+        String prefix = labels == null ? "" : labels + ",";
+        for (double q : QUANTILES) {
+            out.append(name).append("{").append(prefix).append("quantile=\"").append(q).append("\"} ")
+                    .append(s.valueAtQuantile(q) / unit).append('\n');
+        }
+        String suffix = labels == null ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(suffix).append(' ').append(s.getSum() / unit).append('\n');
+        out.append(name).append("_count").append(suffix).append(' ').append(s.getCount()).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, String help, LongAdder value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value.sum()).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // gauge or counter, which value is supplied by another component
+    private static final class Supplied {
+        final String name;
+        final String help;
+        final String type;
+        final LongSupplier value;
+
+        Supplied(String name, String help, String type, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+}
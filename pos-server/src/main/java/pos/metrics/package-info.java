@@ -0,0 +1,5 @@
+/**
+ * This package contains low-overhead server metrics: latency histograms, error counters, gauges and counters,
+ * which are exposed in Prometheus text format
+ */
+package pos.metrics;
@@ -0,0 +1,40 @@
+package pos.service;
+
+/**
+ * Shopping cart of a POS terminal: products mapped to how many times they have been scanned.
+ * Products are identified by their numbers in {@link ProductIndex#GLOBAL}, so that neither adding
+ * to a cart nor reading it allocates or hashes strings.
+ *
+ * Carts are created by a {@link CartStorage}. They are not thread-safe, since the terminal, which
+ * owns its cart, already serializes scans and reads of the total, and every other access to the cart.
+ */
+interface Cart {
+
+    /**
+     * Add the quantity of the product, and return its new count
+     *
+     * @throws pos.model.PointOfSaleTerminalException if the cart has been released
+     */
+    long add(int product, long quantity);
+
+    /**
+     * Perform the action on every product in the cart and its count
+     */
+    void forEach(EntryConsumer action);
+
+    /**
+     * Number of different products in the cart
+     */
+    int size();
+
+    /**
+     * Return the memory of the cart to its storage. The cart cannot be used after that.
+     */
+    void release();
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(int product, long count);
+    }
+
+}
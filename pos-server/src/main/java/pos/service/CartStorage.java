@@ -0,0 +1,32 @@
+package pos.service;
+
+/**
+ * Creates shopping carts of POS terminals.
+ */
+interface CartStorage {
+
+    /**
+     * Where carts are kept
+     */
+    enum Type {
+        /** Carts are primitive arrays of product numbers and counts on the heap */
+        HEAP,
+        /** Carts are slots of product numbers and counts in off-heap slabs, which are not scanned by GC */
+        OFF_HEAP
+    }
+
+    /**
+     * Storage of carts on the heap
+     */
+    CartStorage HEAP = HeapCart::new;
+
+    Cart newCart();
+
+    /**
+     * Off-heap memory reserved for carts, in bytes
+     */
+    default long reservedBytes() {
+        return 0;
+    }
+
+}
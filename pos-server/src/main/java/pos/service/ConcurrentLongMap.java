@@ -0,0 +1,242 @@
+package pos.service;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Concurrent hash map with primitive {@code long} keys, which neither boxes keys nor allocates
+ * entries. Zero is not a valid key.
+ *
+ * The map is split into segments by key hash. Every segment is an open-addressing table with
+ * linear probing and backward-shift deletion, which is changed under the segment's write lock,
+ * and read with an optimistic read, so that lookups do not block or write shared memory unless
+ * they race with a change of the same segment.
+ */
+final class ConcurrentLongMap<V> {
+
+    /**
+     * Action performed on map entries
+     */
+    interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments;
+
+    ConcurrentLongMap() {
+        segments = new Segment[1 << SEGMENT_BITS];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    V get(long key) {
+        long h = hash(key);
+        Segment s = segment(h);
+        long stamp = s.tryOptimisticRead();
+        Object value = s.find(key, h);
+        if (!s.validate(stamp)) {
+            stamp = s.readLock();
+            try {
+                value = s.find(key, h);
+            } finally {
+                s.unlockRead(stamp);
+            }
+        }
+        return cast(value);
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associate the value with the key, unless the key already has a value
+     *
+     * @return the current value, or {@code null} if the given value has been put
+     */
+    V putIfAbsent(long key, V value) {
+        checkKey(key);
+        long h = hash(key);
+        Segment s = segment(h);
+        long stamp = s.writeLock();
+        try {
+            return cast(s.putIfAbsent(key, h, value));
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the previous value, or {@code null} if the key had no value
+     */
+    V remove(long key) {
+        long h = hash(key);
+        Segment s = segment(h);
+        long stamp = s.writeLock();
+        try {
+            return cast(s.remove(key, h, null));
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove the key only if it is associated with the given value
+     */
+    boolean remove(long key, V value) {
+        long h = hash(key);
+        Segment s = segment(h);
+        long stamp = s.writeLock();
+        try {
+            return s.remove(key, h, value) != null;
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Perform the action on every entry. Entries of every segment are copied first, so that
+     * the action may change the map.
+     */
+    void forEach(EntryConsumer<V> action) {
+        for (Segment s : segments) {
+            long[] keys;
+            Object[] values;
+            long stamp = s.readLock();
+            try {
+                keys = new long[s.size];
+                values = new Object[s.size];
+                int n = 0;
+                for (int i = 0; i < s.keys.length; i++) {
+                    if (s.keys[i] != 0) {
+                        keys[n] = s.keys[i];
+                        values[n++] = s.values[i];
+                    }
+                }
+            } finally {
+                s.unlockRead(stamp);
+            }
+            for (int i = 0; i < keys.length; i++) {
+                action.accept(keys[i], cast(values[i]));
+            }
+        }
+    }
+
+    private Segment segment(long h) {
+        return segments[(int) (h >>> (Long.SIZE - SEGMENT_BITS))];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value) {
+        return (V) value;
+    }
+
+    private static void checkKey(long key) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Zero is not a valid key");
+        }
+    }
+
+    // MurmurHash3 finalizer, so that keys which differ in a few bits are spread over segments and slots
+    private static long hash(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Open-addressing table of one segment, which is never more than half full.
+     * The arrays are replaced together on resize, and an optimistic reader may see them
+     * out of sync, which the failed validation of its stamp discards.
+     */
+    @SuppressWarnings("serial")
+    private static final class Segment extends StampedLock {
+        long[] keys = new long[INITIAL_CAPACITY];
+        Object[] values = new Object[INITIAL_CAPACITY];
+        int size;
+
+        Object find(long key, long h) {
+            long[] k = keys;
+            Object[] v = values;
+            int mask = Math.min(k.length, v.length) - 1;
+            int i = (int) h & mask;
+            // the number of probes is bounded, since the table may change while it is read
+            for (int n = 0; n <= mask; n++, i = (i + 1) & mask) {
+                if (k[i] == key) return v[i];
+                if (k[i] == 0) return null;
+            }
+            return null;
+        }
+
+        Object putIfAbsent(long key, long h, Object value) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+            int mask = keys.length - 1;
+            int i = (int) h & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == key) return values[i];
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+            return null;
+        }
+
+        // removes the key if its value is the expected one (any value if null), and returns its value
+        Object remove(long key, long h, Object expected) {
+            int mask = keys.length - 1;
+            int i = (int) h & mask;
+            while (keys[i] != key) {
+                if (keys[i] == 0) return null;
+                i = (i + 1) & mask;
+            }
+            Object value = values[i];
+            if (expected != null && expected != value) return null;
+
+            // shift back the following keys which would not be found with a gap before them
+            int gap = i;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = (int) hash(keys[j]) & mask;
+                boolean reachable = gap <= j ? gap < home && home <= j : gap < home || home <= j;
+                if (!reachable) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = 0;
+            values[gap] = null;
+            size--;
+            return value;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] newKeys = new long[oldKeys.length * 2];
+            Object[] newValues = new Object[newKeys.length];
+            int mask = newKeys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == 0) continue;
+                int i = (int) hash(oldKeys[j]) & mask;
+                while (newKeys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                newKeys[i] = oldKeys[j];
+                newValues[i] = oldValues[j];
+            }
+            keys = newKeys;
+            values = newValues;
+        }
+    }
+
+}
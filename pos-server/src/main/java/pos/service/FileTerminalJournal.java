@@ -0,0 +1,674 @@
+package pos.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import pos.model.Pricing;
+import pos.model.PricingDelta;
+
+/**
+ * {@link TerminalJournal} which appends events to segment files in a directory.
+ *
+ * Every event is a record of its length, CRC32 checksum and payload.  Records are written by
+ * a single writer thread, which takes all the events queued since its previous write, and writes
+ * them with one gathering write (group commit), so that with {@link FsyncPolicy#ALWAYS} many
+ * concurrent events share one fsync.  When a segment grows over the segment size, the writer
+ * continues in a new segment.
+ *
+ * When the journal is started, it writes the rebuilt state into a new segment (a snapshot),
+ * and deletes all older segments.  While the journal is running, every time the writer continues
+ * in a new segment, a background thread compacts all the closed segments into one, which keeps only
+ * the events of terminals which have not been closed, and the catalogs they refer to, so that
+ * the journal of a long-running service stays about as large as its open terminals.
+ *
+ * Both snapshots and compacted segments start with a compaction marker, which tells that the segment
+ * replaces all the segments before it.  They are written to a temporary file, which is renamed only
+ * when it is complete, and the older segments are deleted after that.  Replay starts with the last
+ * segment with the marker, so a crash during compaction loses nothing and replays nothing twice.
+ */
+final class FileTerminalJournal implements TerminalJournal {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAX_BATCH = 1024;
+    private static final int HEADER_SIZE = 8;
+
+    // record types
+    private static final byte CATALOG = 1;
+    private static final byte ACTIVATE = 2;
+    private static final byte PRICING = 3;
+    private static final byte SCAN = 4;
+    private static final byte CLOSE = 5;
+    private static final byte PRICING_DELTA = 6;
+    private static final byte COMPACTED = 7;
+
+    // first record of a segment which replaces all the segments before it
+    private static final byte[] COMPACTION_MARKER = {COMPACTED};
+
+    // wakes up the writer thread when the journal is closed
+    private static final Append POISON = new Append(null, false);
+
+    private final Path dir;
+    private final long segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+
+    private final BlockingQueue<Append> queue;
+    private volatile boolean running;
+    private volatile IOException failure;
+    private Thread writer;
+
+    // compacts closed segments, one compaction at a time
+    private final ExecutorService compactor;
+    private final AtomicBoolean compactionPending;
+
+    // accessed by the writer thread only, once the journal is started
+    private FileChannel segment;
+    private long segmentNo;
+    private boolean dirty;
+    private long lastForce;
+
+    /**
+     * Open a journal in the given directory, which is created if it does not exist.
+     *
+     * @param dir                  journal directory
+     * @param segmentSize          size in bytes after which the journal continues in a new segment
+     * @param fsyncPolicy          when to force written events to the storage device
+     * @param fsyncIntervalMillis  how often to force events with {@link FsyncPolicy#INTERVAL} policy
+     */
+    FileTerminalJournal(Path dir, long segmentSize, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) {
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new PointOfSaleServiceException(e);
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+        this.queue = new LinkedBlockingQueue<>();
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "terminal-journal-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+        this.compactionPending = new AtomicBoolean();
+    }
+
+    /**
+     * Replay segments in order, starting with the last compacted one.  Reading a segment stops at
+     * the first incomplete or corrupted record, which is what a crash in the middle of a write leaves behind.
+     */
+    @Override
+    public void replay(TerminalEvents events) {
+        try {
+            for (Path p : replayed(segments())) {
+                readSegment(p, payload -> dispatch(payload, events));
+            }
+        } catch (IOException e) {
+            throw new PointOfSaleServiceException(e);
+        }
+    }
+
+    /**
+     * Write the given state into a new segment, delete all older segments,
+     * and start the writer thread.
+     */
+    @Override
+    public void start(PriceCatalog catalog, Collection<PointOfSaleTerminalImpl> terminals) {
+        List<Path> old = segments();
+        segmentNo = old.isEmpty() ? 0 : segmentNo(old.get(old.size() - 1));
+        try {
+            Path snapshot = segmentPath(++segmentNo);
+            Path temp = snapshot.resolveSibling(snapshot.getFileName() + TEMP_SUFFIX);
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                Set<PriceCatalog> written = Collections.newSetFromMap(new IdentityHashMap<>());
+                write(out, COMPACTION_MARKER);
+                write(out, catalogRecord(catalog.getVersion(), true, catalog.toPricing()));
+                written.add(catalog);
+                for (PointOfSaleTerminalImpl t : terminals) {
+                    PriceCatalog c = t.getCatalog();
+                    if (written.add(c)) {
+                        write(out, catalogRecord(c.getVersion(), false, c.toPricing()));
+                    }
+                    write(out, activateRecord(t.getId(), c.getVersion()));
+                    Map<String, Long> cart = t.cartSnapshot();
+                    if (!cart.isEmpty()) {
+                        write(out, scanRecord(t.getId(), cart));
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+
+            // segments are deleted in order, so that a crash leaves a continuous sequence of them
+            for (Path p : old) {
+                Files.delete(p);
+            }
+            openNextSegment();
+            lastForce = System.currentTimeMillis();
+        } catch (IOException e) {
+            throw new PointOfSaleServiceException(e);
+        }
+
+        running = true;
+        writer = new Thread(this::writeLoop, "terminal-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void catalogCreated(long version, boolean current, Pricing[] pricings) {
+        append(catalogRecord(version, current, pricings));
+    }
+
+    @Override
+    public void activated(String terminalId, long catalogVersion) {
+        append(activateRecord(terminalId, catalogVersion));
+    }
+
+    @Override
+    public void pricingAdded(String terminalId, Pricing[] pricings) {
+        append(encode(PRICING, out -> {
+            out.writeUTF(terminalId);
+            writePricing(out, pricings);
+        }));
+    }
+
+    @Override
+    public void pricingUpdated(String terminalId, PricingDelta[] deltas) {
+        append(encode(PRICING_DELTA, out -> {
+            out.writeUTF(terminalId);
+            out.writeInt(deltas.length);
+            for (PricingDelta d : deltas) {
+                out.writeBoolean(d.getType() == PricingDelta.Type.UPSERT);
+                out.writeUTF(d.getProductCode());
+                out.writeInt(d.getCount());
+                if (d.getType() == PricingDelta.Type.UPSERT) {
+                    writePrice(out, d.getPrice());
+                }
+            }
+        }));
+    }
+
+    @Override
+    public void scanned(String terminalId, Map<String, ? extends Number> quantities) {
+        append(scanRecord(terminalId, quantities));
+    }
+
+    @Override
+    public void closed(String terminalId) {
+        append(encode(CLOSE, out -> out.writeUTF(terminalId)));
+    }
+
+    /**
+     * Write all the queued events, and stop the writer thread and the compaction
+     */
+    @Override
+    public void close() {
+        if (!running) return;
+        running = false;
+        queue.add(POISON);
+        try {
+            writer.join();
+            compactor.shutdown();
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait until the compactions requested so far are finished
+     */
+    void awaitCompaction() {
+        try {
+            compactor.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            // the journal is closed
+        }
+    }
+
+    private void append(byte[] payload) {
+        if (failure != null) {
+            throw new PointOfSaleServiceException(failure);
+        }
+        Append a = new Append(frame(payload), fsyncPolicy == FsyncPolicy.ALWAYS);
+        queue.add(a);
+        // the writer thread exits only when the queue is empty, so if the append is still
+        // in the queue after the journal has been closed, nobody is going to write it
+        if (!running && queue.remove(a)) {
+            throw new PointOfSaleServiceException("Terminal journal is closed");
+        }
+        if (a.written != null) {
+            try {
+                a.written.join();
+            } catch (CompletionException e) {
+                throw new PointOfSaleServiceException(e.getCause());
+            }
+        }
+    }
+
+    private void writeLoop() {
+        List<Append> batch = new ArrayList<>();
+        long pollMillis = fsyncPolicy == FsyncPolicy.INTERVAL ? fsyncIntervalMillis : 1000;
+        while (running || !queue.isEmpty()) {
+            IOException error = null;
+            try {
+                Append first = queue.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                }
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // the loop exits once the journal is closed
+            } catch (IOException e) {
+                error = failure = e;
+            }
+            for (Append a : batch) {
+                if (a.written != null) {
+                    if (error == null) a.written.complete(null); else a.written.completeExceptionally(error);
+                }
+            }
+            batch.clear();
+        }
+
+        try {
+            if (fsyncPolicy != FsyncPolicy.NEVER) segment.force(false);
+            segment.close();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    private void writeBatch(List<Append> batch) throws IOException {
+        ByteBuffer[] buffers = batch.stream().filter(a -> a != POISON).map(a -> a.record).toArray(ByteBuffer[]::new);
+        if (buffers.length > 0) {
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                segment.write(buffers);
+            }
+            dirty = true;
+        }
+
+        long now = System.currentTimeMillis();
+        boolean force = fsyncPolicy == FsyncPolicy.ALWAYS ||
+                (fsyncPolicy == FsyncPolicy.INTERVAL && now - lastForce >= fsyncIntervalMillis);
+        if (dirty && force) {
+            segment.force(false);
+            dirty = false;
+            lastForce = now;
+        }
+
+        if (segment.position() >= segmentSize) {
+            if (fsyncPolicy != FsyncPolicy.NEVER) segment.force(false);
+            segment.close();
+            long closed = segmentNo;
+            openNextSegment();
+            // compactions which have not started yet are replaced by the one of all the closed segments
+            if (compactionPending.compareAndSet(false, true)) {
+                compactor.execute(() -> {
+                    compactionPending.set(false);
+                    compact(closed);
+                });
+            }
+        }
+    }
+
+    /**
+     * Compact the segments up to the given one into a single segment, which keeps only the events of
+     * terminals which have not been closed since they were last activated, the catalogs they are
+     * activated with, and the last current catalog.  If it fails, the segments stay as they are,
+     * and they are compacted together with the next ones.
+     */
+    private void compact(long lastSegmentNo) {
+        List<Path> segments = replayed(segments().stream()
+                .filter(p -> segmentNo(p) <= lastSegmentNo).collect(Collectors.toList()));
+        if (segments.isEmpty()) {
+            return;
+        }
+        try {
+            // the position of the last close of every terminal, and catalog versions which are still needed
+            Map<String, Long> lastClose = new HashMap<>();
+            List<Activation> activations = new ArrayList<>();
+            long[] position = new long[1];
+            long[] currentCatalog = {-1};
+            for (Path p : segments) {
+                readSegment(p, payload -> {
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1));
+                    switch (payload[0]) {
+                        case CATALOG:
+                            long version = in.readLong();
+                            if (in.readBoolean()) currentCatalog[0] = version;
+                            break;
+                        case ACTIVATE:
+                            activations.add(new Activation(position[0], in.readUTF(), in.readLong()));
+                            break;
+                        case CLOSE:
+                            lastClose.put(in.readUTF(), position[0]);
+                            break;
+                        default:
+                    }
+                    position[0]++;
+                });
+            }
+            Set<Long> catalogs = new HashSet<>();
+            catalogs.add(currentCatalog[0]);
+            for (Activation a : activations) {
+                if (a.position > lastClose.getOrDefault(a.terminalId, -1L)) catalogs.add(a.catalogVersion);
+            }
+
+            Path last = segments.get(segments.size() - 1);
+            Path temp = last.resolveSibling(last.getFileName() + TEMP_SUFFIX);
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                write(out, COMPACTION_MARKER);
+                position[0] = 0;
+                for (Path p : segments) {
+                    readSegment(p, payload -> {
+                        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload, 1, payload.length - 1));
+                        boolean keep;
+                        switch (payload[0]) {
+                            case COMPACTED:
+                                keep = false;
+                                break;
+                            case CATALOG:
+                                keep = catalogs.contains(in.readLong());
+                                break;
+                            default:
+                                // all the other records are events of a terminal
+                                keep = position[0] > lastClose.getOrDefault(in.readUTF(), -1L);
+                        }
+                        if (keep) write(out, payload);
+                        position[0]++;
+                    });
+                }
+                out.force(true);
+            }
+            Files.move(temp, last, StandardCopyOption.ATOMIC_MOVE);
+
+            // the compacted segment replaces all the segments before it, including those left by a crash
+            for (Path p : segments()) {
+                if (segmentNo(p) < segmentNo(last)) Files.delete(p);
+            }
+        } catch (IOException e) {
+            // the segments are kept, and compacted with the next ones
+        }
+    }
+
+    // the segments which are replayed: the last compacted one and all the following
+    private static List<Path> replayed(List<Path> segments) {
+        for (int i = segments.size() - 1; i > 0; i--) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segments.get(i))))) {
+                byte[] first = readRecord(in, Files.size(segments.get(i)));
+                if (first != null && first[0] == COMPACTED) {
+                    return segments.subList(i, segments.size());
+                }
+            } catch (IOException e) {
+                throw new PointOfSaleServiceException(e);
+            }
+        }
+        return segments;
+    }
+
+    private static void readSegment(Path segment, RecordReader reader) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            long remaining = Files.size(segment);
+            byte[] payload;
+            while ((payload = readRecord(in, remaining)) != null) {
+                remaining -= HEADER_SIZE + payload.length;
+                reader.read(payload);
+            }
+        }
+    }
+
+    private static void write(FileChannel out, byte[] payload) throws IOException {
+        ByteBuffer record = frame(payload);
+        while (record.hasRemaining()) {
+            out.write(record);
+        }
+    }
+
+    private void openNextSegment() throws IOException {
+        segment = FileChannel.open(segmentPath(++segmentNo), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(long segmentNo) {
+        return dir.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, segmentNo, SEGMENT_SUFFIX));
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new PointOfSaleServiceException(e);
+        }
+    }
+
+    private static long segmentNo(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        record.flip();
+        return record;
+    }
+
+    // return null at the end of segment, or if the record is incomplete or corrupted
+    private static byte[] readRecord(DataInputStream in, long remaining) throws IOException {
+        try {
+            if (remaining < HEADER_SIZE) return null;
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > remaining - HEADER_SIZE) return null;
+
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, length);
+            return (int) crc.getValue() == checksum ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static void dispatch(byte[] payload, TerminalEvents events) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        switch (type) {
+            case CATALOG:
+                long version = in.readLong();
+                boolean current = in.readBoolean();
+                events.catalogCreated(version, current, readPricing(in));
+                break;
+            case ACTIVATE:
+                events.activated(in.readUTF(), in.readLong());
+                break;
+            case PRICING:
+                events.pricingAdded(in.readUTF(), readPricing(in));
+                break;
+            case SCAN:
+                String terminalId = in.readUTF();
+                int n = in.readInt();
+                Map<String, Long> quantities = new LinkedHashMap<>();
+                for (int i = 0; i < n; i++) {
+                    quantities.put(in.readUTF(), in.readLong());
+                }
+                events.scanned(terminalId, quantities);
+                break;
+            case CLOSE:
+                events.closed(in.readUTF());
+                break;
+            case COMPACTED:
+                break;
+            case PRICING_DELTA:
+                String id = in.readUTF();
+                PricingDelta[] deltas = new PricingDelta[in.readInt()];
+                for (int i = 0; i < deltas.length; i++) {
+                    boolean upsert = in.readBoolean();
+                    String productCode = in.readUTF();
+                    int count = in.readInt();
+                    deltas[i] = upsert ? PricingDelta.upsert(new Pricing(productCode, count, readPrice(in))) :
+                            PricingDelta.remove(productCode, count);
+                }
+                events.pricingUpdated(id, deltas);
+                break;
+            default:
+                throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+
+    private static byte[] catalogRecord(long version, boolean current, Pricing[] pricings) {
+        return encode(CATALOG, out -> {
+            out.writeLong(version);
+            out.writeBoolean(current);
+            writePricing(out, pricings);
+        });
+    }
+
+    private static byte[] activateRecord(String terminalId, long catalogVersion) {
+        return encode(ACTIVATE, out -> {
+            out.writeUTF(terminalId);
+            out.writeLong(catalogVersion);
+        });
+    }
+
+    private static byte[] scanRecord(String terminalId, Map<String, ? extends Number> quantities) {
+        return encode(SCAN, out -> {
+            out.writeUTF(terminalId);
+            out.writeInt(quantities.size());
+            for (Map.Entry<String, ? extends Number> e : quantities.entrySet()) {
+                out.writeUTF(e.getKey());
+                out.writeLong(e.getValue().longValue());
+            }
+        });
+    }
+
+    private static void writePricing(DataOutputStream out, Pricing[] pricings) throws IOException {
+        out.writeInt(pricings.length);
+        for (Pricing p : pricings) {
+            out.writeUTF(p.getProductCode());
+            out.writeInt(p.getCount());
+            writePrice(out, p.getPrice());
+        }
+    }
+
+    private static void writePrice(DataOutputStream out, BigDecimal price) throws IOException {
+        byte[] unscaled = price.unscaledValue().toByteArray();
+        out.writeInt(price.scale());
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+    }
+
+    private static Pricing[] readPricing(DataInputStream in) throws IOException {
+        Pricing[] pricings = new Pricing[in.readInt()];
+        for (int i = 0; i < pricings.length; i++) {
+            String productCode = in.readUTF();
+            int count = in.readInt();
+            pricings[i] = new Pricing(productCode, count, readPrice(in));
+        }
+        return pricings;
+    }
+
+    private static BigDecimal readPrice(DataInputStream in) throws IOException {
+        int scale = in.readInt();
+        byte[] unscaled = new byte[in.readShort()];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    private static byte[] encode(byte type, RecordWriter body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            body.write(out);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // never happens with ByteArrayOutputStream
+            throw new PointOfSaleServiceException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface RecordReader {
+        void read(byte[] payload) throws IOException;
+    }
+
+    private static final class Activation {
+        final long position;
+        final String terminalId;
+        final long catalogVersion;
+
+        Activation(long position, String terminalId, long catalogVersion) {
+            this.position = position;
+            this.terminalId = terminalId;
+            this.catalogVersion = catalogVersion;
+        }
+    }
+
+    private static final class Append {
+        final ByteBuffer record;
+        // completed once the record is forced, only when the appending thread waits for it
+        final CompletableFuture<Void> written;
+
+        Append(ByteBuffer record, boolean await) {
+            this.record = record;
+            this.written = await ? new CompletableFuture<>() : null;
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package pos.service;
+
+import pos.model.PointOfSaleTerminalException;
+
+/**
+ * Cart on the heap: an open-addressing table of product numbers plus one and their counts
+ * in primitive arrays, so that adding a product which is already in the cart allocates nothing.
+ *
+ * The cart is not thread-safe, its terminal serializes all operations on it.
+ */
+final class HeapCart implements Cart {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    // product numbers plus one, where zero is an empty slot, and counts of the products
+    private int[] products;
+    private long[] counts;
+    private int size;
+    private boolean released;
+
+    @Override
+    public long add(int product, long quantity) {
+        if (released) {
+            throw new PointOfSaleTerminalException("Terminal is closed");
+        }
+        if (products == null) {
+            products = new int[INITIAL_CAPACITY];
+            counts = new long[INITIAL_CAPACITY];
+        }
+        int slot = find(products, product);
+        if (products[slot] == 0) {
+            if ((size + 1) * 4 > products.length * 3) {
+                grow();
+                slot = find(products, product);
+            }
+            products[slot] = product + 1;
+            size++;
+        }
+        counts[slot] += quantity;
+        return counts[slot];
+    }
+
+    @Override
+    public void forEach(EntryConsumer action) {
+        if (products == null) return;
+        for (int slot = 0; slot < products.length; slot++) {
+            if (products[slot] != 0) {
+                action.accept(products[slot] - 1, counts[slot]);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void release() {
+        products = null;
+        counts = null;
+        size = 0;
+        released = true;
+    }
+
+    // slot of the product, or the empty slot where it belongs
+    private static int find(int[] products, int product) {
+        int mask = products.length - 1;
+        // Fibonacci hashing: the top bits of the product are the slot
+        int slot = (product * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(products.length) + 1);
+        while (products[slot] != 0 && products[slot] != product + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldProducts = products;
+        long[] oldCounts = counts;
+        products = new int[oldProducts.length * 2];
+        counts = new long[oldProducts.length * 2];
+        for (int i = 0; i < oldProducts.length; i++) {
+            if (oldProducts[i] != 0) {
+                int slot = find(products, oldProducts[i] - 1);
+                products[slot] = oldProducts[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package pos.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Arithmetic on prices kept as {@code long} minor units, i.e. unscaled values of a decimal with
+ * the given scale (for example 1.25 with scale 2 is kept as 125).  All operations throw
+ * {@link ArithmeticException} instead of overflowing.
+ *
+ * Totals are calculated in minor units, and converted to {@code BigDecimal} only when they are
+ * returned, so that pricing a cart allocates nothing but the result.
+ */
+final class MinorUnits {
+
+    /**
+     * The largest scale which can be handled in minor units
+     */
+    static final int MAX_SCALE = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private MinorUnits() {}
+
+    /**
+     * Sum of two amounts with the same scale
+     */
+    static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * Difference of two amounts with the same scale
+     */
+    static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Price of the given number of packs
+     */
+    static long multiply(long price, long packs) {
+        return Math.multiplyExact(price, packs);
+    }
+
+    /**
+     * Convert a value in minor units to another scale, rounding half up (away from zero) when
+     * the scale is smaller, like {@link BigDecimal#setScale(int, java.math.RoundingMode)} with
+     * {@link java.math.RoundingMode#HALF_UP}.
+     */
+    static long round(long value, int fromScale, int toScale) {
+        if (toScale >= fromScale) {
+            return rescale(value, fromScale, toScale);
+        }
+        long divisor = POWERS_OF_TEN[fromScale - toScale];
+        long quotient = value / divisor;
+        long remainder = Math.abs(value % divisor);
+        return remainder >= divisor - remainder ? quotient + Long.signum(value) : quotient;
+    }
+
+    /**
+     * Convert a value in minor units into a decimal with the given scale, rounding half up
+     */
+    static BigDecimal toDecimal(long value, int fromScale, int toScale) {
+        try {
+            return BigDecimal.valueOf(round(value, fromScale, toScale), toScale);
+        } catch (ArithmeticException overflow) {
+            return BigDecimal.valueOf(value, fromScale).setScale(toScale, RoundingMode.HALF_UP);
+        }
+    }
+
+    /**
+     * Convert a value in minor units from a smaller to a larger (or the same) scale.
+     */
+    static long rescale(long value, int fromScale, int toScale) {
+        return fromScale == toScale ? value : Math.multiplyExact(value, POWERS_OF_TEN[toScale - fromScale]);
+    }
+
+    /**
+     * Check whether the given price can be kept in minor units with the given scale without
+     * loss of precision.
+     */
+    static boolean fits(BigDecimal price, int scale) {
+        return scale >= 0 && scale <= MAX_SCALE && price.scale() <= scale &&
+               price.setScale(scale).unscaledValue().bitLength() < Long.SIZE;
+    }
+
+    /**
+     * Convert the price into minor units with the given scale.
+     * Must be called only if {@link #fits(BigDecimal, int)} returns {@code true}.
+     */
+    static long toMinorUnits(BigDecimal price, int scale) {
+        return price.setScale(scale).unscaledValue().longValue();
+    }
+
+}
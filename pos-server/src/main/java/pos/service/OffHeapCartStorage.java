@@ -0,0 +1,145 @@
+package pos.service;
+
+import java.nio.ByteBuffer;
+
+import pos.model.PointOfSaleTerminalException;
+
+/**
+ * Storage of carts in off-heap memory, so that a very large number of open terminals does not
+ * burden the garbage collector.
+ *
+ * A cart is a block of a {@link SlabAllocator}, which is an open-addressing table of slots,
+ * every slot being a product number (see {@link ProductIndex}) plus one, which is an {@code int},
+ * and a {@code long} count, like the counts of heap carts, in 16 bytes, so that slots are aligned
+ * and tables are powers of two. The block is allocated on the first scan, replaced with a twice larger block
+ * when it is three quarters full, and returned to the free list of its size when the cart is released.
+ *
+ * Like heap carts, off-heap carts are not thread-safe: their terminal serializes all operations
+ * on them, so that a block is never read after it has been freed.
+ */
+final class OffHeapCartStorage implements CartStorage {
+
+    static final int DEFAULT_SLAB_BYTES = 1 << 20;
+
+    private static final int SLOT_BYTES = 2 * Long.BYTES;
+    private static final int COUNT_OFFSET = Long.BYTES;
+    private static final int INITIAL_SLOTS = 8;
+    private static final long NO_BLOCK = -1;
+
+    private final SlabAllocator allocator;
+
+    OffHeapCartStorage(int slabBytes) {
+        allocator = new SlabAllocator(slabBytes);
+    }
+
+    @Override
+    public Cart newCart() {
+        return new OffHeapCart();
+    }
+
+    @Override
+    public long reservedBytes() {
+        return allocator.reservedBytes();
+    }
+
+    private final class OffHeapCart implements Cart {
+
+        private long block = NO_BLOCK;
+        private int capacity;
+        private int size;
+        private boolean released;
+
+        @Override
+        public long add(int product, long quantity) {
+            if (released) {
+                throw new PointOfSaleTerminalException("Terminal is closed");
+            }
+            if (block == NO_BLOCK) {
+                allocate(INITIAL_SLOTS);
+            }
+            int slot = find(product);
+            ByteBuffer slab = allocator.slab(block);
+            int position = SlabAllocator.offset(block) + slot * SLOT_BYTES;
+            if (slab.getInt(position) == 0) {
+                if ((size + 1) * 4 > capacity * 3) {
+                    grow();
+                    return add(product, quantity);
+                }
+                slab.putInt(position, product + 1);
+                size++;
+            }
+            long count = slab.getLong(position + COUNT_OFFSET) + quantity;
+            slab.putLong(position + COUNT_OFFSET, count);
+            return count;
+        }
+
+        @Override
+        public void forEach(EntryConsumer action) {
+            if (block == NO_BLOCK) return;
+            ByteBuffer slab = allocator.slab(block);
+            int offset = SlabAllocator.offset(block);
+            for (int slot = 0; slot < capacity; slot++) {
+                int position = offset + slot * SLOT_BYTES;
+                int stored = slab.getInt(position);
+                if (stored != 0) {
+                    action.accept(stored - 1, slab.getLong(position + COUNT_OFFSET));
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void release() {
+            if (block != NO_BLOCK) {
+                allocator.free(block, capacity * SLOT_BYTES);
+                block = NO_BLOCK;
+            }
+            released = true;
+        }
+
+        // slot of the product, or the empty slot where it belongs
+        private int find(int product) {
+            ByteBuffer slab = allocator.slab(block);
+            int offset = SlabAllocator.offset(block);
+            int mask = capacity - 1;
+            // Fibonacci hashing: the top bits of the product are the slot
+            int slot = (product * 0x9E3779B9) >>> (Integer.numberOfLeadingZeros(capacity) + 1);
+            while (true) {
+                int stored = slab.getInt(offset + slot * SLOT_BYTES);
+                if (stored == 0 || stored == product + 1) return slot;
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        private void allocate(int slots) {
+            block = allocator.allocate(slots * SLOT_BYTES);
+            capacity = allocator.blockSize(slots * SLOT_BYTES) / SLOT_BYTES;
+            size = 0;
+        }
+
+        private void grow() {
+            long oldBlock = block;
+            int oldCapacity = capacity;
+            ByteBuffer oldSlab = allocator.slab(oldBlock);
+            int oldOffset = SlabAllocator.offset(oldBlock);
+
+            allocate(oldCapacity * 2);
+            ByteBuffer slab = allocator.slab(block);
+            int offset = SlabAllocator.offset(block);
+            for (int i = 0; i < oldCapacity; i++) {
+                int index = oldSlab.getInt(oldOffset + i * SLOT_BYTES);
+                if (index == 0) continue;
+                int position = offset + find(index - 1) * SLOT_BYTES;
+                slab.putInt(position, index);
+                slab.putLong(position + COUNT_OFFSET, oldSlab.getLong(oldOffset + i * SLOT_BYTES + COUNT_OFFSET));
+                size++;
+            }
+            allocator.free(oldBlock, oldCapacity * SLOT_BYTES);
+        }
+    }
+
+}
@@ -0,0 +1,312 @@
+package pos.service;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The cheapest price of every quantity of one product, memoized. A quantity is priced with any
+ * number of packs of any pricing tier, as long as the units left over are fewer than the smallest
+ * tier count; they are free, like with the greedy pricing.
+ *
+ * The prices are found by dynamic programming over quantities (an unbounded knapsack), but only
+ * up to a period: let the best tier be the one with the lowest price per unit. Any set of at least
+ * as many other packs as the best tier's count contains packs which may be replaced with best packs
+ * for no more, so that a large enough quantity has a cheapest pricing with a best pack, and
+ * <pre>price(q) = price(q - best count) + best price</pre>
+ * for every quantity from {@code (best count - 1) * largest count + smallest count} on. Prices of
+ * larger quantities are derived from the table in constant time.
+ *
+ * When that threshold exceeds {@link #MAX_TABLE_SIZE}, quantities beyond the table are priced greedily.
+ *
+ * Tables grow when larger quantities are priced, up to the largest quantity priced so far, and they
+ * are charged to a {@link MemoBudget}, which is shared by all the product pricings of all the catalogs,
+ * since catalog versions share their product pricings. When the budget is used up, quantities beyond
+ * the table are priced by dynamic programming over a window of the largest tier count, which
+ * takes time, but no memory. Objects are thread-safe.
+ */
+final class OptimalPricing {
+
+    /**
+     * The largest number of memoized quantities of one product
+     */
+    static final int MAX_TABLE_SIZE = 1 << 16;
+
+    // the smallest table which is built
+    private static final int MIN_TABLE_SIZE = 16;
+
+    // estimated heap taken by one memoized BigDecimal price and the reference to it
+    private static final int DECIMAL_BYTES = 48;
+
+    private final ProductPricing pricing;
+    private final MemoBudget budget;
+    private final MemoBudget.Allocation allocation;
+
+    // tier with the lowest price per unit, and the largest tier count
+    private final int best;
+    private final int largest;
+
+    // quantities from which the prices are periodic, or MAX_TABLE_SIZE, when it is larger
+    private final int period;
+    private final boolean periodic;
+
+    // prices of the smallest quantities in minor units, and in BigDecimal, which grow up to the period
+    private volatile long[] table = new long[0];
+    private volatile BigDecimal[] decimalTable = new BigDecimal[0];
+
+    // whether the prices in the table do not fit into minor units
+    private volatile boolean overflows;
+
+    OptimalPricing(ProductPricing pricing) {
+        this(pricing, MemoBudget.GLOBAL);
+    }
+
+    OptimalPricing(ProductPricing pricing, MemoBudget budget) {
+        this.pricing = pricing;
+        this.budget = budget;
+        this.allocation = budget.allocate(this);
+        int best = 0;
+        int largest = 0;
+        int smallest = Integer.MAX_VALUE;
+        for (int i = 0; i < pricing.size(); i++) {
+            // price(i) / count(i) < price(best) / count(best)
+            BigDecimal price = pricing.get(i).getPrice().multiply(BigDecimal.valueOf(pricing.count(best)));
+            if (price.compareTo(pricing.get(best).getPrice().multiply(BigDecimal.valueOf(pricing.count(i)))) < 0) {
+                best = i;
+            }
+            largest = Math.max(largest, pricing.count(i));
+            smallest = Math.min(smallest, pricing.count(i));
+        }
+        this.best = best;
+        this.largest = largest;
+        long threshold = (long) (pricing.count(best) - 1) * largest + smallest;
+        periodic = threshold <= MAX_TABLE_SIZE;
+        period = periodic ? (int) threshold : MAX_TABLE_SIZE;
+    }
+
+    /**
+     * Cheapest price of the quantity in minor units
+     *
+     * @throws ArithmeticException if the price does not fit into {@code long}
+     */
+    long lineTotal(long quantity) {
+        if (quantity < period) {
+            return price((int) quantity);
+        }
+        if (!periodic) {
+            return pricing.lineTotal(quantity);
+        }
+        long packs = (quantity - period) / pricing.count(best) + 1;
+        long rest = quantity - packs * pricing.count(best);
+        return MinorUnits.add(MinorUnits.multiply(pricing.minorPrice(best), packs), price((int) rest));
+    }
+
+    /**
+     * The same as {@link #lineTotal(long)}, but calculated with {@code BigDecimal} arithmetic,
+     * which works for any prices.
+     */
+    BigDecimal decimalLineTotal(long quantity) {
+        if (quantity < period) {
+            return decimalPrice((int) quantity);
+        }
+        if (!periodic) {
+            return pricing.decimalLineTotal(quantity);
+        }
+        long packs = (quantity - period) / pricing.count(best) + 1;
+        long rest = quantity - packs * pricing.count(best);
+        return pricing.get(best).getPrice().multiply(BigDecimal.valueOf(packs)).add(decimalPrice((int) rest));
+    }
+
+    /**
+     * Number of memoized quantities
+     */
+    int memoSize() {
+        return Math.max(table.length, decimalTable.length);
+    }
+
+    private long price(int quantity) {
+        long[] t = table;
+        if (quantity < t.length) {
+            return t[quantity];
+        }
+        if (!pricing.isCompiled() || overflows) {
+            throw new ArithmeticException("Prices do not fit into minor units");
+        }
+        t = growTable(quantity);
+        if (quantity < t.length) {
+            return t[quantity];
+        }
+        // the budget is used up: continue from the table with a window of the prices the next one depends on
+        long[] window = new long[Math.min(largest, quantity + 1)];
+        for (int q = Math.max(0, t.length - window.length); q < t.length; q++) {
+            window[q % window.length] = t[q];
+        }
+        for (int q = t.length; q <= quantity; q++) {
+            window[q % window.length] = cheapest(q, window);
+        }
+        return window[quantity % window.length];
+    }
+
+    private synchronized long[] growTable(int quantity) {
+        long[] t = table;
+        if (quantity < t.length) return t;
+        int length = (int) Math.min(period, Math.max(quantity + 1L, Math.max(MIN_TABLE_SIZE, 2L * t.length)));
+        if (!budget.reserve(allocation, (long) (length - t.length) * Long.BYTES)) {
+            return t;
+        }
+        long[] grown = Arrays.copyOf(t, length);
+        try {
+            for (int q = t.length; q < length; q++) {
+                grown[q] = cheapest(q, grown);
+            }
+        } catch (ArithmeticException e) {
+            budget.release(allocation, (long) (length - t.length) * Long.BYTES);
+            overflows = true;
+            throw e;
+        }
+        table = grown;
+        return grown;
+    }
+
+    // cheapest price of the quantity, given the prices of smaller quantities modulo the length of the array
+    private long cheapest(int quantity, long[] prices) {
+        long min = 0;
+        boolean found = false;
+        for (int i = 0; i < pricing.size(); i++) {
+            int count = pricing.count(i);
+            if (count <= quantity) {
+                long price = MinorUnits.add(pricing.minorPrice(i), prices[(quantity - count) % prices.length]);
+                if (!found || price < min) {
+                    min = price;
+                    found = true;
+                }
+            }
+        }
+        return min;
+    }
+
+    private BigDecimal decimalPrice(int quantity) {
+        BigDecimal[] t = decimalTable;
+        if (quantity < t.length) {
+            return t[quantity];
+        }
+        t = growDecimalTable(quantity);
+        if (quantity < t.length) {
+            return t[quantity];
+        }
+        BigDecimal[] window = new BigDecimal[Math.min(largest, quantity + 1)];
+        for (int q = Math.max(0, t.length - window.length); q < t.length; q++) {
+            window[q % window.length] = t[q];
+        }
+        for (int q = t.length; q <= quantity; q++) {
+            window[q % window.length] = cheapest(q, window);
+        }
+        return window[quantity % window.length];
+    }
+
+    private synchronized BigDecimal[] growDecimalTable(int quantity) {
+        BigDecimal[] t = decimalTable;
+        if (quantity < t.length) return t;
+        int length = (int) Math.min(period, Math.max(quantity + 1L, Math.max(MIN_TABLE_SIZE, 2L * t.length)));
+        if (!budget.reserve(allocation, (long) (length - t.length) * DECIMAL_BYTES)) {
+            return t;
+        }
+        BigDecimal[] grown = Arrays.copyOf(t, length);
+        for (int q = t.length; q < length; q++) {
+            grown[q] = cheapest(q, grown);
+        }
+        decimalTable = grown;
+        return grown;
+    }
+
+    private BigDecimal cheapest(int quantity, BigDecimal[] prices) {
+        BigDecimal min = null;
+        for (int i = 0; i < pricing.size(); i++) {
+            int count = pricing.count(i);
+            if (count <= quantity) {
+                BigDecimal price = pricing.get(i).getPrice().add(prices[(quantity - count) % prices.length]);
+                if (min == null || price.compareTo(min) < 0) {
+                    min = price;
+                }
+            }
+        }
+        return min == null ? BigDecimal.ZERO : min;
+    }
+
+    /**
+     * Limit of the heap taken by the tables of optimal pricing. The memory of a table is returned
+     * to the budget when its pricing has been garbage collected.
+     */
+    static final class MemoBudget {
+
+        /**
+         * Budget of all the optimal pricing of the server
+         */
+        static final MemoBudget GLOBAL = new MemoBudget(64L << 20);
+
+        private final long maxBytes;
+        private long usedBytes;
+
+        // memory taken by every pricing, until the pricing has been collected
+        private final ReferenceQueue<OptimalPricing> collected = new ReferenceQueue<>();
+        private final Set<Allocation> allocations = ConcurrentHashMap.newKeySet();
+
+        MemoBudget(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * Start accounting the memory of the pricing
+         */
+        Allocation allocate(OptimalPricing owner) {
+            Allocation allocation = new Allocation(owner, collected);
+            allocations.add(allocation);
+            return allocation;
+        }
+
+        /**
+         * Charge the memory to the pricing, if it fits into the budget
+         */
+        synchronized boolean reserve(Allocation allocation, long bytes) {
+            reclaim();
+            if (usedBytes + bytes > maxBytes) {
+                return false;
+            }
+            usedBytes += bytes;
+            allocation.bytes += bytes;
+            return true;
+        }
+
+        synchronized void release(Allocation allocation, long bytes) {
+            usedBytes -= bytes;
+            allocation.bytes -= bytes;
+        }
+
+        synchronized long usedBytes() {
+            reclaim();
+            return usedBytes;
+        }
+
+        private void reclaim() {
+            for (Object ref; (ref = collected.poll()) != null; ) {
+                Allocation a = (Allocation) ref;
+                if (allocations.remove(a)) {
+                    usedBytes -= a.bytes;
+                }
+            }
+        }
+
+        static final class Allocation extends WeakReference<OptimalPricing> {
+            // guarded by the budget
+            private long bytes;
+
+            private Allocation(OptimalPricing owner, ReferenceQueue<OptimalPricing> queue) {
+                super(owner, queue);
+            }
+        }
+    }
+
+}
@@ -1,8 +1,11 @@
 package pos.service;
 
 import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.Map;
 
 import pos.model.Pricing;
+import pos.model.PricingDelta;
 
 /**
  * Defines contract for the application controller and service.
@@ -11,17 +14,93 @@ public interface PointOfSaleService {
 
     /**
      * Create a new POS terminal in the system, and return its ID.
+     * The new terminal refers to the latest published price catalog.
      */
     String activate();
     
+    /**
+     * Publish a new version of the store-wide price catalog, which replaces the previous one.
+     * Terminals activated after this call refer to the new catalog version, while already active
+     * terminals keep the version they were activated with.
+     * 
+     * @param pricings  Zero or more pricing objects
+     * @return the new catalog version
+     */
+    long publishCatalog(Pricing ... pricings);
+    
+    /**
+     * Publish a new version of the store-wide price catalog, like {@link #publishCatalog(Pricing...)},
+     * but read its pricing one by one, so that the whole price list never has to be in memory.
+     * Nothing is published if any of the pricing objects cannot be read, or is invalid.
+     * 
+     * @param pricings  Pricing objects, which are read as they are needed
+     * @return the number of imported pricing objects
+     */
+    int importCatalog(Iterator<Pricing> pricings);
+    
     /**
      * Set pricing to the given POS terminal
      * 
      * @param terminalId Terminal ID
      * @param pricings   Zero or more pricing objects
+     * @return content hash of the pricing objects (see {@link pos.model.PricingDigest}), under which
+     *         they are cached, or {@code null} if the pricing cache is disabled
+     * @throws PointOfSaleServiceException in case when terminal is not found by ID
+     */
+    String setPricing(String terminalId, Pricing ... pricings) throws PointOfSaleServiceException;
+    
+    /**
+     * Set pricing, which has been set to any POS terminal before, and which is still cached,
+     * to the given POS terminal
+     * 
+     * @param terminalId   Terminal ID
+     * @param pricingHash  Content hash of the pricing objects
+     * @return {@code false} if the pricing is not cached, and it has to be set in full
+     * @throws PointOfSaleServiceException in case when terminal is not found by ID
+     */
+    boolean setCachedPricing(String terminalId, String pricingHash) throws PointOfSaleServiceException;
+    
+    /**
+     * Apply a batch of pricing changes to the given POS terminal, as a whole or not at all
+     * (see {@link pos.model.PointOfSaleTerminal#updatePricing(PricingDelta...)})
+     * 
+     * @param terminalId Terminal ID
+     * @param deltas     Zero or more pricing changes
+     * @throws PointOfSaleServiceException in case when terminal is not found by ID
+     */
+    void updatePricing(String terminalId, PricingDelta ... deltas) throws PointOfSaleServiceException;
+    
+    /**
+     * Set pricing to the given POS terminal, reading the pricing objects one by one, and setting 
+     * them in batches of bounded size. If any of the pricing objects cannot be read, or is invalid,
+     * the batches set before it are kept.
+     * 
+     * @param terminalId Terminal ID
+     * @param pricings   Pricing objects, which are read as they are needed
+     * @return the number of imported pricing objects
+     * @throws PointOfSaleServiceException in case when terminal is not found by ID
+     */
+    int importPricing(String terminalId, Iterator<Pricing> pricings) throws PointOfSaleServiceException;
+    
+    /**
+     * Find pricing of the products of the store-wide price catalog, which codes start with the prefix,
+     * and are in the range from {@code from} (inclusive) to {@code to} (exclusive). The pricing objects
+     * of every product are returned together, and products are in the order of their codes.
+     * 
+     * @param prefix  Product code prefix, empty for all the products
+     * @param from    The least product code, or {@code null} if the range has no lower bound
+     * @param to      The product code after the range, or {@code null} if the range has no upper bound
+     * @param limit   The largest number of products to return
+     * @return pricing objects of the found products
+     */
+    Pricing[] findCatalogPricing(String prefix, String from, String to, int limit);
+    
+    /**
+     * Find pricing of the products known to the given POS terminal, like {@link #findCatalogPricing}
+     * 
      * @throws PointOfSaleServiceException in case when terminal is not found by ID
      */
-    void setPricing(String terminalId, Pricing ... pricings) throws PointOfSaleServiceException;
+    Pricing[] findPricing(String terminalId, String prefix, String from, String to, int limit) throws PointOfSaleServiceException;
     
     /**
      * Scan a product on the given POS terminal
@@ -32,6 +111,25 @@ public interface PointOfSaleService {
      */
     void scan(String terminalId, String productCode) throws PointOfSaleServiceException;
     
+    /**
+     * Scan a batch of products on the given POS terminal. The batch is either applied as a whole, 
+     * or not at all.
+     * 
+     * @param terminalId Terminal ID
+     * @param quantities Product codes mapped to their quantities
+     * @throws PointOfSaleServiceException in case when terminal is not found by ID
+     */
+    void scanAll(String terminalId, Map<String, Integer> quantities) throws PointOfSaleServiceException;
+    
+    /**
+     * Get the running total of the given POS terminal, which remains active.
+     * 
+     * @param terminalId Terminal ID
+     * @return terminal's running total
+     * @throws PointOfSaleServiceException in case when terminal is not found by ID
+     */
+    BigDecimal subtotal(String terminalId) throws PointOfSaleServiceException;
+    
     /**
      * Calculate grand total on the given POS terminal.
      * Once this method is executed, the POS terminal is removed, and the any following methods
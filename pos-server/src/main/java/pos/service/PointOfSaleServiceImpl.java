@@ -1,46 +1,344 @@
 package pos.service;
 
 import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import pos.cluster.Cluster;
+import pos.metrics.Metrics;
+import pos.metrics.Metrics.Operation;
 import pos.model.PointOfSaleTerminal;
+import pos.model.PointOfSaleTerminalException;
 import pos.model.Pricing;
+import pos.model.PricingDelta;
+import pos.model.UnknownProductException;
 
 /**
  * In-memory implementation of {@code PointOfSaleService}. This implementation keeps all
- * POS terminal objects in a map, where keys are their IDs.
+ * POS terminal objects in a {@link TerminalRegistry}, where keys are their IDs. Terminals which
+ * stay idle for too long are evicted from the registry, and the number of active terminals
+ * is limited.
  * 
  * Every method will find the POS terminal by its ID, and then call a similar method on it.
+ * 
+ * The service also holds the store-wide price catalog. All terminals activated with the same
+ * catalog version share it, until they add pricing of their own.
+ * 
+ * All state changes are recorded in a {@link TerminalJournal} (unless journaling is disabled),
+ * and open terminals are rebuilt from it when the service is created.
+ * 
+ * Every operation records its latency and errors in {@link Metrics}.
+ * 
+ * Shopping carts are created by a {@link CartStorage}, on the heap or off the heap, and they are
+ * released when their terminals are closed, evicted or moved.
+ * 
+ * Published catalogs price carts with the configured {@link PricingStrategy}.
+ * 
+ * Terminal IDs are created by the {@link Cluster}, so that they belong to shards owned by this server,
+ * and terminals may be moved to other servers with {@link TerminalTransfer}.
+ * 
+ * Pricing set on terminals is kept in a {@link PricingCache} by its content hash, so that it may be
+ * set again by the hash alone.
  */
 @Service
-final class PointOfSaleServiceImpl implements PointOfSaleService {
+final class PointOfSaleServiceImpl implements PointOfSaleService, TerminalTransfer {
 
-    private final Map<String, PointOfSaleTerminal> terminals;
+    static final int DEFAULT_IMPORT_BATCH_SIZE = 10000;
+    static final int DEFAULT_PRICING_CACHE_SIZE = 256;
+
+    private final TerminalRegistry terminals;
+    private final AtomicReference<PriceCatalog> catalog;
+    private final TerminalJournal journal;
+    private final Metrics metrics;
+    private final Cluster cluster;
+    private final CartStorage cartStorage;
+    // catalog which all the published catalogs are built from, it has the configured pricing strategy
+    private final PriceCatalog emptyCatalog;
+    private final int importBatchSize;
+    private final PricingCache pricingCache;
+    
+    @Autowired
+    public PointOfSaleServiceImpl(
+            @Value("${pos.terminal.idle-timeout-seconds:1800}") long idleTimeoutSeconds,
+            @Value("${pos.terminal.max-active:100000}") int maxTerminals,
+            @Value("${pos.terminal.rejection-policy:REJECT}") TerminalRegistry.RejectionPolicy rejectionPolicy,
+            @Value("${pos.terminal.sweep-interval-seconds:60}") long sweepIntervalSeconds,
+            @Value("${pos.journal.dir:}") String journalDir,
+            @Value("${pos.journal.segment-size-mb:64}") int segmentSizeMb,
+            @Value("${pos.journal.fsync-policy:INTERVAL}") TerminalJournal.FsyncPolicy fsyncPolicy,
+            @Value("${pos.journal.fsync-interval-millis:100}") long fsyncIntervalMillis,
+            @Value("${pos.terminal.cart-storage:HEAP}") CartStorage.Type cartStorageType,
+            @Value("${pos.terminal.off-heap-slab-kb:1024}") int offHeapSlabKb,
+            @Value("${pos.pricing.strategy:GREEDY}") PricingStrategy pricingStrategy,
+            @Value("${pos.import.batch-size:10000}") int importBatchSize,
+            @Value("${pos.pricing.cache-size:256}") int pricingCacheSize,
+            Metrics metrics,
+            Cluster cluster) {
+        this(new TerminalRegistry(idleTimeoutSeconds, maxTerminals, rejectionPolicy, sweepIntervalSeconds),
+             journalDir.isEmpty() ? TerminalJournal.DISABLED : new FileTerminalJournal(
+                     Paths.get(journalDir), segmentSizeMb * 1024L * 1024L, fsyncPolicy, fsyncIntervalMillis),
+             metrics, cluster,
+             cartStorageType == CartStorage.Type.OFF_HEAP ? new OffHeapCartStorage(offHeapSlabKb * 1024) : CartStorage.HEAP,
+             pricingStrategy, importBatchSize, pricingCacheSize);
+    }
+    
+    PointOfSaleServiceImpl(TerminalRegistry terminals) {
+        this(terminals, TerminalJournal.DISABLED);
+    }
+    
+    PointOfSaleServiceImpl(TerminalRegistry terminals, TerminalJournal journal) {
+        this(terminals, journal, new Metrics(), DEFAULT_IMPORT_BATCH_SIZE);
+    }
+    
+    PointOfSaleServiceImpl(TerminalRegistry terminals, TerminalJournal journal, Metrics metrics, int importBatchSize) {
+        this(terminals, journal, metrics, new Cluster(), CartStorage.HEAP, PricingStrategy.GREEDY, importBatchSize,
+             DEFAULT_PRICING_CACHE_SIZE);
+    }
+    
+    /**
+     * Create the service, rebuild its state from the journal, and register its gauges and counters
+     */
+    PointOfSaleServiceImpl(TerminalRegistry terminals, TerminalJournal journal, Metrics metrics, Cluster cluster,
+            CartStorage cartStorage, PricingStrategy pricingStrategy, int importBatchSize, int pricingCacheSize) {
+        if (importBatchSize <= 0) {
+            throw new IllegalArgumentException("Import batch size must be positive: " + importBatchSize);
+        }
+        this.terminals = terminals;
+        this.journal = journal;
+        this.metrics = metrics;
+        this.cluster = cluster;
+        this.cartStorage = cartStorage;
+        this.importBatchSize = importBatchSize;
+        pricingCache = new PricingCache(pricingCacheSize);
+        emptyCatalog = PriceCatalog.empty(pricingStrategy);
+        catalog = new AtomicReference<>(emptyCatalog);
+        
+        journal.replay(new Recovery());
+        List<PointOfSaleTerminalImpl> open = new ArrayList<>();
+        terminals.forEach(t -> open.add((PointOfSaleTerminalImpl) t));
+        journal.start(catalog.get(), open);
+        terminals.setEvictionListener(t -> {
+            journal.closed(t.getId());
+            ((PointOfSaleTerminalImpl) t).release();
+        });
+        
+        metrics.gauge("pos_active_terminals", "Number of active terminals", terminals::size);
+        metrics.gauge("pos_cart_products", "Number of different products in all shopping carts", () -> {
+            long[] products = new long[1];
+            terminals.forEach(t -> products[0] += ((PointOfSaleTerminalImpl) t).cartSize());
+            return products[0];
+        });
+        metrics.gauge("pos_product_codes", "Number of product codes which are priced", ProductIndex.GLOBAL::size);
+        metrics.gauge("pos_cart_storage_bytes", "Off-heap memory reserved for shopping carts", cartStorage::reservedBytes);
+        metrics.counter("pos_terminal_idle_evictions_total", "Terminals evicted because they were idle",
+                terminals::getIdleEvictions);
+        metrics.counter("pos_terminal_capacity_evictions_total", "Terminals evicted to make room for new terminals",
+                terminals::getCapacityEvictions);
+        metrics.counter("pos_terminal_rejections_total", "Terminals not activated because there were too many active terminals",
+                terminals::getRejections);
+        metrics.gauge("pos_pricing_cache_entries", "Number of price lists in the pricing cache", pricingCache::size);
+        metrics.counter("pos_pricing_cache_hits_total", "Pricing set by the hash of a cached price list", pricingCache::hits);
+        metrics.counter("pos_pricing_cache_misses_total", "Pricing requested by the hash of a price list which is not cached",
+                pricingCache::misses);
+    }
     
-    public PointOfSaleServiceImpl() {
-        terminals = new ConcurrentHashMap<>();
+    @PreDestroy
+    void close() {
+        terminals.close();
+        journal.close();
     }
 
     /**
-     * Create a new POS terminal with the unique ID, and save it under this ID
+     * Create a new POS terminal with the unique ID, which refers to the current price catalog,
+     * and save it under this ID
      */
     @Override
     public String activate() {
-        PointOfSaleTerminal terminal = new PointOfSaleTerminalImpl();
-        terminals.put(terminal.getId(), terminal);
-        return terminal.getId();
+        long start = System.nanoTime();
+        try {
+            PriceCatalog c = catalog.get();
+            PointOfSaleTerminal terminal;
+            do {
+                // a random ID may already be taken, however unlikely
+                terminal = newTerminal(cluster.newTerminalId(), c);
+            } while (!terminals.add(terminal));
+            journal.activated(terminal.getId(), c.getVersion());
+            return terminal.getId();
+        } finally {
+            metrics.recordLatency(Operation.ACTIVATE, System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * Replace the current price catalog with a new version
+     */
+    @Override
+    public long publishCatalog(Pricing... pricings) {
+        long start = System.nanoTime();
+        try {
+            PriceCatalog published = emptyCatalog.withPricing(pricings);
+            metrics.recordPricingLoad(pricings.length);
+            // recorded before it is published, so that activations with it are recorded after it
+            journal.catalogCreated(published.getVersion(), true, pricings);
+            catalog.set(published);
+            return published.getVersion();
+        } finally {
+            metrics.recordLatency(Operation.PUBLISH_CATALOG, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Build a new catalog version from the pricing objects, and publish it when all of them
+     * have been read
+     */
+    @Override
+    public int importCatalog(Iterator<Pricing> pricings) {
+        long start = System.nanoTime();
+        try {
+            PriceCatalog.Builder builder = emptyCatalog.toBuilder();
+            int imported = 0;
+            while (pricings.hasNext()) {
+                builder.add(pricings.next());
+                imported++;
+            }
+            PriceCatalog published = builder.build();
+            metrics.recordPricingLoad(imported);
+            journal.catalogCreated(published.getVersion(), true, published.toPricing());
+            catalog.set(published);
+            return imported;
+        } finally {
+            metrics.recordLatency(Operation.IMPORT_CATALOG, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Find a POS terminal by ID, set pricing on it, and cache the pricing
+     */
+    @Override
+    public String setPricing(String terminalId, Pricing... pricings) {
+        long start = System.nanoTime();
+        try {
+            return withTerminal(terminalId, t -> {
+                PriceCatalog.validate(pricings);
+                PricingCache.Entry entry = pricingCache.put(pricings);
+                setPricing(terminalId, (PointOfSaleTerminalImpl) t, entry);
+                return entry.getHash();
+            });
+        } finally {
+            metrics.recordLatency(Operation.SET_PRICING, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Find a POS terminal by ID, and set the cached pricing on it
+     */
+    @Override
+    public boolean setCachedPricing(String terminalId, String pricingHash) {
+        long start = System.nanoTime();
+        try {
+            return withTerminal(terminalId, t -> {
+                PricingCache.Entry entry = pricingCache.get(pricingHash);
+                if (entry == null) {
+                    return false;
+                }
+                setPricing(terminalId, (PointOfSaleTerminalImpl) t, entry);
+                return true;
+            });
+        } finally {
+            metrics.recordLatency(Operation.SET_CACHED_PRICING, System.nanoTime() - start);
+        }
+    }
+
+    private void setPricing(String terminalId, PointOfSaleTerminalImpl terminal, PricingCache.Entry entry) {
+        metrics.recordPricingLoad(entry.getPricing().length);
+        terminal.setPricing(entry, () -> journal.pricingAdded(terminalId, entry.getPricing()));
+    }
+
+    /**
+     * Find a POS terminal by ID, and apply the pricing changes to it
+     */
+    @Override
+    public void updatePricing(String terminalId, PricingDelta... deltas) {
+        long start = System.nanoTime();
+        try {
+            withTerminal(terminalId, t -> {
+                // recorded once the changes are applied, since they may be rejected for the products in the cart
+                PriceCatalog.validate(deltas);
+                metrics.recordPricingLoad(deltas.length);
+                ((PointOfSaleTerminalImpl) t).updatePricing(deltas, () -> journal.pricingUpdated(terminalId, deltas));
+                return null;
+            });
+        } finally {
+            metrics.recordLatency(Operation.UPDATE_PRICING, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Find a POS terminal by ID, and set pricing on it in batches, so that only one batch
+     * of pricing objects is in memory at a time
+     */
+    @Override
+    public int importPricing(String terminalId, Iterator<Pricing> pricings) {
+        long start = System.nanoTime();
+        try {
+            return withTerminal(terminalId, t -> {
+                List<Pricing> batch = new ArrayList<>(Math.min(importBatchSize, 1024));
+                int imported = 0;
+                while (pricings.hasNext()) {
+                    batch.add(pricings.next());
+                    if (batch.size() == importBatchSize || !pricings.hasNext()) {
+                        Pricing[] b = batch.toArray(new Pricing[0]);
+                        PriceCatalog.validate(b);
+                        ((PointOfSaleTerminalImpl) t).setPricing(b, () -> journal.pricingAdded(terminalId, b));
+                        imported += b.length;
+                        batch.clear();
+                    }
+                }
+                metrics.recordPricingLoad(imported);
+                return imported;
+            });
+        } finally {
+            metrics.recordLatency(Operation.IMPORT_PRICING, System.nanoTime() - start);
+        }
     }
 
     /**
-     * Find a POS terminal by ID, and set pricing on it
+     * Query the sorted index of the current price catalog
      */
     @Override
-    public void setPricing(String terminalId, Pricing... pricings) {
-        withTerminal(terminalId, t -> {t.setPricing(pricings); return null;});
+    public Pricing[] findCatalogPricing(String prefix, String from, String to, int limit) {
+        long start = System.nanoTime();
+        try {
+            return find(catalog.get(), prefix, from, to, limit);
+        } finally {
+            metrics.recordLatency(Operation.FIND_PRICING, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Find a POS terminal by ID, and query the sorted index of its price catalog
+     */
+    @Override
+    public Pricing[] findPricing(String terminalId, String prefix, String from, String to, int limit) {
+        long start = System.nanoTime();
+        try {
+            return withTerminal(terminalId, t -> find(((PointOfSaleTerminalImpl) t).getCatalog(), prefix, from, to, limit));
+        } finally {
+            metrics.recordLatency(Operation.FIND_PRICING, System.nanoTime() - start);
+        }
     }
 
     /**
@@ -48,26 +346,293 @@ final class PointOfSaleServiceImpl implements PointOfSaleService {
      */
     @Override
     public void scan(String terminalId, String productCode) {
-        withTerminal(terminalId, t -> {t.scan(productCode); return null;});
+        long start = System.nanoTime();
+        try {
+            withTerminal(terminalId, t -> {
+                // under the terminal's lock, so that changes are recorded in the order they are applied
+                synchronized (t) {
+                    t.scan(productCode);
+                    journal.scanned(terminalId, Collections.singletonMap(productCode, 1));
+                }
+                return null;
+            });
+        } finally {
+            metrics.recordLatency(Operation.SCAN, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Find a POS terminal by ID, and scan a batch of products on it
+     */
+    @Override
+    public void scanAll(String terminalId, Map<String, Integer> quantities) {
+        long start = System.nanoTime();
+        try {
+            withTerminal(terminalId, t -> {
+                synchronized (t) {
+                    t.scanAll(quantities);
+                    journal.scanned(terminalId, quantities);
+                }
+                return null;
+            });
+        } finally {
+            metrics.recordLatency(Operation.SCAN_BATCH, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Find a POS terminal by ID, and get its running total
+     */
+    @Override
+    public BigDecimal subtotal(String terminalId) {
+        long start = System.nanoTime();
+        try {
+            return withTerminal(terminalId, t -> t.subtotal());
+        } finally {
+            metrics.recordLatency(Operation.SUBTOTAL, System.nanoTime() - start);
+        }
     }
 
     /**
-     * Find a POS terminal by ID, calculate its total, and remove the terminal, so that 
-     * all subsequent method calls on this terminal would result in exception
+     * Remove a POS terminal, and calculate its total, so that all subsequent method calls on this
+     * terminal would result in exception. Scans which race with the total either get into it,
+     * or fail because the terminal is closed.
      */
     @Override
     public BigDecimal calculateTotal(String terminalId) {
-        BigDecimal total = withTerminal(terminalId, t -> t.calculateTotal());
-        terminals.remove(terminalId);
-        return total;
+        long start = System.nanoTime();
+        try {
+            PointOfSaleTerminalImpl t = (PointOfSaleTerminalImpl) terminals.remove(terminalId);
+            if (t == null) {
+                metrics.unknownTerminal();
+                throw new PointOfSaleServiceException("Unknown terminal id: " + terminalId);
+            }
+            synchronized (t) {
+                journal.closed(terminalId);
+                return t.releaseWithTotal();
+            }
+        } finally {
+            metrics.recordLatency(Operation.CALCULATE_TOTAL, System.nanoTime() - start);
+        }
+    }
+    
+    @Override
+    public boolean contains(String terminalId) {
+        return terminals.contains(terminalId);
+    }
+    
+    @Override
+    public List<String> terminalIds() {
+        List<String> ids = new ArrayList<>();
+        terminals.forEach(t -> ids.add(t.getId()));
+        return ids;
+    }
+    
+    /**
+     * Remove the terminal, and return all of its pricing and its shopping cart
+     */
+    @Override
+    public TerminalState detach(String terminalId) {
+        PointOfSaleTerminalImpl t = (PointOfSaleTerminalImpl) terminals.remove(terminalId);
+        if (t == null) return null;
+        journal.closed(terminalId);
+        Map<String, Long> cart = t.releaseCart();
+        PriceCatalog c = t.getCatalog();
+        return new TerminalState(terminalId, c.digest(), c.toPricing(), cart);
+    }
+    
+    @Override
+    public String catalogHash() {
+        return catalog.get().digest();
+    }
+    
+    /**
+     * Add the terminals, which refer to the current price catalog if their pricing is the same,
+     * and to catalogs of their own otherwise, which terminals with the same pricing share. No terminal
+     * is added before all the states are validated, and the terminals added before one which exceeds
+     * the limit of terminals are removed again.
+     */
+    @Override
+    public void attach(List<TerminalState> states) {
+        PriceCatalog current = catalog.get();
+        Map<String, PriceCatalog> catalogs = new HashMap<>();
+        catalogs.put(current.digest(), current);
+        List<PointOfSaleTerminalImpl> restored = new ArrayList<>(states.size());
+        try {
+            for (TerminalState state : states) {
+                restored.add(restore(state, catalogs));
+            }
+        } catch (RuntimeException e) {
+            restored.forEach(PointOfSaleTerminalImpl::release);
+            throw e;
+        }
+        
+        for (int i = 0; i < restored.size(); i++) {
+            PointOfSaleTerminalImpl t = restored.get(i);
+            close(t.getId());
+            try {
+                terminals.add(t);
+            } catch (TerminalLimitExceededException e) {
+                for (int j = 0; j < i; j++) {
+                    close(restored.get(j).getId());
+                }
+                for (int j = i; j < restored.size(); j++) {
+                    restored.get(j).release();
+                }
+                throw e;
+            }
+            PriceCatalog c = t.getCatalog();
+            journal.activated(t.getId(), c.getVersion());
+            if (c != current) {
+                journal.pricingAdded(t.getId(), c.toPricing());
+            }
+            journal.scanned(t.getId(), t.cartSnapshot());
+        }
+    }
+    
+    // validate the state, and create its terminal, with the catalog of its pricing hash, if there is one already
+    private PointOfSaleTerminalImpl restore(TerminalState state, Map<String, PriceCatalog> catalogs) {
+        if (TerminalIds.parse(state.getId()) == TerminalIds.INVALID || state.getCart() == null
+                || state.getPricing() == null && state.getPricingHash() == null) {
+            throw new PointOfSaleServiceException("Invalid terminal state: " + state.getId());
+        }
+        PriceCatalog found = state.getPricingHash() == null ? null : catalogs.get(state.getPricingHash());
+        if (found == null) {
+            if (state.getPricing() == null) {
+                throw new PointOfSaleServiceException("Unknown pricing of terminal " + state.getId() + ": " + state.getPricingHash());
+            }
+            PriceCatalog.validate(state.getPricing());
+            PriceCatalog created = emptyCatalog.withPricing(state.getPricing());
+            found = catalogs.computeIfAbsent(created.digest(), h -> created);
+            if (state.getPricingHash() != null) {
+                catalogs.putIfAbsent(state.getPricingHash(), found);
+            }
+        }
+        PriceCatalog c = found;
+        state.getCart().forEach((code, quantity) -> {
+            if (!c.contains(code) || quantity == null || quantity <= 0) {
+                throw new PointOfSaleServiceException("Invalid quantity of product " + code + ": " + quantity);
+            }
+        });
+        PointOfSaleTerminalImpl t = newTerminal(state.getId(), c);
+        state.getCart().forEach(t::addToCart);
+        return t;
+    }
+    
+    private PointOfSaleTerminalImpl newTerminal(String terminalId, PriceCatalog c) {
+        return new PointOfSaleTerminalImpl(terminalId, c, cartStorage.newCart());
+    }
+    
+    // remove the terminal, if it is still there, and release its cart
+    private void close(String terminalId) {
+        PointOfSaleTerminalImpl t = (PointOfSaleTerminalImpl) terminals.remove(terminalId);
+        if (t != null) {
+            synchronized (t) {
+                journal.closed(terminalId);
+                t.release();
+            }
+        }
+    }
+    
+    private static Pricing[] find(PriceCatalog c, String prefix, String from, String to, int limit) {
+        if (limit <= 0) {
+            throw new PointOfSaleServiceException("Limit must be positive, but was " + limit);
+        }
+        List<Pricing> found = new ArrayList<>();
+        for (ProductPricing p : c.find(prefix == null ? "" : prefix, from, to, limit)) {
+            for (int i = 0; i < p.size(); i++) {
+                found.add(p.get(i));
+            }
+        }
+        return found.toArray(new Pricing[0]);
     }
     
     private <T> T withTerminal(String terminalId, Function<PointOfSaleTerminal, T> f) {
         PointOfSaleTerminal terminal = terminals.get(terminalId);
         if (terminal == null) {
+            metrics.unknownTerminal();
             throw new PointOfSaleServiceException("Unknown terminal id: " + terminalId);
         }
-        return f.apply(terminal);
+        try {
+            return f.apply(terminal);
+        } catch (UnknownProductException e) {
+            metrics.unknownProduct();
+            throw e;
+        }
+    }
+    
+    /**
+     * Rebuilds the service state from the journal
+     */
+    private final class Recovery implements TerminalEvents {
+        
+        // catalog versions in the journal mapped to recreated catalogs
+        private final Map<Long, PriceCatalog> catalogs = new HashMap<>();
+        
+        @Override
+        public void catalogCreated(long version, boolean current, Pricing[] pricings) {
+            PriceCatalog c = emptyCatalog.withPricing(pricings);
+            catalogs.put(version, c);
+            if (current) {
+                catalog.set(c);
+            }
+        }
+        
+        @Override
+        public void activated(String terminalId, long catalogVersion) {
+            PriceCatalog c = catalogs.getOrDefault(catalogVersion, emptyCatalog);
+            // the terminal is activated again by the snapshot, if compaction did not complete
+            closed(terminalId);
+            try {
+                terminals.add(newTerminal(terminalId, c));
+            } catch (TerminalLimitExceededException e) {
+                // the terminal limit has been lowered since the terminal was activated
+            } catch (IllegalArgumentException e) {
+                // the terminal was activated with an ID in an earlier format
+            }
+        }
+        
+        @Override
+        public void pricingAdded(String terminalId, Pricing[] pricings) {
+            PointOfSaleTerminal t = terminals.get(terminalId);
+            if (t != null) {
+                t.setPricing(pricings);
+            }
+        }
+        
+        @Override
+        public void pricingUpdated(String terminalId, PricingDelta[] deltas) {
+            PointOfSaleTerminal t = terminals.get(terminalId);
+            if (t != null) {
+                try {
+                    t.updatePricing(deltas);
+                } catch (PointOfSaleTerminalException e) {
+                    // changes recorded out of order by an earlier version may be rejected
+                }
+            }
+        }
+        
+        @Override
+        public void scanned(String terminalId, Map<String, ? extends Number> quantities) {
+            PointOfSaleTerminalImpl t = (PointOfSaleTerminalImpl) terminals.get(terminalId);
+            if (t != null) {
+                quantities.forEach((code, quantity) -> {
+                    try {
+                        t.addToCart(code, quantity.longValue());
+                    } catch (UnknownProductException e) {
+                        // scans recorded out of order by an earlier version may precede pricing of the products
+                    }
+                });
+            }
+        }
+        
+        @Override
+        public void closed(String terminalId) {
+            PointOfSaleTerminalImpl t = (PointOfSaleTerminalImpl) terminals.remove(terminalId);
+            if (t != null) {
+                t.release();
+            }
+        }
     }
     
 }
@@ -1,44 +1,92 @@
 package pos.service;
 
 import java.math.BigDecimal;
-import java.util.Comparator;
+import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 import pos.model.PointOfSaleTerminal;
 import pos.model.PointOfSaleTerminalException;
 import pos.model.Pricing;
+import pos.model.PricingDelta;
+import pos.model.UnknownProductException;
 
 /**
  * Implementation of {@code PointOfSaleTerminal} interface, which actully implements is functionality.
+ * 
+ * The terminal is thread-safe. The shopping cart is a {@link Cart} of a {@link CartStorage}, either
+ * on the heap or off the heap, which keeps product numbers and counts in primitive arrays, so that
+ * a scan allocates nothing. The cart is not thread-safe itself: every access to it is serialized by
+ * the terminal's lock, which is the only lock a scan takes, and which is uncontended, as long as
+ * a terminal is used by one lane.
+ * 
+ * The total is kept up to date by every scan, which adds the change of the scanned product's line
+ * total, so that {@link #subtotal()} does not have to price the whole cart. A scan changes the count
+ * and the total together, so they are guarded by the same lock rather than by separate lock-free
+ * counters, which could be read out of step. The total is recalculated from the cart only when
+ * the terminal has switched to a new catalog version since it was last read.
+ * 
+ * Pricing is published by atomically replacing the immutable price catalog. Pricing is applied to
+ * a new catalog version outside of the lock, and scans wait only while the terminal switches to it,
+ * and while the cart is checked for products which pricing changes remove. Every change is applied
+ * under the lock, so that the callers may record changes in the order they are applied.
  */
 final class PointOfSaleTerminalImpl implements PointOfSaleTerminal {
     
-    // we keep Pricing objects sorted by count in descending order
-    private static final Comparator<Pricing> reversedCountComparator =
-            Comparator.comparing(Pricing::getCount).reversed();
-    
     // POS terminal ID
     private final String id;
     
-    // Pricing map. Keys are product codes, and values are
-    // sets of Pricing objects sorted by count in descending order
-    private final Map<String, SortedSet<Pricing>> pricingMap;
+    // Price catalog. It is immutable and possibly shared with other terminals,
+    // so adding pricing replaces it with a new catalog version
+    private final AtomicReference<PriceCatalog> catalog;
+    
+    // Scanned products and their counts (how many times the product has been scanned)
+    private final Cart shoppingCart;
     
-    // A map which contains scanned products. 
-    // Keys are product codes, and the values are counts (how many times the product has been scanned)
-    private final Map<String, Integer> shoppingCart;
+    // Running total of the cart, and the catalog version it is priced with, which is null
+    // when the total has to be recalculated. Both are guarded by the terminal's lock
+    private Total runningTotal;
+    private PriceCatalog totalCatalog;
+    
+    // action after a change which is not recorded
+    private static final Runnable NOTHING = () -> {};
     
     /**
-     * Create a new POS terminal object.  The object will obtain a unique ID
+     * Create a new POS terminal object with no pricing.  The object will obtain a unique ID
      */
     public PointOfSaleTerminalImpl() {
-        id = UUID.randomUUID().toString().replaceAll("-", "");
-        pricingMap = new HashMap<>();
-        shoppingCart = new HashMap<>();
+        this(PriceCatalog.EMPTY);
+    }
+    
+    /**
+     * Create a new POS terminal object which refers to the given price catalog.
+     * The object will obtain a unique ID
+     */
+    public PointOfSaleTerminalImpl(PriceCatalog catalog) {
+        this(TerminalIds.newId(), catalog);
+    }
+    
+    /**
+     * Create a POS terminal object with the given ID, which refers to the given price catalog.
+     * This is how terminals are restored.
+     */
+    PointOfSaleTerminalImpl(String id, PriceCatalog catalog) {
+        this(id, catalog, CartStorage.HEAP.newCart());
+    }
+    
+    /**
+     * Create a POS terminal object with the given ID, price catalog and empty shopping cart
+     */
+    PointOfSaleTerminalImpl(String id, PriceCatalog catalog, Cart cart) {
+        this.id = id;
+        this.catalog = new AtomicReference<>(catalog);
+        shoppingCart = cart;
+        runningTotal = new Total(catalog.getStrategy());
+        totalCatalog = catalog;
     }
     
     @Override
@@ -47,51 +95,282 @@ final class PointOfSaleTerminalImpl implements PointOfSaleTerminal {
     }
 
     /**
-     * Add the given {@code Pricing} objects.
+     * Add the given {@code Pricing} objects.  The terminal switches to a new version of its
+     * price catalog, unless the given objects are already in the catalog.
      */
     @Override
     public void setPricing(Pricing... pricings) {
-        for (Pricing p : pricings) {
-            SortedSet<Pricing> s = pricingMap.get(p.getProductCode());
-            if (s == null) {
-                s = new TreeSet<>(reversedCountComparator);
-                pricingMap.put(p.getProductCode(), s);
+        setPricing(pricings, NOTHING);
+    }
+
+    /**
+     * Add the given {@code Pricing} objects, and run the action under the terminal's lock once they
+     * have been added, so that no other change of the terminal comes in between
+     */
+    void setPricing(Pricing[] pricings, Runnable applied) {
+        switchCatalog(c -> c.withPricing(pricings), false, applied);
+    }
+
+    /**
+     * Add cached pricing, like {@link #setPricing(Pricing...)}. Terminals which add the same cached
+     * pricing to the same catalog version switch to the same new version.
+     */
+    void setPricing(PricingCache.Entry pricing) {
+        setPricing(pricing, NOTHING);
+    }
+
+    /**
+     * Add cached pricing, and run the action under the terminal's lock once it has been added
+     */
+    void setPricing(PricingCache.Entry pricing, Runnable applied) {
+        switchCatalog(pricing::addTo, false, applied);
+    }
+
+    /**
+     * Apply the pricing changes to a copy of the price catalog, and switch to it, unless nothing
+     * has changed. Scans and totals wait only while the shopping cart is checked for products which
+     * the changes remove from pricing, and not while the copy is made.
+     */
+    @Override
+    public void updatePricing(PricingDelta... deltas) {
+        updatePricing(deltas, NOTHING);
+    }
+
+    /**
+     * Apply the pricing changes, and run the action under the terminal's lock once they have been
+     * applied, so that no other change of the terminal comes in between
+     */
+    void updatePricing(PricingDelta[] deltas, Runnable applied) {
+        switchCatalog(c -> c.withDeltas(deltas), true, applied);
+    }
+
+    // switch to the updated catalog version, which is created outside of the lock, and retried when
+    // the catalog has changed meanwhile
+    private void switchCatalog(UnaryOperator<PriceCatalog> update, boolean removes, Runnable applied) {
+        while (true) {
+            PriceCatalog c = catalog.get();
+            PriceCatalog updated = update.apply(c);
+            // under the lock, so that no scan adds a removed product before the switch
+            synchronized (this) {
+                if (updated != c) {
+                    if (removes) {
+                        List<String> removed = new ArrayList<>();
+                        shoppingCart.forEach((product, count) -> {
+                            if (updated.get(product) == null) {
+                                removed.add(ProductIndex.GLOBAL.codeOf(product));
+                            }
+                        });
+                        if (!removed.isEmpty()) {
+                            throw new PointOfSaleTerminalException("Products in the shopping cart cannot be removed from pricing: " + removed);
+                        }
+                    }
+                    if (!catalog.compareAndSet(c, updated)) continue;
+                }
+                applied.run();
+                return;
             }
-            s.add(p);
         }
     }
+    
+    /**
+     * Get the price catalog version this terminal refers to
+     */
+    long getCatalogVersion() {
+        return catalog.get().getVersion();
+    }
+    
+    /**
+     * Get the price catalog this terminal refers to
+     */
+    PriceCatalog getCatalog() {
+        return catalog.get();
+    }
+    
+    /**
+     * Get a copy of the shopping cart: product codes mapped to their counts
+     */
+    synchronized Map<String, Long> cartSnapshot() {
+        Map<String, Long> snapshot = new HashMap<>();
+        shoppingCart.forEach((product, count) -> snapshot.put(ProductIndex.GLOBAL.codeOf(product), count));
+        return snapshot;
+    }
+    
+    /**
+     * Number of different products in the shopping cart
+     */
+    synchronized int cartSize() {
+        return shoppingCart.size();
+    }
+    
+    /**
+     * Add the given quantity of the product to the shopping cart without updating the total.
+     * This is how shopping carts are restored.
+     *
+     * @throws UnknownProductException if the product is not priced, since the shopping cart
+     *         contains only priced products
+     */
+    synchronized void addToCart(String productCode, long quantity) {
+        ProductPricing pricing = catalog.get().get(productCode);
+        if (pricing == null) {
+            throw new UnknownProductException("No product found by code: " + productCode);
+        }
+        shoppingCart.add(pricing.product(), quantity);
+        totalCatalog = null;
+    }
+    
+    /**
+     * Release the shopping cart, after the terminal has been closed
+     */
+    synchronized void release() {
+        shoppingCart.release();
+    }
+    
+    /**
+     * Calculate the total, and release the shopping cart, atomically: a scan either gets into
+     * the total, or fails because the terminal is closed
+     */
+    synchronized BigDecimal releaseWithTotal() {
+        BigDecimal total = subtotal();
+        shoppingCart.release();
+        return total;
+    }
+
+    /**
+     * Get a copy of the shopping cart, and release the cart, atomically: a scan either gets into
+     * the copy, or fails because the terminal is closed
+     */
+    synchronized Map<String, Long> releaseCart() {
+        Map<String, Long> snapshot = cartSnapshot();
+        shoppingCart.release();
+        return snapshot;
+    }
 
     /**
      * Add the given product to the shopping cart.
      */
     @Override
-    public void scan(String productCode) {
-        if (!pricingMap.containsKey(productCode)) {
-            throw new PointOfSaleTerminalException("No product found by code: " + productCode);
+    public synchronized void scan(String productCode) {
+        PriceCatalog c = catalog.get();
+        ProductPricing pricing = c.get(productCode);
+        if (pricing == null) {
+            throw new UnknownProductException("No product found by code: " + productCode);
         }
         
-        shoppingCart.compute(productCode, (key, oldVal) -> 
-            (oldVal == null) ? new Integer(1) : new Integer(oldVal.intValue() + 1));
+        long count = shoppingCart.add(pricing.product(), 1);
+        if (totalCatalog == c) {
+            runningTotal.add(pricing, count - 1, count);
+        }
     }
 
     /**
-     * Calculate the shopping cart total in a way that pricing with larger counts is applied first,
-     * which results in the lower total.
+     * Validate the whole batch first, and only then add all the products to the shopping cart.
+     */
+    @Override
+    public synchronized void scanAll(Map<String, Integer> quantities) {
+        PriceCatalog c = catalog.get();
+        List<String> unknown = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : quantities.entrySet()) {
+            if (e.getValue() == null || e.getValue() <= 0) {
+                throw new PointOfSaleTerminalException("Invalid quantity of product " + e.getKey() + ": " + e.getValue());
+            }
+            if (!c.contains(e.getKey())) {
+                unknown.add(e.getKey());
+            }
+        }
+        if (!unknown.isEmpty()) {
+            throw new UnknownProductException("No products found by codes: " + unknown);
+        }
+        
+        for (Map.Entry<String, Integer> e : quantities.entrySet()) {
+            ProductPricing pricing = c.get(e.getKey());
+            long count = shoppingCart.add(pricing.product(), e.getValue());
+            if (totalCatalog == c) {
+                runningTotal.add(pricing, count - e.getValue(), count);
+            }
+        }
+    }
+
+    /**
+     * Calculate the shopping cart total with the pricing strategy of the price catalog.
+     * This is the same as {@link #subtotal()}.
      */
     @Override
     public BigDecimal calculateTotal() {
-        BigDecimal total = new BigDecimal(0);
-        for (Map.Entry<String, Integer> e : shoppingCart.entrySet()) {
-            int count = e.getValue();
-            for (Pricing p : pricingMap.get(e.getKey())) {
-                if (count == 0) break;
-                while (p.getCount() <= count) {
-                    total = total.add(p.getPrice());
-                    count -= p.getCount();
+        return subtotal();
+    }
+    
+    /**
+     * Get the running total of the shopping cart, which is recalculated only when pricing has
+     * changed since the last scan.
+     * 
+     * Line totals are summed up in minor units, only products which prices cannot be kept
+     * in minor units (or which totals overflow) are summed up as {@code BigDecimal}.
+     */
+    @Override
+    public synchronized BigDecimal subtotal() {
+        PriceCatalog c = catalog.get();
+        if (totalCatalog != c) {
+            // every product in the cart is priced, since its pricing cannot be removed
+            Total total = new Total(c.getStrategy());
+            shoppingCart.forEach((product, count) -> total.add(c.get(product), 0, count));
+            runningTotal = total;
+            totalCatalog = c;
+        }
+        return runningTotal.get();
+    }
+    
+    /**
+     * Sum of line totals in minor units, and of those which do not fit into minor units in {@code BigDecimal}
+     */
+    private static final class Total {
+        
+        // scale of the totals returned to clients
+        private static final int SCALE = 2;
+        
+        private final PricingStrategy strategy;
+        private long total;
+        private int scale;
+        private BigDecimal decimalTotal;
+        
+        Total(PricingStrategy strategy) {
+            this.strategy = strategy;
+        }
+        
+        /**
+         * Add the change of the product's line total, when its count changes as given
+         */
+        void add(ProductPricing pricing, long fromCount, long toCount) {
+            if (pricing.isCompiled()) {
+                try {
+                    long line = MinorUnits.subtract(
+                            strategy.lineTotal(pricing, toCount), strategy.lineTotal(pricing, fromCount));
+                    if (pricing.scale() > scale) {
+                        total = MinorUnits.rescale(total, scale, pricing.scale());
+                        scale = pricing.scale();
+                    } else {
+                        line = MinorUnits.rescale(line, pricing.scale(), scale);
+                    }
+                    total = MinorUnits.add(total, line);
+                    return;
+                } catch (ArithmeticException overflow) {
+                    // fall back to BigDecimal arithmetic for this product
                 }
             }
+            BigDecimal line = strategy.decimalLineTotal(pricing, toCount)
+                    .subtract(strategy.decimalLineTotal(pricing, fromCount));
+            decimalTotal = decimalTotal == null ? line : decimalTotal.add(line);
+        }
+        
+        /**
+         * The total rounded half up to cents, which is the only {@code BigDecimal} created, unless
+         * some line totals do not fit into minor units
+         */
+        BigDecimal get() {
+            if (decimalTotal == null) {
+                return MinorUnits.toDecimal(total, scale, SCALE);
+            }
+            return BigDecimal.valueOf(total, scale).add(decimalTotal).setScale(SCALE, RoundingMode.HALF_UP);
         }
-        return total.setScale(2, BigDecimal.ROUND_HALF_UP);
     }
 
 }
@@ -0,0 +1,321 @@
+package pos.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pos.model.PointOfSaleTerminalException;
+import pos.model.Pricing;
+import pos.model.PricingDelta;
+import pos.model.PricingDigest;
+
+/**
+ * Immutable, versioned price catalog. A catalog is never modified, instead
+ * {@link #withPricing(Pricing...)} and {@link #withDeltas(PricingDelta...)} return a new version
+ * of it, which shares all unchanged product pricings with the original catalog. Pricings are kept
+ * in a persistent {@link ProductMap}, so that a new version copies only the trie nodes on the paths
+ * to the changed products, and not the whole catalog.
+ *
+ * Since catalogs are immutable, a single catalog may be referenced by any number of POS terminals.
+ *
+ * Every catalog prices carts with a {@link PricingStrategy}, which its new versions keep.
+ *
+ * Product pricings are found by product number (see {@link ProductIndex}), and by product code
+ * through the number of the code. Prefix and range queries are served by a sorted
+ * {@link ProductCodeIndex}, which is built when it is first needed.
+ */
+final class PriceCatalog {
+
+    // catalog versions are unique across all catalogs
+    private static final AtomicLong versions = new AtomicLong();
+
+    /**
+     * Catalog with no products, which prices carts greedily
+     */
+    static final PriceCatalog EMPTY = new PriceCatalog(ProductMap.EMPTY, PricingStrategy.GREEDY);
+
+    private final long version;
+    private final PricingStrategy strategy;
+
+    // pricings of the products by product number
+    private final ProductMap products;
+
+    // product codes in their natural order, created when they are first queried
+    private volatile ProductCodeIndex codeIndex;
+
+    // all the pricing in the order of product codes, and its content hash, created when they are first needed
+    private volatile Pricing[] pricing;
+    private volatile String digest;
+
+    private PriceCatalog(ProductMap products, PricingStrategy strategy) {
+        this.version = versions.incrementAndGet();
+        this.strategy = strategy;
+        this.products = products;
+    }
+
+    /**
+     * Create a new catalog version which contains only the given {@code Pricing} objects.
+     */
+    static PriceCatalog of(Pricing... pricings) {
+        return EMPTY.withPricing(pricings);
+    }
+
+    /**
+     * Catalog with no products, which prices carts with the given strategy
+     */
+    static PriceCatalog empty(PricingStrategy strategy) {
+        return strategy == EMPTY.strategy ? EMPTY : new PriceCatalog(ProductMap.EMPTY, strategy);
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    PricingStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Number of products in the catalog
+     */
+    int size() {
+        return products.size();
+    }
+
+    boolean contains(String productCode) {
+        return get(productCode) != null;
+    }
+
+    /**
+     * Get pricing of the given product, or {@code null} if the product is not in the catalog.
+     */
+    ProductPricing get(String productCode) {
+        return get(products, productCode);
+    }
+
+    // the number which has been found may already belong to another code, if the code is not in the map
+    private static ProductPricing get(ProductMap products, String productCode) {
+        int product = ProductIndex.GLOBAL.find(productCode);
+        ProductPricing pricing = product < 0 ? null : products.get(product);
+        return pricing != null && pricing.code().equals(productCode) ? pricing : null;
+    }
+
+    /**
+     * Get pricing of the product with the given number, or {@code null} if the product is not in the catalog.
+     */
+    ProductPricing get(int product) {
+        return products.get(product);
+    }
+
+    /**
+     * Get pricing of the products which codes start with the prefix, and are in the range from
+     * {@code from} (inclusive) to {@code to} (exclusive), in the order of product codes.
+     *
+     * @param prefix  product code prefix, empty for all the products
+     * @param from    the least code, or {@code null} if the range has no lower bound
+     * @param to      the code after the range, or {@code null} if the range has no upper bound
+     * @param limit   the largest number of products to return
+     */
+    List<ProductPricing> find(String prefix, String from, String to, int limit) {
+        ProductCodeIndex index = codeIndex();
+        int start = index.lowerBound(from == null || from.compareTo(prefix) < 0 ? prefix : from);
+        int end = index.prefixEnd(prefix);
+        if (to != null) {
+            end = Math.min(end, index.lowerBound(to));
+        }
+        List<ProductPricing> found = new ArrayList<>();
+        for (int i = start; i < end && found.size() < limit; i++) {
+            found.add(get(index.product(i)));
+        }
+        return found;
+    }
+
+    private ProductCodeIndex codeIndex() {
+        ProductCodeIndex index = codeIndex;
+        if (index == null) {
+            int[] numbers = new int[products.size()];
+            int[] count = new int[1];
+            products.forEach(p -> numbers[count[0]++] = p.product());
+            codeIndex = index = ProductCodeIndex.of(numbers);
+        }
+        return index;
+    }
+
+    /**
+     * All the pricing of the catalog in the order of product codes. The array is shared by all
+     * the callers, so it must not be modified.
+     */
+    Pricing[] toPricing() {
+        Pricing[] result = pricing;
+        if (result == null) {
+            ProductCodeIndex index = codeIndex();
+            List<Pricing> pricings = new ArrayList<>();
+            for (int position = 0; position < index.size(); position++) {
+                ProductPricing p = get(index.product(position));
+                for (int i = 0; i < p.size(); i++) {
+                    pricings.add(p.get(i));
+                }
+            }
+            pricing = result = pricings.toArray(new Pricing[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Content hash of all the pricing of the catalog (see {@link PricingDigest}), which is the same
+     * for catalogs with the same pricing, no matter in which order it has been added
+     */
+    String digest() {
+        String result = digest;
+        if (result == null) {
+            digest = result = PricingDigest.of(toPricing());
+        }
+        return result;
+    }
+
+    /**
+     * Check that all the {@code Pricing} objects can be added to a catalog
+     *
+     * @throws pos.model.PointOfSaleTerminalException when any of them is invalid
+     */
+    static void validate(Pricing... pricings) {
+        for (Pricing p : pricings) {
+            ProductPricing.validate(p);
+        }
+    }
+
+    /**
+     * Return a new catalog version with the given {@code Pricing} objects added. If none of the
+     * objects changes the catalog, this catalog is returned, so that repeated loading of the same
+     * prices does not create copies.
+     */
+    PriceCatalog withPricing(Pricing... pricings) {
+        ProductMap updated = products;
+        for (Pricing p : pricings) {
+            ProductPricing current = get(updated, ProductPricing.validate(p).getProductCode());
+            ProductPricing pricing = current == null ? ProductPricing.of(p) : current.with(p);
+            if (pricing != current) {
+                updated = updated.with(pricing);
+            }
+        }
+        return updated == products ? this : new PriceCatalog(updated, strategy);
+    }
+
+    /**
+     * Check that all the deltas can be applied to a catalog
+     *
+     * @throws pos.model.PointOfSaleTerminalException when any of them is invalid
+     */
+    static void validate(PricingDelta... deltas) {
+        for (PricingDelta d : deltas) {
+            if (d == null || d.getType() == null) {
+                throw new PointOfSaleTerminalException("Invalid pricing delta: " + d);
+            }
+            if (d.getType() == PricingDelta.Type.UPSERT) {
+                ProductPricing.validate(d.toPricing());
+            } else if (d.getProductCode() == null || d.getCount() == null || d.getCount() <= 0) {
+                throw new PointOfSaleTerminalException("Invalid pricing delta: " + d);
+            }
+        }
+    }
+
+    /**
+     * Return a new catalog version with the deltas applied in their order, or this catalog, if none
+     * of them changes it. Products which have no tiers left are removed from the catalog. Only the
+     * pricing of the changed products is created anew, the rest is shared with this catalog.
+     *
+     * @throws pos.model.PointOfSaleTerminalException when any of the deltas is invalid
+     */
+    PriceCatalog withDeltas(PricingDelta... deltas) {
+        validate(deltas);
+        ProductMap updated = products;
+        for (PricingDelta d : deltas) {
+            ProductPricing current = get(updated, d.getProductCode());
+            ProductPricing pricing;
+            if (d.getType() == PricingDelta.Type.UPSERT) {
+                pricing = current == null ? ProductPricing.of(d.toPricing()) : current.withPrice(d.toPricing());
+            } else {
+                pricing = current == null ? null : current.without(d.getCount());
+            }
+            if (pricing == current) continue;
+            updated = pricing == null ? updated.without(current.product()) : updated.with(pricing);
+        }
+        return updated == products ? this : new PriceCatalog(updated, strategy);
+    }
+
+    /**
+     * Start building a new catalog version from this one. Unlike {@link #withPricing(Pricing...)},
+     * the builder does not copy the catalog for every added pricing, so that large price lists
+     * may be loaded one {@code Pricing} at a time.
+     */
+    Builder toBuilder() {
+        return new Builder(products, strategy);
+    }
+
+    @Override
+    public String toString() {
+        return "PriceCatalog [version=" + version + ", products=" + products.size() + ", strategy=" + strategy + "]";
+    }
+
+    /**
+     * Mutable builder of a catalog version, which is not thread-safe
+     */
+    static final class Builder {
+
+        private ProductMap products;
+        private final PricingStrategy strategy;
+
+        // pricings which have changed since the builder has been created, by product number
+        private Map<Integer, ProductPricing> changed = new HashMap<>();
+
+        private Builder(ProductMap products, PricingStrategy strategy) {
+            this.products = products;
+            this.strategy = strategy;
+        }
+
+        /**
+         * Add the {@code Pricing} object, unless the product already has pricing with the same count
+         *
+         * @throws pos.model.PointOfSaleTerminalException when the pricing is invalid
+         */
+        Builder add(Pricing p) {
+            String code = ProductPricing.validate(p).getProductCode();
+            int product = ProductIndex.GLOBAL.find(code);
+            ProductPricing current = changed.get(product);
+            if (current == null) {
+                current = products.get(product);
+            }
+            if (current != null && !current.code().equals(code)) {
+                current = null;
+            }
+            ProductPricing pricing = current == null ? ProductPricing.of(p) : current.with(p);
+            if (pricing != current) {
+                changed.put(pricing.product(), pricing);
+            }
+            return this;
+        }
+
+        /**
+         * Create the catalog version. The builder cannot be used after that.
+         */
+        PriceCatalog build() {
+            ProductMap built;
+            if (products.size() == 0) {
+                // a catalog loaded from scratch is built at once, rather than one product at a time
+                built = ProductMap.of(changed.values());
+            } else {
+                built = products;
+                for (ProductPricing p : changed.values()) {
+                    built = built.with(p);
+                }
+            }
+            PriceCatalog c = new PriceCatalog(built, strategy);
+            products = null;
+            changed = null;
+            return c;
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package pos.service;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import pos.model.Pricing;
+import pos.model.PricingDigest;
+
+/**
+ * Bounded cache of pricing which has been set on terminals, by its content hash (see {@link PricingDigest}),
+ * so that a lane which sets the same price list at every activation may send only the hash, and the list
+ * is neither received, nor parsed, nor validated again. When there are more than the given number of
+ * entries, the least recently used one is evicted.
+ *
+ * Every entry also keeps the catalog its pricing has been added to last, together with the resulting
+ * catalog, so that terminals which add the same pricing to the same catalog (usually the published one)
+ * share one new catalog version, instead of building a copy each. Both catalogs are referenced weakly,
+ * so that a cached price list does not keep a catalog, which no terminal refers to anymore, on the heap.
+ */
+final class PricingCache {
+
+    private final int capacity;
+
+    // entries in the order of their use, guarded by this
+    private final Map<String, Entry> entries;
+
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /**
+     * Create a cache of at most the given number of entries, which caches nothing if it is zero
+     */
+    PricingCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Pricing cache size must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > PricingCache.this.capacity;
+            }
+        };
+        hits = new LongAdder();
+        misses = new LongAdder();
+    }
+
+    /**
+     * Get the cached pricing with the given hash, or {@code null} if it is not in the cache
+     */
+    Entry get(String hash) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(hash);
+        }
+        (entry == null ? misses : hits).increment();
+        return entry;
+    }
+
+    /**
+     * Cache the valid pricing objects, unless they are already cached, and return their entry.
+     * If the cache is disabled, the returned entry has no hash, and it is not cached.
+     */
+    Entry put(Pricing... pricings) {
+        if (capacity == 0) {
+            return new Entry(null, pricings);
+        }
+        String hash = PricingDigest.of(pricings);
+        synchronized (this) {
+            return entries.computeIfAbsent(hash, h -> new Entry(h, pricings.clone()));
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Pricing objects of a price list, which are known to be valid
+     */
+    static final class Entry {
+
+        private final String hash;
+        private final Pricing[] pricings;
+
+        // the catalog the pricing has been added to last, and the result, or null
+        private volatile Compiled compiled;
+
+        private Entry(String hash, Pricing[] pricings) {
+            this.hash = hash;
+            this.pricings = pricings;
+        }
+
+        /**
+         * Content hash of the pricing, or {@code null} if it is not cached
+         */
+        String getHash() {
+            return hash;
+        }
+
+        /**
+         * The cached pricing objects, which must not be modified
+         */
+        Pricing[] getPricing() {
+            return pricings;
+        }
+
+        /**
+         * Return the catalog with the pricing added (see {@link PriceCatalog#withPricing(Pricing...)}),
+         * which is the same catalog version as the last time, if the pricing is added to the same catalog.
+         */
+        PriceCatalog addTo(PriceCatalog catalog) {
+            Compiled c = compiled;
+            if (c != null && c.base.get() == catalog) {
+                PriceCatalog result = c.result.get();
+                if (result != null) return result;
+            }
+            PriceCatalog result = catalog.withPricing(pricings);
+            compiled = new Compiled(catalog, result);
+            return result;
+        }
+    }
+
+    private static final class Compiled {
+        final WeakReference<PriceCatalog> base;
+        final WeakReference<PriceCatalog> result;
+
+        Compiled(PriceCatalog base, PriceCatalog result) {
+            this.base = new WeakReference<>(base);
+            this.result = new WeakReference<>(result);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package pos.service;
+
+import java.math.BigDecimal;
+
+/**
+ * How the pricing tiers of a product are combined to price the quantity in a shopping cart.
+ * Units which are not covered by any pricing tier are free with either strategy.
+ */
+enum PricingStrategy {
+
+    /**
+     * Apply pricing with larger counts first, as many times as it fits, which is fast, but which
+     * is not always the cheapest (for example, 6 units with 3-for and 5-for tiers)
+     */
+    GREEDY {
+        @Override
+        long lineTotal(ProductPricing pricing, long quantity) {
+            return pricing.lineTotal(quantity);
+        }
+
+        @Override
+        BigDecimal decimalLineTotal(ProductPricing pricing, long quantity) {
+            return pricing.decimalLineTotal(quantity);
+        }
+    },
+
+    /**
+     * Find the cheapest combination of pricing tiers, see {@link OptimalPricing}
+     */
+    OPTIMAL {
+        @Override
+        long lineTotal(ProductPricing pricing, long quantity) {
+            return pricing.optimal().lineTotal(quantity);
+        }
+
+        @Override
+        BigDecimal decimalLineTotal(ProductPricing pricing, long quantity) {
+            return pricing.optimal().decimalLineTotal(quantity);
+        }
+    };
+
+    /**
+     * Price of the quantity in minor units of the pricing's scale. Must be called only if the pricing is compiled.
+     *
+     * @throws ArithmeticException if the result does not fit into {@code long}
+     */
+    abstract long lineTotal(ProductPricing pricing, long quantity);
+
+    /**
+     * Price of the quantity calculated with {@code BigDecimal} arithmetic, which works for any prices
+     */
+    abstract BigDecimal decimalLineTotal(ProductPricing pricing, long quantity);
+
+}
@@ -0,0 +1,101 @@
+package pos.service;
+
+import java.util.Arrays;
+
+/**
+ * Immutable index of the product codes of a catalog, sorted in their natural order, which finds
+ * a code, all the codes with a prefix, or all the codes in a range, by binary search.
+ *
+ * The index keeps only the numbers of the products in {@link ProductIndex#GLOBAL}, where their
+ * interned codes are, so that it takes four bytes per product.
+ */
+final class ProductCodeIndex {
+
+    // product numbers sorted by their codes
+    private final int[] products;
+
+    private ProductCodeIndex(int[] products) {
+        this.products = products;
+    }
+
+    /**
+     * Create an index of the products with the given numbers
+     */
+    static ProductCodeIndex of(int[] products) {
+        // the interned codes are sorted in their natural order, and mapped back to their numbers,
+        // so that neither the numbers are boxed nor every comparison looks the codes up
+        ProductIndex index = ProductIndex.GLOBAL;
+        String[] codes = new String[products.length];
+        for (int i = 0; i < products.length; i++) {
+            codes[i] = index.codeOf(products[i]);
+        }
+        Arrays.sort(codes);
+        int[] result = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            result[i] = index.find(codes[i]);
+        }
+        return new ProductCodeIndex(result);
+    }
+
+    int size() {
+        return products.length;
+    }
+
+    /**
+     * Number of the product at the given position of the index
+     */
+    int product(int position) {
+        return products[position];
+    }
+
+    String code(int position) {
+        return ProductIndex.GLOBAL.codeOf(products[position]);
+    }
+
+    /**
+     * Position of the product code, or -1 if it is not in the index
+     */
+    int find(String productCode) {
+        int position = lowerBound(productCode);
+        return position < products.length && code(position).equals(productCode) ? position : -1;
+    }
+
+    /**
+     * Position of the first code which is not less than the given one, or the size of the index
+     * if all the codes are less
+     */
+    int lowerBound(String productCode) {
+        int low = 0;
+        int high = products.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (code(mid).compareTo(productCode) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Position of the first code after all the codes which start with the prefix
+     */
+    int prefixEnd(String prefix) {
+        String end = successor(prefix);
+        return end == null ? products.length : lowerBound(end);
+    }
+
+    /**
+     * The least string which is greater than all the strings starting with the prefix,
+     * or {@code null} if there is no such string
+     */
+    static String successor(String prefix) {
+        int last = prefix.length() - 1;
+        while (last >= 0 && prefix.charAt(last) == Character.MAX_VALUE) {
+            last--;
+        }
+        return last < 0 ? null : prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+    }
+
+}
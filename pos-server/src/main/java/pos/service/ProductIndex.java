@@ -0,0 +1,159 @@
+package pos.service;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import pos.model.PointOfSaleTerminalException;
+
+/**
+ * Dense numbering of product codes, so that carts and catalogs may be indexed by small integers
+ * instead of strings. Codes are numbered from zero in the order they are first seen.
+ *
+ * Product codes are interned in the {@link #GLOBAL} index when their pricing is loaded, so that
+ * the number of a product is the same in every catalog version and every cart. An interned
+ * {@link Code} is referenced by every pricing of the product, and its number is in use as long as
+ * the code is: once no pricing of the product is left, the code is garbage collected, and its
+ * number is reused for another code. Carts contain only priced products, so that their numbers
+ * are in use as long as the carts refer to them. The number of codes in use is limited, so that
+ * pricing of ever new products cannot take up the heap.
+ */
+final class ProductIndex {
+
+    /**
+     * Largest number of codes in use in the {@link #GLOBAL} index
+     */
+    static final int MAX_GLOBAL_SIZE = 1 << 22;
+
+    /**
+     * Index of all the products which are priced
+     */
+    static final ProductIndex GLOBAL = new ProductIndex(MAX_GLOBAL_SIZE);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Code> collected = new ReferenceQueue<>();
+    private final int maxSize;
+
+    // codes by their number, replaced with a larger copy when it is full
+    private volatile String[] codes = new String[256];
+
+    // numbers given out so far, and those of collected codes, which are given out again first
+    private int size;
+    private int[] free = new int[16];
+    private int freeCount;
+
+    ProductIndex(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Interned product code, which keeps its number in use as long as it is referenced
+     */
+    static final class Code {
+        private final String code;
+        private final int number;
+
+        private Code(String code, int number) {
+            this.code = code;
+            this.number = number;
+        }
+
+        String code() {
+            return code;
+        }
+
+        int number() {
+            return number;
+        }
+    }
+
+    // the number of a code, until the code has been collected
+    private static final class Entry extends WeakReference<Code> {
+        final String code;
+        final int number;
+
+        Entry(Code code, ReferenceQueue<Code> queue) {
+            super(code, queue);
+            this.code = code.code;
+            this.number = code.number;
+        }
+    }
+
+    /**
+     * Get the interned product code, and number the code if it is new
+     *
+     * @throws PointOfSaleTerminalException if the code is new, and the index is full
+     */
+    Code intern(String productCode) {
+        Entry entry = entries.get(productCode);
+        Code code = entry == null ? null : entry.get();
+        return code != null ? code : register(productCode);
+    }
+
+    /**
+     * Get the number of the product code, or -1 if the code is not in use. A number which has
+     * just been found may be reused for another code, unless the code is referenced.
+     */
+    int find(String productCode) {
+        Entry entry = entries.get(productCode);
+        return entry == null || entry.get() == null ? -1 : entry.number;
+    }
+
+    /**
+     * Get the code with the given number, which must be in use
+     */
+    String codeOf(int number) {
+        return codes[number];
+    }
+
+    /**
+     * Number of codes in use
+     */
+    synchronized int size() {
+        reclaim();
+        return size - freeCount;
+    }
+
+    private synchronized Code register(String productCode) {
+        reclaim();
+        Entry entry = entries.get(productCode);
+        Code code = entry == null ? null : entry.get();
+        if (code != null) return code;
+        int number;
+        if (freeCount > 0) {
+            number = free[--freeCount];
+        } else {
+            if (size == maxSize) {
+                throw new PointOfSaleTerminalException("Too many products, cannot price " + productCode);
+            }
+            if (size == codes.length) {
+                codes = Arrays.copyOf(codes, (int) Math.min(size * 2L, maxSize));
+            }
+            number = size++;
+        }
+        // the code is published before its number, so that whoever finds the number also finds the code
+        String[] c = codes;
+        c[number] = productCode;
+        codes = c;
+        code = new Code(productCode, number);
+        entries.put(productCode, new Entry(code, collected));
+        return code;
+    }
+
+    // free the numbers of collected codes
+    private void reclaim() {
+        for (Object ref; (ref = collected.poll()) != null; ) {
+            Entry entry = (Entry) ref;
+            // the code may have been interned again since
+            entries.remove(entry.code, entry);
+            codes[entry.number] = null;
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = entry.number;
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+package pos.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Immutable map of product pricings by product number: a hash array mapped trie, which is
+ * changed by copying only the nodes on the path to the changed product, so that a new catalog
+ * version shares all the other nodes with the previous one.
+ *
+ * Every node takes five bits of the product hash, and keeps a bitmap of its taken branches and
+ * an array of just those branches, each of which is either a pricing or a child node. The hash is
+ * a bijection of the product number, so that no two products ever have the same hash.
+ */
+final class ProductMap {
+
+    /**
+     * Map with no products
+     */
+    static final ProductMap EMPTY = new ProductMap(null, 0);
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private final Node root;
+    private final int size;
+
+    private ProductMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Create a map of the given pricings, which must be of different products
+     */
+    static ProductMap of(Collection<ProductPricing> pricings) {
+        if (pricings.isEmpty()) return EMPTY;
+        ProductPricing[] entries = pricings.toArray(new ProductPricing[0]);
+        return new ProductMap(build(entries, 0, entries.length, 0), entries.length);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get pricing of the product with the given number, or {@code null} if it is not in the map
+     */
+    ProductPricing get(int product) {
+        int h = hash(product);
+        Node node = root;
+        for (int shift = 0; node != null; shift += BITS) {
+            int bit = 1 << ((h >>> shift) & MASK);
+            if ((node.bitmap & bit) == 0) return null;
+            Object entry = node.entries[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (entry instanceof ProductPricing) {
+                ProductPricing p = (ProductPricing) entry;
+                return p.product() == product ? p : null;
+            }
+            node = (Node) entry;
+        }
+        return null;
+    }
+
+    /**
+     * Return a map in which the product of the given pricing has that pricing
+     */
+    ProductMap with(ProductPricing pricing) {
+        if (root == null) {
+            return new ProductMap(new Node(bit(hash(pricing.product()), 0), new Object[] {pricing}), 1);
+        }
+        boolean[] added = new boolean[1];
+        Node updated = root.with(pricing, hash(pricing.product()), 0, added);
+        return updated == root ? this : new ProductMap(updated, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Return a map without the product with the given number
+     */
+    ProductMap without(int product) {
+        if (root == null) return this;
+        Object updated = root.without(product, hash(product), 0);
+        if (updated == root) return this;
+        if (size == 1) return EMPTY;
+        if (updated instanceof ProductPricing) {
+            updated = new Node(bit(hash(product(updated)), 0), new Object[] {updated});
+        }
+        return new ProductMap((Node) updated, size - 1);
+    }
+
+    /**
+     * Perform the action on all the pricings of the map, in no particular order
+     */
+    void forEach(Consumer<ProductPricing> action) {
+        if (root != null) root.forEach(action);
+    }
+
+    // spreads the product numbers, which are dense, over all the bits; odd multipliers are bijective
+    private static int hash(int product) {
+        return product * 0x9E3779B9;
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static int product(Object pricing) {
+        return ((ProductPricing) pricing).product();
+    }
+
+    // node of the entries in the range, which hashes have the same bits below the shift
+    private static Node build(ProductPricing[] entries, int from, int to, int shift) {
+        Arrays.sort(entries, from, to, (a, b) ->
+                Integer.compare((hash(a.product()) >>> shift) & MASK, (hash(b.product()) >>> shift) & MASK));
+        int bitmap = 0;
+        for (int i = from; i < to; i++) {
+            bitmap |= bit(hash(entries[i].product()), shift);
+        }
+        Object[] branches = new Object[Integer.bitCount(bitmap)];
+        int branch = 0;
+        for (int start = from; start < to; branch++) {
+            int b = bit(hash(entries[start].product()), shift);
+            int end = start + 1;
+            while (end < to && bit(hash(entries[end].product()), shift) == b) {
+                end++;
+            }
+            branches[branch] = end - start == 1 ? entries[start] : build(entries, start, end, shift + BITS);
+            start = end;
+        }
+        return new Node(bitmap, branches);
+    }
+
+    private static final class Node {
+
+        final int bitmap;
+        // pricings and child nodes, in the order of their bits
+        final Object[] entries;
+
+        Node(int bitmap, Object[] entries) {
+            this.bitmap = bitmap;
+            this.entries = entries;
+        }
+
+        Node with(ProductPricing pricing, int hash, int shift, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[entries.length + 1];
+                System.arraycopy(entries, 0, copy, 0, index);
+                copy[index] = pricing;
+                System.arraycopy(entries, index, copy, index + 1, entries.length - index);
+                added[0] = true;
+                return new Node(bitmap | bit, copy);
+            }
+            Object entry = entries[index];
+            Object updated;
+            if (entry instanceof Node) {
+                updated = ((Node) entry).with(pricing, hash, shift + BITS, added);
+            } else if (product(entry) == pricing.product()) {
+                updated = pricing;
+            } else {
+                updated = pair((ProductPricing) entry, pricing, hash, shift + BITS);
+                added[0] = true;
+            }
+            if (updated == entry) return this;
+            Object[] copy = entries.clone();
+            copy[index] = updated;
+            return new Node(bitmap, copy);
+        }
+
+        // node of two pricings of different products, which hashes have the same bits below the shift
+        private static Node pair(ProductPricing existing, ProductPricing pricing, int hash, int shift) {
+            int existingBit = bit(hash(existing.product()), shift);
+            int bit = bit(hash, shift);
+            if (existingBit == bit) {
+                return new Node(bit, new Object[] {pair(existing, pricing, hash, shift + BITS)});
+            }
+            return new Node(existingBit | bit, Integer.compareUnsigned(existingBit, bit) < 0 ?
+                    new Object[] {existing, pricing} : new Object[] {pricing, existing});
+        }
+
+        /**
+         * Return this node without the product, or its only pricing left, which the parent keeps instead
+         */
+        Object without(int product, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            Object entry = entries[index];
+            Object updated;
+            if (entry instanceof Node) {
+                updated = ((Node) entry).without(product, hash, shift + BITS);
+                if (updated == entry) return this;
+            } else if (product(entry) == product) {
+                updated = null;
+            } else {
+                return this;
+            }
+            if (updated instanceof ProductPricing && entries.length == 1) {
+                return updated;
+            }
+            if (updated != null) {
+                Object[] copy = entries.clone();
+                copy[index] = updated;
+                return new Node(bitmap, copy);
+            }
+            if (entries.length == 2 && entries[1 - index] instanceof ProductPricing) {
+                return entries[1 - index];
+            }
+            if (entries.length == 1) {
+                // only the root has a single pricing, and the map is empty without it
+                return null;
+            }
+            Object[] copy = new Object[entries.length - 1];
+            System.arraycopy(entries, 0, copy, 0, index);
+            System.arraycopy(entries, index + 1, copy, index, copy.length - index);
+            return new Node(bitmap & ~bit, copy);
+        }
+
+        void forEach(Consumer<ProductPricing> action) {
+            for (Object entry : entries) {
+                if (entry instanceof Node) {
+                    ((Node) entry).forEach(action);
+                } else {
+                    action.accept((ProductPricing) entry);
+                }
+            }
+        }
+    }
+
+}
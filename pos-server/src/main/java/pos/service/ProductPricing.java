@@ -0,0 +1,225 @@
+package pos.service;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import pos.model.PointOfSaleTerminalException;
+import pos.model.Pricing;
+
+/**
+ * Immutable pricing of a single product: all its {@code Pricing} objects sorted by count in
+ * descending order. There is at most one pricing per count, and the one added first wins.
+ *
+ * Pricing is compiled when the object is created: counts are kept in an {@code int} array, and
+ * prices in a {@code long} array of minor units with a common scale, so that the price of any
+ * quantity is calculated with one division per pricing tier and no allocation.  Prices which
+ * cannot be kept in minor units are priced with {@code BigDecimal} arithmetic instead.
+ *
+ * The product code is interned in {@link ProductIndex#GLOBAL} when its first pricing is loaded,
+ * and carts refer to the product by that number, which is in use as long as any pricing of the
+ * product is.
+ */
+final class ProductPricing {
+
+    // we keep Pricing objects sorted by count in descending order
+    private static final Comparator<Pricing> reversedCountComparator =
+            Comparator.comparing(Pricing::getCount).reversed();
+
+    // interned code of the product in the global product index
+    private final ProductIndex.Code code;
+    private final Pricing[] tiers;
+
+    // compiled pricing, counts and prices are in the same order as tiers
+    private final int[] counts;
+    private final long[] prices;
+    private final int scale;
+    private final boolean compiled;
+
+    // cheapest prices of quantities, created when they are first needed
+    private volatile OptimalPricing optimal;
+
+    private ProductPricing(ProductIndex.Code code, Pricing[] tiers) {
+        this.code = code;
+        this.tiers = tiers;
+        counts = new int[tiers.length];
+        int maxScale = 0;
+        for (int i = 0; i < tiers.length; i++) {
+            counts[i] = tiers[i].getCount();
+            maxScale = Math.max(maxScale, tiers[i].getPrice().scale());
+        }
+        scale = maxScale;
+        compiled = Arrays.stream(tiers).allMatch(t -> MinorUnits.fits(t.getPrice(), scale));
+        prices = new long[tiers.length];
+        if (compiled) {
+            for (int i = 0; i < tiers.length; i++) {
+                prices[i] = MinorUnits.toMinorUnits(tiers[i].getPrice(), scale);
+            }
+        }
+    }
+
+    static ProductPricing of(Pricing p) {
+        return new ProductPricing(ProductIndex.GLOBAL.intern(validate(p).getProductCode()), new Pricing[] {p});
+    }
+
+    /**
+     * Return pricing which includes the given {@code Pricing} object, or this object, when
+     * there is already pricing with the same count.
+     */
+    ProductPricing with(Pricing p) {
+        validate(p);
+        for (int c : counts) {
+            if (c == p.getCount()) return this;
+        }
+        Pricing[] newTiers = Arrays.copyOf(tiers, tiers.length + 1);
+        newTiers[tiers.length] = p;
+        Arrays.sort(newTiers, reversedCountComparator);
+        return new ProductPricing(code, newTiers);
+    }
+
+    /**
+     * Return pricing in which the tier with the count of the given {@code Pricing} object has its price,
+     * or this object, when the tier already has the same price.
+     */
+    ProductPricing withPrice(Pricing p) {
+        validate(p);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == p.getCount()) {
+                if (tiers[i].getPrice().equals(p.getPrice())) return this;
+                Pricing[] newTiers = tiers.clone();
+                newTiers[i] = p;
+                return new ProductPricing(code, newTiers);
+            }
+        }
+        return with(p);
+    }
+
+    /**
+     * Return pricing without the tier with the given count, this object, when there is no such tier,
+     * or {@code null}, when it is the only tier.
+     */
+    ProductPricing without(int count) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == count) {
+                if (tiers.length == 1) return null;
+                Pricing[] newTiers = new Pricing[tiers.length - 1];
+                System.arraycopy(tiers, 0, newTiers, 0, i);
+                System.arraycopy(tiers, i + 1, newTiers, i, newTiers.length - i);
+                return new ProductPricing(code, newTiers);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Number of the product in {@link ProductIndex#GLOBAL}
+     */
+    int product() {
+        return code.number();
+    }
+
+    String code() {
+        return code.code();
+    }
+
+    /**
+     * Number of pricing tiers
+     */
+    int size() {
+        return tiers.length;
+    }
+
+    /**
+     * Pricing tier at the given position. Tiers are sorted by count in descending order.
+     */
+    Pricing get(int i) {
+        return tiers[i];
+    }
+
+    /**
+     * Count of the pricing tier at the given position
+     */
+    int count(int i) {
+        return counts[i];
+    }
+
+    /**
+     * Price of the pricing tier at the given position in minor units, if the pricing is compiled
+     */
+    long minorPrice(int i) {
+        return prices[i];
+    }
+
+    /**
+     * Cheapest prices of any quantity, which are memoized for this pricing
+     */
+    OptimalPricing optimal() {
+        OptimalPricing o = optimal;
+        if (o == null) {
+            // racing threads may build it twice, but it is the same
+            optimal = o = new OptimalPricing(this);
+        }
+        return o;
+    }
+
+    /**
+     * Whether the prices are kept in minor units, so that {@link #lineTotal(long)} may be used
+     */
+    boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Scale of the minor units returned by {@link #lineTotal(long)}
+     */
+    int scale() {
+        return scale;
+    }
+
+    /**
+     * Price of the given quantity of the product in minor units, applying pricing with larger
+     * counts first.  Units which are not covered by any pricing tier are free.
+     *
+     * @throws ArithmeticException if the result does not fit into {@code long}
+     */
+    long lineTotal(long quantity) {
+        long total = 0;
+        for (int i = 0; i < counts.length && quantity > 0; i++) {
+            long packs = quantity / counts[i];
+            if (packs > 0) {
+                total = MinorUnits.add(total, MinorUnits.multiply(prices[i], packs));
+                quantity -= packs * counts[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The same as {@link #lineTotal(long)}, but calculated with {@code BigDecimal} arithmetic,
+     * which works for any prices.
+     */
+    BigDecimal decimalLineTotal(long quantity) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < counts.length && quantity > 0; i++) {
+            long packs = quantity / counts[i];
+            if (packs > 0) {
+                total = total.add(tiers[i].getPrice().multiply(BigDecimal.valueOf(packs)));
+                quantity -= packs * counts[i];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Check that the pricing can be added to a product pricing
+     * 
+     * @throws PointOfSaleTerminalException when any of pricing fields is missing, or the count is not positive
+     */
+    static Pricing validate(Pricing p) {
+        if (p.getProductCode() == null || p.getCount() == null || p.getCount() <= 0 || p.getPrice() == null) {
+            throw new PointOfSaleTerminalException("Invalid pricing: " + p);
+        }
+        return p;
+    }
+
+}
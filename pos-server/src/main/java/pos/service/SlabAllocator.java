@@ -0,0 +1,134 @@
+package pos.service;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocator of off-heap memory blocks, which sizes are powers of two. Memory is reserved
+ * in direct byte buffers (slabs) of a fixed size, every slab is split into blocks of one size,
+ * and freed blocks are kept on a free list of their size, from which they are reused.
+ * Slabs are never returned to the operating system.
+ *
+ * A block is addressed by a {@code long}: the slab number in the high half, and the offset
+ * in the low half.
+ */
+final class SlabAllocator {
+
+    static final int MIN_BLOCK_BITS = 6;
+
+    private final int slabBytes;
+    private final SizeClass[] sizeClasses;
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    // slabs by their number, replaced with a larger copy when a slab is added
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+
+    /**
+     * @param slabBytes  size of slabs, which is the largest block size, a power of two
+     */
+    SlabAllocator(int slabBytes) {
+        if (Integer.bitCount(slabBytes) != 1 || slabBytes < 1 << MIN_BLOCK_BITS) {
+            throw new IllegalArgumentException("Slab size must be a power of two of at least "
+                    + (1 << MIN_BLOCK_BITS) + " bytes: " + slabBytes);
+        }
+        this.slabBytes = slabBytes;
+        sizeClasses = new SizeClass[Integer.numberOfTrailingZeros(slabBytes) - MIN_BLOCK_BITS + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(1 << (i + MIN_BLOCK_BITS));
+        }
+    }
+
+    /**
+     * Allocate a block of at least the given size, which is filled with zeros
+     */
+    long allocate(int bytes) {
+        long address = sizeClass(bytes).allocate();
+        ByteBuffer slab = slab(address);
+        int offset = offset(address);
+        for (int i = 0, size = blockSize(bytes); i < size; i += Long.BYTES) {
+            slab.putLong(offset + i, 0);
+        }
+        return address;
+    }
+
+    /**
+     * Return the block of the given size to its free list
+     */
+    void free(long address, int bytes) {
+        sizeClass(bytes).free(address);
+    }
+
+    /**
+     * Size of the block allocated for the given number of bytes
+     */
+    int blockSize(int bytes) {
+        return sizeClass(bytes).blockSize;
+    }
+
+    ByteBuffer slab(long address) {
+        return slabs[(int) (address >>> 32)];
+    }
+
+    static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Bytes of all the slabs
+     */
+    long reservedBytes() {
+        return reservedBytes.get();
+    }
+
+    private SizeClass sizeClass(int bytes) {
+        if (bytes <= 0 || bytes > slabBytes) {
+            throw new IllegalArgumentException("Block size must be between 1 and " + slabBytes + ": " + bytes);
+        }
+        int bits = Math.max(MIN_BLOCK_BITS, Integer.SIZE - Integer.numberOfLeadingZeros(bytes - 1));
+        return sizeClasses[bits - MIN_BLOCK_BITS];
+    }
+
+    private synchronized int addSlab() {
+        ByteBuffer[] s = Arrays.copyOf(slabs, slabs.length + 1);
+        s[s.length - 1] = ByteBuffer.allocateDirect(slabBytes);
+        slabs = s;
+        reservedBytes.addAndGet(slabBytes);
+        return s.length - 1;
+    }
+
+    /**
+     * Blocks of one size
+     */
+    private final class SizeClass {
+        final int blockSize;
+        private long[] freeList = new long[64];
+        private int free;
+
+        SizeClass(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        synchronized long allocate() {
+            if (free == 0) {
+                long slabNo = addSlab();
+                for (int offset = slabBytes - blockSize; offset >= 0; offset -= blockSize) {
+                    push(slabNo << 32 | offset);
+                }
+            }
+            return freeList[--free];
+        }
+
+        synchronized void free(long address) {
+            push(address);
+        }
+
+        private void push(long address) {
+            if (free == freeList.length) {
+                freeList = Arrays.copyOf(freeList, free * 2);
+            }
+            freeList[free++] = address;
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package pos.service;
+
+import java.util.Map;
+
+import pos.model.Pricing;
+import pos.model.PricingDelta;
+
+/**
+ * Changes of the POS terminal service state. They are recorded by the {@link TerminalJournal}, 
+ * and replayed from it to rebuild the state.
+ */
+interface TerminalEvents {
+
+    /**
+     * A price catalog version has been created
+     * 
+     * @param version   catalog version
+     * @param current   whether the catalog has become the store-wide catalog
+     * @param pricings  all the pricing of the catalog
+     */
+    void catalogCreated(long version, boolean current, Pricing[] pricings);
+
+    /**
+     * A terminal has been activated with the given price catalog version
+     */
+    void activated(String terminalId, long catalogVersion);
+
+    /**
+     * Pricing has been added to a terminal
+     */
+    void pricingAdded(String terminalId, Pricing[] pricings);
+
+    /**
+     * A batch of pricing changes has been applied to a terminal
+     */
+    void pricingUpdated(String terminalId, PricingDelta[] deltas);
+
+    /**
+     * Products have been added to a terminal's shopping cart
+     * 
+     * @param quantities  product codes mapped to how many pieces have been added
+     */
+    void scanned(String terminalId, Map<String, ? extends Number> quantities);
+
+    /**
+     * A terminal has been removed, either because its total has been calculated, or because
+     * it has been evicted
+     */
+    void closed(String terminalId);
+
+}
@@ -0,0 +1,91 @@
+package pos.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Compact terminal IDs. An ID is a 64-bit number, where the highest {@value #SHARD_BITS} bits
+ * are the shard of the terminal, and the rest are random. Its text form is {@value #LENGTH}
+ * lowercase hexadecimal digits, so that the shard is the first three digits.
+ *
+ * IDs are random numbers of a thread-local generator, which never blocks concurrent activations.
+ * They identify terminals, but they are not secrets, since they may be predicted.
+ */
+public final class TerminalIds {
+
+    public static final int SHARD_BITS = 12;
+    public static final int SHARD_COUNT = 1 << SHARD_BITS;
+
+    /**
+     * Number of characters of an ID
+     */
+    public static final int LENGTH = Long.SIZE / 4;
+
+    /**
+     * Number which is never an ID
+     */
+    public static final long INVALID = 0;
+
+    private static final long RANDOM_MASK = -1L >>> SHARD_BITS;
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private TerminalIds() {}
+
+    /**
+     * Create a new ID in a random shard
+     */
+    public static String newId() {
+        return newId(ThreadLocalRandom.current().nextInt(SHARD_COUNT));
+    }
+
+    /**
+     * Create a new ID in the given shard
+     */
+    public static String newId(int shard) {
+        if (shard < 0 || shard >= SHARD_COUNT) {
+            throw new IllegalArgumentException("Invalid shard: " + shard);
+        }
+        long id;
+        do {
+            id = ((long) shard << (Long.SIZE - SHARD_BITS)) | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+        } while (id == INVALID);
+        return format(id);
+    }
+
+    public static String format(long id) {
+        char[] chars = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            chars[i] = DIGITS[(int) id & 0xF];
+            id >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parse the text form of an ID without allocation, or return {@link #INVALID} if it is not an ID
+     */
+    public static long parse(String id) {
+        if (id == null || id.length() != LENGTH) return INVALID;
+        long n = 0;
+        for (int i = 0; i < LENGTH; i++) {
+            char c = id.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return INVALID;
+            }
+            n = (n << 4) | digit;
+        }
+        return n;
+    }
+
+    /**
+     * Get the shard of the ID
+     */
+    public static int shard(long id) {
+        return (int) (id >>> (Long.SIZE - SHARD_BITS));
+    }
+
+}
@@ -0,0 +1,70 @@
+package pos.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+import pos.model.Pricing;
+import pos.model.PricingDelta;
+
+/**
+ * Durable record of {@link TerminalEvents}, which allows to rebuild open POS terminals after
+ * a restart.  The journal is used in three steps: the recorded events are replayed, then
+ * the journal is started with the rebuilt state, and then new events are recorded.
+ *
+ * The default methods do nothing, which is what {@link #DISABLED} journal does.
+ */
+interface TerminalJournal extends TerminalEvents, AutoCloseable {
+
+    /**
+     * Journal which records nothing
+     */
+    TerminalJournal DISABLED = new TerminalJournal() {};
+
+    /**
+     * When the journal forces recorded events to the storage device
+     */
+    enum FsyncPolicy {
+        /** Every event is forced before the operation returns. Concurrent events share one fsync */
+        ALWAYS,
+        /** Events are forced periodically, so that a crash may lose the latest events */
+        INTERVAL,
+        /** Forcing events is left to the operating system */
+        NEVER
+    }
+
+    /**
+     * Replay all recorded events in the order they have been recorded
+     */
+    default void replay(TerminalEvents events) {}
+
+    /**
+     * Start recording events. The journal may compact the recorded events into the given
+     * state, which must be the state rebuilt with {@link #replay(TerminalEvents)}.
+     *
+     * @param catalog    the store-wide price catalog
+     * @param terminals  open terminals
+     */
+    default void start(PriceCatalog catalog, Collection<PointOfSaleTerminalImpl> terminals) {}
+
+    @Override
+    default void catalogCreated(long version, boolean current, Pricing[] pricings) {}
+
+    @Override
+    default void activated(String terminalId, long catalogVersion) {}
+
+    @Override
+    default void pricingAdded(String terminalId, Pricing[] pricings) {}
+
+    @Override
+    default void pricingUpdated(String terminalId, PricingDelta[] deltas) {}
+
+    @Override
+    default void scanned(String terminalId, Map<String, ? extends Number> quantities) {}
+
+    @Override
+    default void closed(String terminalId) {}
+
+    @Override
+    default void close() {}
+
+}
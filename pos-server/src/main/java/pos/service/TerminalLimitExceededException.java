@@ -0,0 +1,13 @@
+package pos.service;
+
+/**
+ * Report that a new POS terminal cannot be activated, because there are too many active terminals
+ */
+@SuppressWarnings("serial")
+public class TerminalLimitExceededException extends PointOfSaleServiceException {
+
+    public TerminalLimitExceededException(String message) {
+        super(message);
+    }
+
+}
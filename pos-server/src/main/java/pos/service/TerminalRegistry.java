@@ -0,0 +1,301 @@
+package pos.service;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import pos.model.PointOfSaleTerminal;
+
+/**
+ * Bounded registry of active POS terminals, where keys are terminal IDs. IDs are parsed into
+ * numbers (see {@link TerminalIds}), so that lookups neither allocate nor hash strings.
+ *
+ * Terminals which have not been accessed for longer than the idle timeout are evicted by
+ * a background sweeper.  The number of terminals is limited, and when the limit is reached,
+ * adding a terminal is handled according to the {@link RejectionPolicy}.
+ *
+ * To evict least recently used terminals, the registry is scanned for a batch of the oldest ones at once,
+ * which are then evicted one by one, oldest first, unless they have been used since the scan, so that
+ * a full registry is not scanned on every activation.
+ */
+final class TerminalRegistry implements AutoCloseable {
+
+    /**
+     * What to do when a terminal is added to the registry which is full
+     */
+    enum RejectionPolicy {
+        /** Refuse to add the new terminal */
+        REJECT,
+        /** Evict the terminal which has been idle for the longest time */
+        EVICT_LEAST_RECENTLY_USED
+    }
+
+    // the largest number of eviction candidates found by one scan
+    private static final int MAX_EVICTION_BATCH_SIZE = 4096;
+
+    private final ConcurrentLongMap<Entry> terminals;
+
+    // number of terminals in the registry, which is never allowed to exceed maxTerminals
+    private final AtomicInteger size;
+
+    private final long idleTimeoutNanos;
+    private final int maxTerminals;
+    private final RejectionPolicy rejectionPolicy;
+    private final LongSupplier nanoClock;
+    private final ScheduledExecutorService sweeper;
+
+    private final LongAdder idleEvictions;
+    private final LongAdder capacityEvictions;
+    private final LongAdder rejections;
+
+    // the least recently used terminals found by the last scan, oldest first, guarded by this
+    private final ArrayDeque<Candidate> evictionCandidates;
+    private final int evictionBatchSize;
+
+    // notified with evicted terminals
+    private volatile Consumer<PointOfSaleTerminal> evictionListener = t -> {};
+
+    /**
+     * Create a registry, and start its background sweeper.
+     *
+     * @param idleTimeoutSeconds    terminals idle for longer than this are evicted
+     * @param maxTerminals          maximum number of terminals in the registry
+     * @param rejectionPolicy       what to do when the registry is full
+     * @param sweepIntervalSeconds  how often to look for idle terminals
+     */
+    TerminalRegistry(long idleTimeoutSeconds, int maxTerminals, RejectionPolicy rejectionPolicy,
+            long sweepIntervalSeconds) {
+        this(idleTimeoutSeconds, maxTerminals, rejectionPolicy, System::nanoTime);
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalSeconds, sweepIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Create a registry with the given clock, which has to be swept explicitly with {@link #sweep()}
+     */
+    TerminalRegistry(long idleTimeoutSeconds, int maxTerminals, RejectionPolicy rejectionPolicy,
+            LongSupplier nanoClock) {
+        if (maxTerminals <= 0) {
+            throw new IllegalArgumentException("Maximum number of terminals must be positive: " + maxTerminals);
+        }
+        this.terminals = new ConcurrentLongMap<>();
+        this.size = new AtomicInteger();
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.maxTerminals = maxTerminals;
+        this.rejectionPolicy = rejectionPolicy;
+        this.nanoClock = nanoClock;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "terminal-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        this.idleEvictions = new LongAdder();
+        this.capacityEvictions = new LongAdder();
+        this.rejections = new LongAdder();
+        this.evictionCandidates = new ArrayDeque<>();
+        this.evictionBatchSize = Math.max(1, Math.min(maxTerminals / 16, MAX_EVICTION_BATCH_SIZE));
+    }
+
+    /**
+     * Add the terminal to the registry, unless there already is a terminal with the same ID.
+     *
+     * @return {@code true} if the terminal has been added
+     * @throws TerminalLimitExceededException when the registry is full, and the terminal cannot be added
+     * @throws IllegalArgumentException when the terminal ID is not a valid ID
+     */
+    boolean add(PointOfSaleTerminal terminal) {
+        long key = TerminalIds.parse(terminal.getId());
+        if (key == TerminalIds.INVALID) {
+            throw new IllegalArgumentException("Invalid terminal id: " + terminal.getId());
+        }
+        while (size.incrementAndGet() > maxTerminals) {
+            size.decrementAndGet();
+            if (rejectionPolicy == RejectionPolicy.REJECT || !evictLeastRecentlyUsed()) {
+                rejections.increment();
+                throw new TerminalLimitExceededException("Too many active terminals, the limit is " + maxTerminals);
+            }
+        }
+        if (terminals.putIfAbsent(key, new Entry(terminal, nanoClock.getAsLong())) != null) {
+            size.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Find a terminal by ID, and mark it as recently used.
+     *
+     * @return the terminal, or {@code null} if there is no terminal with this ID
+     */
+    PointOfSaleTerminal get(String terminalId) {
+        Entry e = terminals.get(TerminalIds.parse(terminalId));
+        if (e == null) return null;
+        e.lastAccess = nanoClock.getAsLong();
+        return e.terminal;
+    }
+
+    /**
+     * Check whether there is a terminal with this ID, without marking it as used
+     */
+    boolean contains(String terminalId) {
+        return terminals.containsKey(TerminalIds.parse(terminalId));
+    }
+
+    /**
+     * Remove a terminal by ID.
+     *
+     * @return the removed terminal, or {@code null} if there is no terminal with this ID
+     */
+    PointOfSaleTerminal remove(String terminalId) {
+        Entry e = terminals.remove(TerminalIds.parse(terminalId));
+        if (e == null) return null;
+        size.decrementAndGet();
+        return e.terminal;
+    }
+
+    /**
+     * Perform the given action on every terminal in the registry
+     */
+    void forEach(Consumer<PointOfSaleTerminal> action) {
+        terminals.forEach((key, e) -> action.accept(e.terminal));
+    }
+
+    /**
+     * Set the listener which is notified with evicted terminals (but not with removed ones)
+     */
+    void setEvictionListener(Consumer<PointOfSaleTerminal> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * Number of terminals in the registry
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Evict all the terminals which have been idle for longer than the idle timeout.
+     *
+     * @return the number of evicted terminals
+     */
+    int sweep() {
+        long now = nanoClock.getAsLong();
+        int[] evicted = new int[1];
+        terminals.forEach((key, e) -> {
+            if (now - e.lastAccess > idleTimeoutNanos && evict(key, e)) {
+                evicted[0]++;
+            }
+        });
+        idleEvictions.add(evicted[0]);
+        return evicted[0];
+    }
+
+    /**
+     * Number of terminals evicted because they were idle
+     */
+    long getIdleEvictions() {
+        return idleEvictions.sum();
+    }
+
+    /**
+     * Number of terminals evicted to make room for new terminals
+     */
+    long getCapacityEvictions() {
+        return capacityEvictions.sum();
+    }
+
+    /**
+     * Number of terminals which were not added because the registry was full
+     */
+    long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Stop the background sweeper
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Evict the least recently used terminal, if there is one.
+     *
+     * @return {@code false} if the registry is empty
+     */
+    private synchronized boolean evictLeastRecentlyUsed() {
+        if (evictionCandidates.isEmpty() && !findEvictionCandidates()) {
+            return false;
+        }
+        Candidate c;
+        while ((c = evictionCandidates.poll()) != null) {
+            // a terminal used since the scan is no longer the least recently used one
+            if (c.entry.lastAccess == c.lastAccess && evict(c.key, c.entry)) {
+                capacityEvictions.increment();
+                return true;
+            }
+        }
+        // all the candidates have been used or removed, so the caller tries again with new ones
+        return true;
+    }
+
+    // full scan for a batch of the least recently used terminals, which is amortized over their evictions
+    private boolean findEvictionCandidates() {
+        PriorityQueue<Candidate> newest = new PriorityQueue<>(evictionBatchSize,
+                Comparator.comparingLong((Candidate c) -> c.lastAccess).reversed());
+        terminals.forEach((key, e) -> {
+            long lastAccess = e.lastAccess;
+            if (newest.size() < evictionBatchSize) {
+                newest.add(new Candidate(key, e, lastAccess));
+            } else if (lastAccess < newest.peek().lastAccess) {
+                newest.poll();
+                newest.add(new Candidate(key, e, lastAccess));
+            }
+        });
+        while (!newest.isEmpty()) {
+            evictionCandidates.addFirst(newest.poll());
+        }
+        return !evictionCandidates.isEmpty();
+    }
+
+    private boolean evict(long key, Entry entry) {
+        if (terminals.remove(key, entry)) {
+            size.decrementAndGet();
+            evictionListener.accept(entry.terminal);
+            return true;
+        }
+        return false;
+    }
+
+    private static final class Candidate {
+        final long key;
+        final Entry entry;
+        // last access of the terminal when it has been found
+        final long lastAccess;
+
+        Candidate(long key, Entry entry, long lastAccess) {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static final class Entry {
+        final PointOfSaleTerminal terminal;
+        volatile long lastAccess;
+
+        Entry(PointOfSaleTerminal terminal, long lastAccess) {
+            this.terminal = terminal;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+}
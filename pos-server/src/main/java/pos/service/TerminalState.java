@@ -0,0 +1,67 @@
+package pos.service;
+
+import java.util.Map;
+
+import pos.model.Pricing;
+
+/**
+ * State of a POS terminal, which is moved from one server to another: its ID, all of its
+ * pricing (the store-wide catalog it refers to, and its own pricing) and the content hash of
+ * the pricing, and its shopping cart.
+ *
+ * The pricing may be left out, when the server which receives the state already has pricing
+ * with the same hash.
+ */
+public final class TerminalState {
+
+    private final String id;
+    private final String pricingHash;
+    private final Pricing[] pricing;
+    private final Map<String, Long> cart;
+
+    // necessary for JSON parsing
+    @SuppressWarnings("unused")
+    private TerminalState() {
+        this(null, null, null, null);
+    }
+
+    public TerminalState(String id, String pricingHash, Pricing[] pricing, Map<String, Long> cart) {
+        this.id = id;
+        this.pricingHash = pricingHash;
+        this.pricing = pricing;
+        this.cart = cart;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Content hash of the pricing (see {@link pos.model.PricingDigest})
+     */
+    public String getPricingHash() {
+        return pricingHash;
+    }
+
+    /**
+     * All the pricing in the order of product codes, or {@code null} if it has been left out
+     */
+    public Pricing[] getPricing() {
+        return pricing;
+    }
+
+    /**
+     * Product codes mapped to their counts
+     */
+    public Map<String, Long> getCart() {
+        return cart;
+    }
+
+    /**
+     * The same state without the pricing, but with its hash
+     */
+    public TerminalState withoutPricing() {
+        return pricing == null ? this : new TerminalState(id, pricingHash, null, cart);
+    }
+
+}
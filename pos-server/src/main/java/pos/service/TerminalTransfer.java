@@ -0,0 +1,54 @@
+package pos.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Moving POS terminals between servers. A terminal is detached from the server which
+ * no longer owns it, and attached to its new owner, where it continues with the same state.
+ *
+ * Terminals are attached in batches, in which the pricing of terminals which share it is sent
+ * only once, and not at all when it is the pricing of the store-wide catalog of the new owner.
+ */
+public interface TerminalTransfer {
+
+    /**
+     * Check whether the terminal is on this server
+     */
+    boolean contains(String terminalId);
+
+    /**
+     * IDs of all the terminals on this server
+     */
+    List<String> terminalIds();
+
+    /**
+     * Remove the terminal from this server, and return its state, or {@code null} if there is no such terminal
+     */
+    TerminalState detach(String terminalId);
+
+    /**
+     * Content hash of the pricing of the store-wide catalog, which terminals attached to this server
+     * do not have to carry
+     */
+    String catalogHash();
+
+    /**
+     * Add terminals with the given states to this server, replacing the terminals with the same IDs.
+     * A state without pricing refers to the pricing with its hash: the store-wide catalog's, or that of
+     * an earlier state of the list. Either all the terminals are attached, or none of them.
+     *
+     * @throws PointOfSaleServiceException if any of the states is not valid, or refers to unknown pricing
+     */
+    void attach(List<TerminalState> states);
+
+    /**
+     * Add a terminal with the given state to this server, replacing the terminal with the same ID
+     *
+     * @throws PointOfSaleServiceException if the state is not valid
+     */
+    default void attach(TerminalState state) {
+        attach(Collections.singletonList(state));
+    }
+
+}
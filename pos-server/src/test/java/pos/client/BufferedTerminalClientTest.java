@@ -0,0 +1,145 @@
+package pos.client;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pos.test.TestHelper.*;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import pos.model.PointOfSaleTerminal;
+import pos.model.Pricing;
+import pos.model.PricingDelta;
+import pos.service.TestTerminals;
+
+/**
+ * Test coalescing of scans by the buffered client, with a terminal in place of the service.
+ */
+public class BufferedTerminalClientTest {
+
+    private final PointOfSaleTerminal terminal = TestTerminals.newTerminal();
+    private final AtomicInteger batches = new AtomicInteger();
+
+    @Test
+    public void scansAreSentInBatches() {
+        terminal.setPricing(getTestPricing());
+        BufferedPointOfSaleTerminalClient client = new BufferedPointOfSaleTerminalClient(counting(terminal), 4);
+        scan(client, "ABCDA");
+        assertEquals(1, batches.get());
+        assertEquals(1, client.getBuffered());
+        scan(client, "BA");
+        // the rest is flushed before the total
+        assertEquals(new BigDecimal("13.25"), client.calculateTotal());
+        assertEquals(2, batches.get());
+        assertEquals(0, client.getBuffered());
+    }
+
+    @Test
+    public void unknownProductsAreReportedOneByOne() {
+        terminal.setPricing(getTestPricing());
+        BufferedPointOfSaleTerminalClient client = new BufferedPointOfSaleTerminalClient(terminal, 10);
+        scan(client, "AXBXYA");
+        UnscannedProductsException e = assertThrows(UnscannedProductsException.class, client::subtotal);
+        Map<String, Integer> expected = quantities("XXY");
+        assertEquals(expected, e.getQuantities());
+        assertEquals(2, e.getSuppressed().length);
+        // known products have been scanned
+        assertEquals(new BigDecimal("6.75"), client.subtotal());
+    }
+
+    @Test
+    public void otherErrorsAreNotTakenForRejections() {
+        terminal.setPricing(getTestPricing());
+        BufferedPointOfSaleTerminalClient client = new BufferedPointOfSaleTerminalClient(counting(terminal), 10);
+        scan(client, "AB");
+        TestTerminals.close(terminal);
+        UnconfirmedScansException e = assertThrows(UnconfirmedScansException.class, client::subtotal);
+        assertEquals(quantities("AB"), e.getQuantities());
+        // the products have not been sent one by one
+        assertEquals(1, batches.get());
+    }
+
+    @Test
+    public void unconfirmedBatchesAreNotSentAgain() {
+        terminal.setPricing(getTestPricing());
+        AtomicInteger timeouts = new AtomicInteger(1);
+        // the batch is added, but the response is lost
+        PointOfSaleTerminal timingOut = new ForwardingTerminal(terminal) {
+            @Override public void scanAll(Map<String, Integer> quantities) {
+                super.scanAll(quantities);
+                if (timeouts.getAndDecrement() > 0) {
+                    throw new RuntimeException("Read timed out");
+                }
+            }
+        };
+        BufferedPointOfSaleTerminalClient client = new BufferedPointOfSaleTerminalClient(timingOut, 10);
+        scan(client, "ABA");
+        UnconfirmedScansException e = assertThrows(UnconfirmedScansException.class, client::subtotal);
+        assertEquals(quantities("ABA"), e.getQuantities());
+        assertEquals(0, client.getBuffered());
+        assertEquals(new BigDecimal("6.75"), client.calculateTotal());
+    }
+
+    @Test
+    public void scansAreFlushedOnTime() throws Exception {
+        terminal.setPricing(getTestPricing());
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            BufferedPointOfSaleTerminalClient client = new BufferedPointOfSaleTerminalClient(terminal, 100, 10, scheduler);
+            scan(client, "AX");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (client.getBuffered() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, client.getBuffered());
+            assertEquals(new BigDecimal("1.25"), terminal.subtotal());
+            // the rejected product is reported by the next operation
+            assertThrows(UnscannedProductsException.class, client::calculateTotal);
+            assertEquals(new BigDecimal("1.25"), client.calculateTotal());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void batchesAreNotCoalescedWithBufferedScans() {
+        terminal.setPricing(getTestPricing());
+        BufferedPointOfSaleTerminalClient client = new BufferedPointOfSaleTerminalClient(terminal, 10);
+        scan(client, "A");
+        assertThrows(RuntimeException.class, () -> client.scanAll(quantities("AX")));
+        // buffered scans have been sent before the batch, which has been rejected as a whole
+        assertEquals(new BigDecimal("1.25"), client.subtotal());
+        client.setPricing(new Pricing("X", 1, BigDecimal.ONE));
+        client.scanAll(Collections.singletonMap("X", 2));
+        assertEquals(new BigDecimal("3.25"), client.calculateTotal());
+    }
+
+    // delegates to the terminal, and counts batches
+    private PointOfSaleTerminal counting(PointOfSaleTerminal t) {
+        return new ForwardingTerminal(t) {
+            @Override public void scanAll(Map<String, Integer> quantities) {
+                batches.incrementAndGet();
+                super.scanAll(quantities);
+            }
+        };
+    }
+
+    private static class ForwardingTerminal implements PointOfSaleTerminal {
+        private final PointOfSaleTerminal t;
+        ForwardingTerminal(PointOfSaleTerminal t) { this.t = t; }
+        @Override public String getId() { return t.getId(); }
+        @Override public void setPricing(Pricing... pricings) { t.setPricing(pricings); }
+        @Override public void updatePricing(PricingDelta... deltas) { t.updatePricing(deltas); }
+        @Override public void scan(String productCode) { t.scan(productCode); }
+        @Override public void scanAll(Map<String, Integer> quantities) { t.scanAll(quantities); }
+        @Override public BigDecimal subtotal() { return t.subtotal(); }
+        @Override public BigDecimal calculateTotal() { return t.calculateTotal(); }
+    }
+
+}
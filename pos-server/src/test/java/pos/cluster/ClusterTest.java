@@ -0,0 +1,54 @@
+package pos.cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test shard ownership of terminal IDs.
+ */
+public class ClusterTest {
+
+    @Test
+    public void standaloneServerOwnsAllTerminals() {
+        Cluster cluster = new Cluster();
+        assertTrue(cluster.isStandalone());
+        assertNull(cluster.ownerOf(cluster.newTerminalId()));
+        assertNull(cluster.ownerOf("fff0123456789abc"));
+        assertThrows(IllegalStateException.class, () -> cluster.setNodes(Arrays.asList("http://a")));
+    }
+
+    @Test
+    public void newTerminalsAreOwnedByThisNode() {
+        Cluster a = new Cluster("http://a/", "http://b,http://c", 64);
+        Cluster b = new Cluster("http://b", "http://a,http://c", 64);
+        assertEquals(Arrays.asList("http://a", "http://b", "http://c"), a.getNodes());
+        assertEquals(a.getNodes(), b.getNodes());
+        for (int i = 0; i < 1000; i++) {
+            String id = a.newTerminalId();
+            assertNull(a.ownerOf(id));
+            assertEquals("http://a", b.ownerOf(id));
+        }
+    }
+
+    @Test
+    public void leavingNodeOwnsNoTerminals() {
+        Cluster a = new Cluster("http://a", "http://b", 64);
+        Cluster b = new Cluster("http://b", "http://a", 64);
+        String id = b.newTerminalId();
+        assertEquals("http://b", a.ownerOf(id));
+        b.setNodes(Arrays.asList("http://a"));
+        assertEquals("http://a", b.ownerOf(id));
+    }
+
+    @Test
+    public void invalidIdsHaveNoShard() {
+        assertEquals(-1, Cluster.shardOf(null));
+        assertEquals(-1, Cluster.shardOf("a1f0123"));
+        assertEquals(-1, Cluster.shardOf("a1f0123456789abX"));
+        assertEquals(0xa1f, Cluster.shardOf("a1f0123456789abc"));
+    }
+
+}
@@ -0,0 +1,61 @@
+package pos.cluster;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test consistent hashing of keys to nodes.
+ */
+public class HashRingTest {
+
+    private static final int KEYS = 10000;
+
+    @Test
+    public void ringDoesNotDependOnNodeOrder() {
+        HashRing r1 = new HashRing(Arrays.asList("http://a", "http://b", "http://c"), 64);
+        HashRing r2 = new HashRing(Arrays.asList("http://c", "http://a", "http://b", "http://a"), 64);
+        assertEquals(r1.getNodes(), r2.getNodes());
+        for (int k = 0; k < KEYS; k++) {
+            assertEquals(r1.nodeFor("" + k), r2.nodeFor("" + k));
+        }
+    }
+
+    @Test
+    public void keysAreSpreadOverNodes() {
+        HashRing ring = new HashRing(Arrays.asList("http://a", "http://b", "http://c", "http://d"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int k = 0; k < KEYS; k++) {
+            counts.merge(ring.nodeFor("" + k), 1, Integer::sum);
+        }
+        assertEquals(4, counts.size());
+        counts.values().forEach(n -> assertTrue(n > KEYS / 8, "unbalanced " + counts));
+    }
+
+    @Test
+    public void joiningNodeOnlyTakesKeys() {
+        HashRing before = new HashRing(Arrays.asList("http://a", "http://b", "http://c"), 128);
+        HashRing after = new HashRing(Arrays.asList("http://a", "http://b", "http://c", "http://d"), 128);
+        int moved = 0;
+        for (int k = 0; k < KEYS; k++) {
+            String owner = after.nodeFor("" + k);
+            if (!owner.equals(before.nodeFor("" + k))) {
+                assertEquals("http://d", owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > 0 && moved < KEYS / 2, "moved " + moved);
+    }
+
+    @Test
+    public void emptyRingHasNoOwners() {
+        HashRing ring = new HashRing(Arrays.asList(), 16);
+        assertTrue(ring.isEmpty());
+        assertNull(ring.nodeFor("1"));
+    }
+
+}
@@ -0,0 +1,124 @@
+package pos.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pos.test.TestHelper.*;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import cl.json.JsonMapper;
+import pos.client.http.HTTPClient;
+import pos.client.http.HTTPClient.HTTPResponse;
+import pos.model.PriceListFormat;
+import pos.test.TestConfiguration;
+
+/**
+ * Test two clustered servers on localhost: requests are redirected to the node which owns the terminal,
+ * and terminals are handed off when a node joins. Every test starts with two fresh standalone nodes.
+ */
+public class ClusterControllerTest {
+
+    private static final String NODE_A = "http://localhost:8081";
+    private static final String NODE_B = "http://localhost:8082";
+
+    private ConfigurableApplicationContext a;
+    private ConfigurableApplicationContext b;
+
+    @BeforeEach
+    public void startNodes() {
+        a = start(NODE_A, 8081);
+        b = start(NODE_B, 8082);
+    }
+
+    @AfterEach
+    public void stopNodes() {
+        a.close();
+        b.close();
+    }
+
+    @Test
+    public void terminalsAreHandedOffToJoiningNode() {
+        JsonMapper jsonMapper = JsonMapper.getJsonMapper();
+        try (HTTPClient httpClient = HTTPClient.getClient()) {
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                String id = ok(httpClient.postForm(NODE_A + "/terminal/activate", Collections.emptyMap())).getBody();
+                ok(httpClient.putJson(NODE_A + "/terminal/" + id + "/pricing", jsonMapper.toJson(getTestPricing())));
+                ok(httpClient.putJson(NODE_A + "/terminal/" + id + "/scan/batch", jsonMapper.toJson(quantities("ABCDABA"))));
+                ids.add(id);
+            }
+
+            String nodes = jsonMapper.toJson(Arrays.asList(NODE_A, NODE_B));
+            int moved = Integer.parseInt(ok(httpClient.putJson(NODE_A + "/cluster/nodes", nodes)).getBody());
+            assertTrue(moved > 0 && moved < ids.size(), "moved " + moved);
+            assertEquals(ok(httpClient.get(NODE_A + "/cluster/nodes")).getBody(), ok(httpClient.get(NODE_B + "/cluster/nodes")).getBody());
+
+            // every terminal is reachable through either node, and it has kept its pricing and shopping cart
+            for (int i = 0; i < ids.size(); i++) {
+                String node = i % 2 == 0 ? NODE_A : NODE_B;
+                ok(httpClient.putJson(node + "/terminal/" + ids.get(i) + "/scan", jsonMapper.toJson("C")));
+                String total = ok(httpClient.postForm(node + "/terminal/" + ids.get(i) + "/total", Collections.emptyMap())).getBody();
+                assertEquals(new BigDecimal("14.25"), new BigDecimal(total));
+            }
+        }
+    }
+
+    @Test
+    public void rejectedMembershipChangeIsRolledBack() {
+        JsonMapper jsonMapper = JsonMapper.getJsonMapper();
+        try (HTTPClient httpClient = HTTPClient.getClient()) {
+            String nodes = jsonMapper.toJson(Arrays.asList(NODE_A, NODE_B, "http://localhost:1"));
+            HTTPResponse r = httpClient.putJson(NODE_A + "/cluster/nodes", nodes);
+            assertEquals(409, r.getStatusCode(), r.getBody());
+            // each node is the only node of its cluster again
+            String nodesOfA = ok(httpClient.get(NODE_A + "/cluster/nodes")).getBody();
+            assertTrue(nodesOfA.contains(NODE_A) && !nodesOfA.contains(NODE_B), nodesOfA);
+            String nodesOfB = ok(httpClient.get(NODE_B + "/cluster/nodes")).getBody();
+            assertTrue(nodesOfB.contains(NODE_B) && !nodesOfB.contains(NODE_A), nodesOfB);
+        }
+    }
+
+    @Test
+    public void priceListIsImportedThroughNodeWhichDoesNotOwnTheTerminal() {
+        byte[] csv = "code,count,price\nA,1,1.25\nA,3,3.00\nB,1,4.25\nC,1,1\nC,6,5\nD,1,0.75\n"
+                .getBytes(StandardCharsets.UTF_8);
+        JsonMapper jsonMapper = JsonMapper.getJsonMapper();
+        try (HTTPClient httpClient = HTTPClient.getClient()) {
+            String nodes = jsonMapper.toJson(Arrays.asList(NODE_A, NODE_B));
+            ok(httpClient.putJson(NODE_A + "/cluster/nodes", nodes));
+            String id = ok(httpClient.postForm(NODE_A + "/terminal/activate", Collections.emptyMap())).getBody();
+
+            // the streamed price list is redirected to node A before it is sent
+            HTTPResponse r = ok(httpClient.putStream(NODE_B + "/terminal/" + id + "/pricing/import",
+                    new ByteArrayInputStream(csv), PriceListFormat.CSV.getContentType()));
+            assertEquals("6", r.getBody().trim());
+
+            ok(httpClient.putJson(NODE_B + "/terminal/" + id + "/scan/batch", jsonMapper.toJson(quantities("ABCDABA"))));
+            String total = ok(httpClient.postForm(NODE_B + "/terminal/" + id + "/total", Collections.emptyMap())).getBody();
+            assertEquals(new BigDecimal("13.25"), new BigDecimal(total));
+        }
+    }
+
+    private static ConfigurableApplicationContext start(String self, int port) {
+        return new SpringApplicationBuilder(TestConfiguration.class)
+                .properties("server.port=" + port, "pos.cluster.self=" + self)
+                .run();
+    }
+
+    private static HTTPResponse ok(HTTPResponse r) {
+        assertEquals(HTTPResponse.OK, r.getStatusCode(), r.getBody());
+        return r;
+    }
+
+}
@@ -3,7 +3,20 @@ package pos.controller;
 import static org.junit.jupiter.api.Assertions.*;
 import static pos.test.TestHelper.*;
 
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,10 +25,23 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import cl.json.JsonMapper;
+import pos.client.AsyncPointOfSaleTerminalClient;
+import pos.client.BufferedPointOfSaleTerminalClient;
 import pos.client.PointOfSaleTerminalClient;
 import pos.client.PointOfSaleTerminalClientException;
+import pos.client.PriceListImporter;
+import pos.client.UnscannedProductsException;
+import pos.client.WireFormat;
+import pos.client.http.AsyncHTTPClient;
+import pos.client.http.HTTPClient;
+import pos.client.http.HTTPClient.HTTPResponse;
+import pos.model.BinaryCodec;
 import pos.model.PointOfSaleTerminal;
+import pos.model.PriceListFormat;
 import pos.model.Pricing;
+import pos.model.PricingDelta;
+import pos.model.PricingDigest;
 import pos.test.TestConfiguration;
 
 /**
@@ -62,6 +88,54 @@ public class PointOfSaleControllerTest {
         assertThrows(PointOfSaleTerminalClientException.class, () -> scan(terminal, "XYZ"));
     }
     
+    @Test
+    public void scanAllWorks() {
+        terminal.setPricing(getTestPricing());
+        assertDoesNotThrow(() -> terminal.scanAll(quantities("ABCDABA")));
+        assertEquals(new BigDecimal("13.25"), terminal.calculateTotal());
+    }
+    
+    @Test
+    public void scanAllThrowsOnUnknownProduct() {
+        terminal.setPricing(getTestPricing());
+        assertThrows(PointOfSaleTerminalClientException.class, () -> terminal.scanAll(quantities("ABX")));
+        assertEquals(new BigDecimal("0.00"), terminal.calculateTotal());
+    }
+    
+    @Test
+    public void bufferedScansWork() {
+        BufferedPointOfSaleTerminalClient buffered = new BufferedPointOfSaleTerminalClient(terminal, 3);
+        buffered.setPricing(getTestPricing());
+        UnscannedProductsException e = assertThrows(UnscannedProductsException.class, () -> scan(buffered, "ABX"));
+        assertEquals(quantities("X"), e.getQuantities());
+        scan(buffered, "CDABA");
+        assertEquals(new BigDecimal("13.25"), buffered.calculateTotal());
+    }
+    
+    @Test
+    public void cachedPricingWorks() {
+        terminal.setPricing(getTestPricing());
+        try (HTTPClient httpClient = HTTPClient.getClient()) {
+            PointOfSaleTerminalClient t = new PointOfSaleTerminalClient(httpClient);
+            String url = "http://localhost:8080/terminal/" + t.getId() + "/pricing/cached/";
+            assertEquals(HTTPResponse.OK, httpClient.putJson(url + PricingDigest.of(getTestPricing()), "").getStatusCode());
+            assertEquals(HTTPResponse.NOT_FOUND, httpClient.putJson(url + "unknown", "").getStatusCode());
+            scan(t, "ABCDABA");
+            assertEquals(new BigDecimal("13.25"), t.calculateTotal());
+        }
+    }
+    
+    @Test
+    public void updatePricingWorks() {
+        terminal.setPricing(getTestPricing());
+        scan(terminal, "AAB");
+        terminal.updatePricing(PricingDelta.upsert(Pricing.perUnitPricing("A", new BigDecimal("1.00"))),
+                PricingDelta.remove("B", 1));
+        assertEquals(new BigDecimal("2.00"), terminal.subtotal());
+        assertThrows(PointOfSaleTerminalClientException.class, () -> terminal.scan("B"));
+        assertThrows(PointOfSaleTerminalClientException.class, () -> terminal.updatePricing(PricingDelta.remove("A", 0)));
+    }
+    
     @Test
     public void calculateTotalWorks() {
         terminal.setPricing(getTestPricing());
@@ -71,6 +145,17 @@ public class PointOfSaleControllerTest {
         });
     }
     
+    @Test
+    public void subtotalWorks() {
+        terminal.setPricing(getTestPricing());
+        assertEquals(new BigDecimal("0.00"), terminal.subtotal());
+        scan(terminal, "ABCD");
+        assertEquals(new BigDecimal("7.25"), terminal.subtotal());
+        scan(terminal, "ABA");
+        assertEquals(new BigDecimal("13.25"), terminal.subtotal());
+        assertEquals(new BigDecimal("13.25"), terminal.calculateTotal());
+    }
+    
     @Test
     public void calculateTotalOnEmptyCartWorks() {
         assertDoesNotThrow(() -> { 
@@ -78,6 +163,159 @@ public class PointOfSaleControllerTest {
         });
     }
     
+    @Test
+    public void publishedCatalogIsUsedByNewTerminals() {
+        try (HTTPClient httpClient = HTTPClient.getClient()) {
+            String json = JsonMapper.getJsonMapper().toJson(getTestPricing());
+            HTTPResponse r = httpClient.putJson("http://localhost:8080/catalog", json);
+            assertEquals(HTTPResponse.OK, r.getStatusCode());
+            assertTrue(Long.parseLong(r.getBody()) > 0);
+        }
+        PointOfSaleTerminal t = new PointOfSaleTerminalClient();
+        assertDoesNotThrow(() -> scan(t, "ABCDABA"));
+        assertEquals(new BigDecimal("13.25"), t.calculateTotal());
+    }
+    
+    @Test
+    public void asyncOperationsArePipelinedInOrder() {
+        try (AsyncHTTPClient httpClient = AsyncHTTPClient.getClient()) {
+            AsyncPointOfSaleTerminalClient t = AsyncPointOfSaleTerminalClient.activate(httpClient).join();
+            assertNotNull(t.getId());
+
+            // nothing is awaited until the total is calculated
+            List<CompletableFuture<Void>> scans = new ArrayList<>();
+            t.setPricing(getTestPricing());
+            for (char c : "ABCDABA".toCharArray()) {
+                scans.add(t.scan(c + ""));
+            }
+            CompletableFuture<Void> unknown = t.scan("XYZ");
+            CompletableFuture<BigDecimal> total = t.calculateTotal();
+
+            assertEquals(new BigDecimal("13.25"), total.join());
+            scans.forEach(f -> assertDoesNotThrow(f::join));
+            CompletionException e = assertThrows(CompletionException.class, unknown::join);
+            assertTrue(e.getCause() instanceof PointOfSaleTerminalClientException);
+        }
+    }
+    
+    @Test
+    public void asyncScansAreInFlightAtOnce() throws InterruptedException {
+        try (AsyncHTTPClient client = AsyncHTTPClient.getClient()) {
+            // responses to scans are held back until the gate opens
+            CompletableFuture<Void> gate = new CompletableFuture<>();
+            AtomicInteger scansSent = new AtomicInteger();
+            AsyncHTTPClient httpClient = (AsyncHTTPClient) Proxy.newProxyInstance(AsyncHTTPClient.class.getClassLoader(),
+                    new Class<?>[] {AsyncHTTPClient.class}, (proxy, method, args) -> {
+                        Object result;
+                        try {
+                            result = method.invoke(client, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                        if (args != null && args.length > 0 && args[0] instanceof String && ((String) args[0]).endsWith("/scan")) {
+                            scansSent.incrementAndGet();
+                            return ((CompletableFuture<?>) result).thenCombine(gate, (r, g) -> r);
+                        }
+                        return result;
+                    });
+            AsyncPointOfSaleTerminalClient t = AsyncPointOfSaleTerminalClient.activate(httpClient).join();
+            t.setPricing(getTestPricing());
+            List<CompletableFuture<Void>> scans = new ArrayList<>();
+            for (char c : "ABCDABA".toCharArray()) {
+                scans.add(t.scan(c + ""));
+            }
+            CompletableFuture<BigDecimal> total = t.calculateTotal();
+
+            // all the scans are sent before any of them has completed, and the total waits for them
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (scansSent.get() < scans.size() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(scans.size(), scansSent.get());
+            assertTrue(scans.stream().noneMatch(CompletableFuture::isDone));
+            assertFalse(total.isDone());
+
+            gate.complete(null);
+            assertEquals(new BigDecimal("13.25"), total.join());
+            scans.forEach(f -> assertDoesNotThrow(f::join));
+        }
+    }
+    
+    @Test
+    public void binaryFormatWorks() {
+        try (HTTPClient httpClient = HTTPClient.getClient()) {
+            PointOfSaleTerminalClient t = new PointOfSaleTerminalClient(httpClient, WireFormat.BINARY);
+            assertEquals(WireFormat.BINARY, t.getFormat());
+            assertNotNull(t.getId());
+            t.setPricing(getTestPricing());
+            scan(t, "ABCD");
+            t.scanAll(quantities("ABA"));
+            assertThrows(PointOfSaleTerminalClientException.class, () -> t.scan("XYZ"));
+            assertEquals(new BigDecimal("13.25"), t.subtotal());
+            assertEquals(new BigDecimal("13.25"), t.calculateTotal());
+        }
+    }
+    
+    @Test
+    public void malformedBinaryMessageIsBadRequest() {
+        try (HTTPClient httpClient = HTTPClient.getClient()) {
+            PointOfSaleTerminalClient t = new PointOfSaleTerminalClient(httpClient, WireFormat.BINARY);
+            HTTPResponse r = httpClient.putBytes("http://localhost:8080/terminal/" + t.getId() + "/pricing",
+                    new byte[] {5, 1}, BinaryCodec.CONTENT_TYPE);
+            assertEquals(HTTPResponse.BAD_REQUEST, r.getStatusCode());
+        }
+    }
+    
+    @Test
+    public void priceListImportWorks() {
+        byte[] csv = "code,count,price\nA,1,1.25\nA,3,3.00\nB,1,4.25\nC,1,1\nC,6,5\nD,1,0.75\n"
+                .getBytes(StandardCharsets.UTF_8);
+        try (HTTPClient httpClient = HTTPClient.getClient()) {
+            PriceListImporter importer = new PriceListImporter(httpClient);
+            AtomicLong sent = new AtomicLong();
+            assertEquals(6, importer.importPricing(terminal.getId(), new ByteArrayInputStream(csv), PriceListFormat.CSV, sent::set));
+            assertEquals(csv.length, sent.get());
+
+            PointOfSaleTerminalClientException e = assertThrows(PointOfSaleTerminalClientException.class, () ->
+                    importer.importPricing(terminal.getId(), new ByteArrayInputStream("A,x,1\n".getBytes(StandardCharsets.UTF_8)),
+                            PriceListFormat.CSV, n -> {}));
+            assertEquals(HTTPResponse.BAD_REQUEST, e.getHttpStatus());
+        }
+        scan(terminal, "ABCDABA");
+        assertEquals(new BigDecimal("13.25"), terminal.calculateTotal());
+    }
+    
+    @Test
+    public void pricingQueriesWork() {
+        terminal.setPricing(getTestPricing());
+        try (HTTPClient httpClient = HTTPClient.getClient()) {
+            Map<String, Object> params = new HashMap<>();
+            params.put("prefix", "A");
+            HTTPResponse r = httpClient.get("http://localhost:8080/terminal/" + terminal.getId() + "/pricing", params);
+            assertEquals(HTTPResponse.OK, r.getStatusCode());
+            assertTrue(r.getBody().contains("\"A\""));
+            assertFalse(r.getBody().contains("\"B\""));
+            params.clear();
+            params.put("from", "B");
+            params.put("to", "D");
+            params.put("limit", 0);
+            r = httpClient.get("http://localhost:8080/catalog/pricing", params);
+            assertEquals(HTTPResponse.BAD_REQUEST, r.getStatusCode());
+        }
+    }
+    
+    @Test
+    public void metricsAreExposed() {
+        terminal.setPricing(getTestPricing());
+        scan(terminal, "A");
+        try (HTTPClient httpClient = HTTPClient.getClient()) {
+            HTTPResponse r = httpClient.get("http://localhost:8080/metrics");
+            assertEquals(HTTPResponse.OK, r.getStatusCode());
+            assertTrue(r.getBody().contains("pos_operation_latency_seconds_count{operation=\"scan\"}"));
+            assertTrue(r.getBody().contains("# TYPE pos_active_terminals gauge"));
+        }
+    }
+    
     @Test
     public void calculateTotalRemovesTerminal() {
         terminal.calculateTotal().equals(new BigDecimal(0));
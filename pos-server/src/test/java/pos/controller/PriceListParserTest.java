@@ -0,0 +1,60 @@
+package pos.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import pos.model.PriceListFormat;
+import pos.model.Pricing;
+import pos.service.PointOfSaleServiceException;
+
+/**
+ * Test incremental parsing of price lists.
+ */
+public class PriceListParserTest {
+
+    @Test
+    public void csvSkipsHeaderAndBlankLines() {
+        List<Pricing> pricings = parse(PriceListFormat.CSV, "code,count,price\nA,1,1.25\n\nA, 3, 3.00\n");
+        assertEquals(2, pricings.size());
+        assertEquals("A", pricings.get(1).getProductCode());
+        assertEquals(Integer.valueOf(3), pricings.get(1).getCount());
+        assertEquals(new BigDecimal("3.00"), pricings.get(1).getPrice());
+    }
+
+    @Test
+    public void csvReportsInvalidLine() {
+        Iterator<Pricing> it = PriceListParser.parse(PriceListFormat.CSV, stream("A,1,1.25\nB,x,4.25\n"), new ObjectMapper());
+        assertEquals("A", it.next().getProductCode());
+        PointOfSaleServiceException e = assertThrows(PointOfSaleServiceException.class, it::next);
+        assertTrue(e.getMessage().contains("line 2"));
+    }
+
+    @Test
+    public void jsonLinesAreParsed() {
+        List<Pricing> pricings = parse(PriceListFormat.JSON_LINES,
+                "{\"productCode\":\"A\",\"count\":1,\"price\":1.25}\n{\"productCode\":\"B\",\"count\":1,\"price\":4.25}\n");
+        assertEquals(2, pricings.size());
+        assertEquals(new BigDecimal("4.25"), pricings.get(1).getPrice());
+    }
+
+    private static List<Pricing> parse(PriceListFormat format, String priceList) {
+        List<Pricing> pricings = new ArrayList<>();
+        PriceListParser.parse(format, stream(priceList), new ObjectMapper()).forEachRemaining(pricings::add);
+        return pricings;
+    }
+
+    private static ByteArrayInputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
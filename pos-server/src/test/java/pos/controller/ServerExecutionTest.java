@@ -0,0 +1,64 @@
+package pos.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.apache.catalina.connector.Connector;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+
+/**
+ * Test selection of request threads.
+ */
+public class ServerExecutionTest {
+
+    @Test
+    public void platformModeIsDefault() {
+        new ApplicationContextRunner()
+                .withUserConfiguration(ServerExecution.class)
+                .run(context -> assertEquals(ServerExecution.Mode.PLATFORM, context.getBean(ServerExecution.class).getMode()));
+    }
+
+    @Test
+    public void platformModeKeepsTomcatThreads() {
+        ServerExecution execution = new ServerExecution(ServerExecution.Mode.PLATFORM);
+        TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory();
+        execution.customize(factory);
+        assertTrue(factory.getTomcatConnectorCustomizers().isEmpty());
+        execution.close();
+    }
+
+    @Test
+    public void virtualModeInstallsExecutorOnConnector() throws Exception {
+        if (!ServerExecution.virtualThreadsSupported()) {
+            assertThrows(IllegalStateException.class, () -> new ServerExecution(ServerExecution.Mode.VIRTUAL));
+            return;
+        }
+        ServerExecution execution = new ServerExecution(ServerExecution.Mode.VIRTUAL);
+        try {
+            TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory();
+            execution.customize(factory);
+            Connector connector = new Connector(TomcatServletWebServerFactory.DEFAULT_PROTOCOL);
+            for (TomcatConnectorCustomizer customizer : factory.getTomcatConnectorCustomizers()) {
+                customizer.customize(connector);
+            }
+            Executor executor = connector.getProtocolHandler().getExecutor();
+            CompletableFuture<Object> virtual = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    virtual.complete(Thread.class.getMethod("isVirtual").invoke(Thread.currentThread()));
+                } catch (ReflectiveOperationException e) {
+                    virtual.completeExceptionally(e);
+                }
+            });
+            assertEquals(Boolean.TRUE, virtual.get());
+        } finally {
+            execution.close();
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package pos.controller;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import pos.client.PointOfSaleTerminalClient;
+import pos.client.PointOfSaleTerminalClientException;
+import pos.client.WireFormat;
+import pos.client.http.HTTPClient;
+import pos.test.TestConfiguration;
+
+/**
+ * Test activation of terminals on a server which registry is full. The server runs on its own port,
+ * and the clients, which call {@code localhost:8080}, are redirected to it.
+ */
+public class TerminalLimitControllerTest {
+
+    private static final String CLIENT_HOST = "http://localhost:8080";
+    private static final String SERVER_HOST = "http://localhost:8083";
+
+    private ConfigurableApplicationContext server;
+    private HTTPClient httpClient;
+
+    @BeforeEach
+    public void startServer() {
+        server = new SpringApplicationBuilder(TestConfiguration.class)
+                .properties("server.port=8083", "pos.terminal.max-active=2", "pos.terminal.rejection-policy=REJECT")
+                .run();
+        httpClient = redirected(HTTPClient.getClient());
+    }
+
+    @AfterEach
+    public void stopServer() {
+        httpClient.close();
+        server.close();
+    }
+
+    @Test
+    public void activationFailsWhenRegistryIsFull() {
+        new PointOfSaleTerminalClient(httpClient);
+        new PointOfSaleTerminalClient(httpClient, WireFormat.BINARY);
+        PointOfSaleTerminalClientException json = assertThrows(PointOfSaleTerminalClientException.class,
+                () -> new PointOfSaleTerminalClient(httpClient));
+        assertEquals(503, json.getHttpStatus());
+        assertThrows(PointOfSaleTerminalClientException.class, () -> new PointOfSaleTerminalClient(httpClient, WireFormat.BINARY));
+    }
+
+    // HTTP client which sends the requests to the test server instead of the default host
+    private static HTTPClient redirected(HTTPClient client) {
+        return (HTTPClient) Proxy.newProxyInstance(HTTPClient.class.getClassLoader(), new Class<?>[] {HTTPClient.class},
+                (proxy, method, args) -> {
+                    if (args != null && args.length > 0 && args[0] instanceof String) {
+                        args[0] = ((String) args[0]).replace(CLIENT_HOST, SERVER_HOST);
+                    }
+                    try {
+                        return method.invoke(client, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+}
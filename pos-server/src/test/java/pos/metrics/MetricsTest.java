@@ -0,0 +1,74 @@
+package pos.metrics;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import pos.metrics.Metrics.Operation;
+
+/**
+ * Test histogram precision, and metrics text format.
+ */
+public class MetricsTest {
+
+    @Test
+    public void histogramBucketsCoverAllValues() {
+        int previous = -1;
+        for (long v = 0; v < 100_000; v++) {
+            int index = Histogram.index(v);
+            assertTrue(index == previous || index == previous + 1, "bucket of " + v);
+            assertTrue(Histogram.highestValue(index) >= v);
+            previous = index;
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.highestValue(Histogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void quantilesAreWithinHistogramPrecision() {
+        Histogram h = new Histogram();
+        Random random = new Random(1);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (Math.exp(random.nextDouble() * 20));
+            h.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        Histogram.Snapshot s = h.snapshot();
+        assertEquals(values.length, s.getCount());
+        for (double q : new double[] {0.5, 0.9, 0.99, 0.999, 1}) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            long estimate = s.valueAtQuantile(q);
+            assertTrue(estimate >= exact && estimate <= exact + exact / 32 + 1, q + ": " + estimate + " vs " + exact);
+        }
+    }
+
+    @Test
+    public void metricsAreWrittenInPrometheusFormat() {
+        Metrics metrics = new Metrics();
+        metrics.recordLatency(Operation.SCAN, TimeUnit.MICROSECONDS.toNanos(20));
+        metrics.recordLatency(Operation.SCAN, TimeUnit.MICROSECONDS.toNanos(20));
+        metrics.recordPricingLoad(6);
+        metrics.unknownProduct();
+        metrics.gauge("pos_active_terminals", "Number of active terminals", () -> 3);
+        metrics.counter("pos_terminal_rejections_total", "Terminals not activated", () -> 5);
+
+        StringBuilder out = new StringBuilder();
+        metrics.writeTo(out);
+        String text = out.toString();
+
+        assertTrue(text.contains("# TYPE pos_operation_latency_seconds summary\n"));
+        assertTrue(text.contains("pos_operation_latency_seconds_count{operation=\"scan\"} 2\n"));
+        assertTrue(text.contains("pos_operation_latency_seconds_count{operation=\"activate\"} 0\n"));
+        assertTrue(text.contains("pos_pricing_load_size{quantile=\"0.5\"} 6.0\n"));
+        assertTrue(text.contains("pos_unknown_product_errors_total 1\n"));
+        assertTrue(text.contains("pos_unknown_terminal_errors_total 0\n"));
+        assertTrue(text.contains("# TYPE pos_active_terminals gauge\npos_active_terminals 3\n"));
+        assertTrue(text.contains("# TYPE pos_terminal_rejections_total counter\npos_terminal_rejections_total 5\n"));
+    }
+
+}
@@ -0,0 +1,76 @@
+package pos.model;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pos.test.TestHelper.*;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test that binary messages are decoded into what has been encoded, and that malformed
+ * messages are rejected.
+ */
+public class BinaryCodecTest {
+
+    @Test
+    public void pricingRoundTrip() {
+        Pricing[] pricings = {
+                Pricing.perUnitPricing("A", new BigDecimal("1.25")),
+                Pricing.volumePricing("\u00dc-\u03a9", 1_000_000, new BigDecimal("-12345678901234567890.123")),
+                Pricing.volumePricing("C", 6, new BigDecimal("5E+3")),
+        };
+        assertArrayEquals(pricings, BinaryCodec.decodePricing(BinaryCodec.encodePricing(pricings)));
+        assertArrayEquals(getTestPricing(), BinaryCodec.decodePricing(BinaryCodec.encodePricing(getTestPricing())));
+        assertEquals(0, BinaryCodec.decodePricing(BinaryCodec.encodePricing()).length);
+        assertNull(BinaryCodec.decodePricing(BinaryCodec.encodePricing((Pricing[]) null)));
+        
+        // missing fields are left to the service to reject
+        Pricing empty = BinaryCodec.decodePricing(BinaryCodec.encodePricing(new Pricing(null, null, null)))[0];
+        assertNull(empty.getProductCode());
+        assertNull(empty.getCount());
+        assertNull(empty.getPrice());
+    }
+
+    @Test
+    public void pricingIsCompact() {
+        // length, code (2 bytes), count, scale, unscaled value (2 bytes)
+        assertEquals(7, BinaryCodec.encodePricing(Pricing.perUnitPricing("A", new BigDecimal("1.25"))).length);
+    }
+
+    @Test
+    public void quantitiesRoundTrip() {
+        Map<String, Integer> quantities = new LinkedHashMap<>(quantities("ABCDABA"));
+        quantities.put("X", Integer.MAX_VALUE);
+        quantities.put("Y", Integer.MIN_VALUE);
+        quantities.put("Z", null);
+        assertEquals(quantities, BinaryCodec.decodeQuantities(BinaryCodec.encodeQuantities(quantities)));
+    }
+
+    @Test
+    public void stringAndDecimalRoundTrip() {
+        assertEquals("A", BinaryCodec.decodeString(BinaryCodec.encodeString("A")));
+        assertEquals("", BinaryCodec.decodeString(BinaryCodec.encodeString("")));
+        assertNull(BinaryCodec.decodeString(BinaryCodec.encodeString(null)));
+        assertEquals(new BigDecimal("13.25"), BinaryCodec.decodeDecimal(BinaryCodec.encodeDecimal(new BigDecimal("13.25"))));
+        assertEquals(BigDecimal.ZERO, BinaryCodec.decodeDecimal(BinaryCodec.encodeDecimal(BigDecimal.ZERO)));
+    }
+
+    @Test
+    public void malformedMessagesThrow() {
+        byte[] message = BinaryCodec.encodePricing(getTestPricing());
+        for (int length = 0; length < message.length; length++) {
+            byte[] truncated = Arrays.copyOf(message, length);
+            assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decodePricing(truncated));
+        }
+        byte[] trailing = Arrays.copyOf(message, message.length + 1);
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decodePricing(trailing));
+        // a huge array length must not be allocated
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.decodePricing(new byte[] {(byte) 0xFF, (byte) 0xFF, 0x7F}));
+        assertThrows(IllegalArgumentException.class, () -> BinaryCodec.encodePricing(new Pricing[1]));
+    }
+
+}
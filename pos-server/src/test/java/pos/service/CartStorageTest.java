@@ -0,0 +1,135 @@
+package pos.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pos.test.TestHelper.*;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import pos.model.PointOfSaleTerminalException;
+import pos.model.Pricing;
+
+/**
+ * Test carts stored on the heap and off the heap, and numbering of products.
+ */
+public class CartStorageTest {
+
+    @ParameterizedTest
+    @EnumSource(CartStorage.Type.class)
+    public void quantitiesAreAdded(CartStorage.Type type) {
+        Cart cart = storage(type).newCart();
+        cart.add(0, 1);
+        cart.add(1, 2);
+        cart.add(0, 3);
+        assertEquals(2, cart.size());
+
+        Map<Integer, Long> expected = new HashMap<>();
+        expected.put(0, 4L);
+        expected.put(1, 2L);
+        assertEquals(expected, contents(cart));
+    }
+
+    @ParameterizedTest
+    @EnumSource(CartStorage.Type.class)
+    public void cartGrowsWithProducts(CartStorage.Type type) {
+        Cart cart = storage(type).newCart();
+        Map<Integer, Long> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            // sparse product numbers, which collide in small tables
+            int product = (i % 300) * 64;
+            cart.add(product, i);
+            expected.merge(product, (long) i, Long::sum);
+        }
+        assertEquals(300, cart.size());
+        assertEquals(expected, contents(cart));
+    }
+
+    @ParameterizedTest
+    @EnumSource(CartStorage.Type.class)
+    public void countsExceedInt(CartStorage.Type type) {
+        Cart cart = storage(type).newCart();
+        cart.add(0, Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE + 5L, cart.add(0, 5));
+        for (int i = 1; i < 20; i++) {
+            // the counts are kept when the cart grows
+            cart.add(i, 1);
+        }
+        assertEquals(Integer.MAX_VALUE + 5L, (long) contents(cart).get(0));
+    }
+
+    @ParameterizedTest
+    @EnumSource(CartStorage.Type.class)
+    public void releasedCartCannotBeUsed(CartStorage.Type type) {
+        Cart cart = storage(type).newCart();
+        cart.add(0, 1);
+        cart.release();
+        assertEquals(0, contents(cart).size());
+        assertThrows(PointOfSaleTerminalException.class, () -> cart.add(0, 1));
+    }
+
+    @ParameterizedTest
+    @EnumSource(CartStorage.Type.class)
+    public void terminalCalculatesTotal(CartStorage.Type type) {
+        PointOfSaleTerminalImpl terminal = new PointOfSaleTerminalImpl(
+                TerminalIds.newId(), PriceCatalog.of(getTestPricing()), storage(type).newCart());
+        scan(terminal, "ABCDABA");
+        assertEquals(new BigDecimal("13.25"), terminal.calculateTotal());
+
+        Map<String, Long> expected = new HashMap<>();
+        expected.put("A", 3L);
+        expected.put("B", 2L);
+        expected.put("C", 1L);
+        expected.put("D", 1L);
+        assertEquals(expected, terminal.cartSnapshot());
+        terminal.release();
+    }
+
+    @Test
+    public void releasedBlocksAreReused() {
+        OffHeapCartStorage storage = new OffHeapCartStorage(4096);
+        long reserved = -1;
+        for (int i = 0; i < 10_000; i++) {
+            Cart cart = storage.newCart();
+            for (int j = 0; j < 20; j++) {
+                cart.add(j, 1);
+            }
+            cart.release();
+            if (reserved < 0) {
+                reserved = storage.reservedBytes();
+            }
+        }
+        assertEquals(reserved, storage.reservedBytes());
+    }
+
+    @Test
+    public void productNumbersAreSharedByCatalogs() {
+        PriceCatalog catalog = PriceCatalog.of(getTestPricing());
+        PriceCatalog updated = catalog.withPricing(Pricing.perUnitPricing("X", new BigDecimal("1.00")));
+
+        int a = catalog.get("A").product();
+        assertEquals(a, updated.get("A").product());
+        assertEquals(a, ProductIndex.GLOBAL.find("A"));
+        assertEquals("A", ProductIndex.GLOBAL.codeOf(a));
+        assertSame(catalog.get("A"), catalog.get(a));
+
+        int x = updated.get("X").product();
+        assertNull(catalog.get(x));
+        assertSame(updated.get("X"), updated.get(x));
+    }
+
+    private static CartStorage storage(CartStorage.Type type) {
+        return type == CartStorage.Type.OFF_HEAP ? new OffHeapCartStorage(OffHeapCartStorage.DEFAULT_SLAB_BYTES) : CartStorage.HEAP;
+    }
+
+    private static Map<Integer, Long> contents(Cart cart) {
+        Map<Integer, Long> contents = new HashMap<>();
+        cart.forEach(contents::put);
+        return contents;
+    }
+
+}
@@ -0,0 +1,103 @@
+package pos.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test the primitive-keyed map of the terminal registry, and compact terminal IDs.
+ */
+public class ConcurrentLongMapTest {
+
+    @Test
+    public void mapBehavesLikeHashMap() {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // few distinct keys, so that removals shift back colliding keys
+            long key = 1 + random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.putIfAbsent(key, (long) i), map.putIfAbsent(key, (long) i));
+            }
+        }
+        for (long key = 1; key <= 5000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        Map<Long, Long> entries = new HashMap<>();
+        map.forEach(entries::put);
+        assertEquals(expected, entries);
+    }
+
+    @Test
+    public void conditionalRemoveChecksValue() {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+        String value = "a";
+        map.putIfAbsent(-7, value);
+        assertFalse(map.remove(-7, new String("a")));
+        assertTrue(map.containsKey(-7));
+        assertTrue(map.remove(-7, value));
+        assertFalse(map.containsKey(-7));
+        assertThrows(IllegalArgumentException.class, () -> map.putIfAbsent(0, value));
+    }
+
+    @Test
+    public void concurrentChangesAreNotLost() throws Exception {
+        ConcurrentLongMap<Integer> map = new ConcurrentLongMap<>();
+        int threads = 8;
+        int keysPerThread = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int threadNo = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 1; i <= keysPerThread; i++) {
+                        long key = (long) threadNo << 32 | i;
+                        assertNull(map.putIfAbsent(key, i));
+                        assertEquals(Integer.valueOf(i), map.get(key));
+                        if (i % 2 == 0) {
+                            assertEquals(Integer.valueOf(i), map.remove(key));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        int[] size = new int[1];
+        map.forEach((key, value) -> {
+            assertEquals(1, value % 2);
+            size[0]++;
+        });
+        assertEquals(threads * keysPerThread / 2, size[0]);
+    }
+
+    @Test
+    public void terminalIdsAreCompact() {
+        String id = TerminalIds.newId(0xa1f);
+        assertEquals(TerminalIds.LENGTH, id.length());
+        assertTrue(id.startsWith("a1f"));
+        long n = TerminalIds.parse(id);
+        assertEquals(0xa1f, TerminalIds.shard(n));
+        assertEquals(id, TerminalIds.format(n));
+        assertEquals(TerminalIds.INVALID, TerminalIds.parse(id.toUpperCase().replace('A', 'X')));
+        assertEquals(TerminalIds.INVALID, TerminalIds.parse(id.substring(1)));
+        assertNotEquals(id, TerminalIds.newId(0xa1f));
+    }
+
+}
@@ -0,0 +1,273 @@
+package pos.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pos.test.TestHelper.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import pos.model.Pricing;
+import pos.model.PricingDelta;
+import pos.model.UnknownProductException;
+import pos.service.TerminalJournal.FsyncPolicy;
+import pos.service.TerminalRegistry.RejectionPolicy;
+
+/**
+ * Test that terminal sessions survive a restart of the service with a file journal.
+ */
+public class FileTerminalJournalTest {
+
+    private Path dir;
+
+    @BeforeEach
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("journal");
+    }
+
+    @AfterEach
+    public void deleteDir() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path p : files.collect(Collectors.toList())) {
+                Files.delete(p);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void openTerminalsAreRestored() {
+        PointOfSaleServiceImpl before = open();
+        before.publishCatalog(getTestPricing());
+        String t1 = before.activate();
+        String t2 = before.activate();
+        String t3 = before.activate();
+        before.setPricing(t2, Pricing.perUnitPricing("E", new BigDecimal("2.50")));
+        before.scanAll(t1, quantities("ABCDABA"));
+        before.scan(t2, "E");
+        before.scanAll(t2, quantities("CCCCCCC"));
+        before.scan(t3, "A");
+        assertEquals(new BigDecimal("1.25"), before.calculateTotal(t3));
+        before.close();
+
+        PointOfSaleServiceImpl service = open();
+        try {
+            assertEquals(new BigDecimal("13.25"), service.calculateTotal(t1));
+            assertEquals(new BigDecimal("8.50"), service.calculateTotal(t2));
+            assertThrows(PointOfSaleServiceException.class, () -> service.calculateTotal(t3));
+
+            // the published catalog is restored too
+            String t4 = service.activate();
+            service.scan(t4, "B");
+            assertEquals(new BigDecimal("4.25"), service.calculateTotal(t4));
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void pricingUpdatesAreRestored() {
+        PointOfSaleServiceImpl before = open();
+        before.publishCatalog(getTestPricing());
+        String t = before.activate();
+        before.scanAll(t, quantities("AAAA"));
+        before.updatePricing(t, PricingDelta.upsert(Pricing.volumePricing("A", 3, new BigDecimal("2.00"))),
+                PricingDelta.remove("B", 1));
+        before.close();
+
+        PointOfSaleServiceImpl service = open();
+        try {
+            assertEquals(new BigDecimal("3.25"), service.subtotal(t));
+            assertThrows(UnknownProductException.class, () -> service.scan(t, "B"));
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void eventsRecordedOutOfOrderAreSkipped() {
+        // scans and pricing changes were recorded outside of the terminal's lock by an earlier version,
+        // so that racing events may have been recorded in the reverse order
+        PriceCatalog catalog = PriceCatalog.of(getTestPricing());
+        PointOfSaleTerminalImpl t = new PointOfSaleTerminalImpl(catalog);
+        FileTerminalJournal journal = new FileTerminalJournal(dir, 1024, FsyncPolicy.ALWAYS, 100);
+        journal.start(catalog, Collections.singletonList(t));
+        journal.scanned(t.getId(), quantities("AAAAE"));
+        journal.pricingAdded(t.getId(), new Pricing[] {Pricing.perUnitPricing("E", new BigDecimal("2.50"))});
+        journal.pricingUpdated(t.getId(), new PricingDelta[] {PricingDelta.remove("A", 1), PricingDelta.remove("A", 3)});
+        journal.close();
+
+        PointOfSaleServiceImpl service = open();
+        try {
+            // the scan of E before its pricing, and the removal of A in the cart are skipped
+            assertEquals(new BigDecimal("4.25"), service.subtotal(t.getId()));
+            service.scan(t.getId(), "E");
+            assertEquals(new BigDecimal("6.75"), service.calculateTotal(t.getId()));
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void restoredStateIsCompacted() throws IOException {
+        PointOfSaleServiceImpl service = open();
+        service.publishCatalog(getTestPricing());
+        String t = service.activate();
+        for (int i = 0; i < 100; i++) {
+            service.scan(t, "A");
+            service.calculateTotal(service.activate());
+        }
+        service.close();
+
+        // the old segments are replaced with a snapshot of one open terminal,
+        // followed by the segment for new events
+        service = open();
+        try {
+            assertEquals(2, segments().size());
+            assertEquals(new BigDecimal("100.25"), service.calculateTotal(t));
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void closedSegmentsAreCompactedWhileRunning() throws IOException {
+        FileTerminalJournal journal = new FileTerminalJournal(dir, 1024, FsyncPolicy.ALWAYS, 100);
+        PointOfSaleServiceImpl service = new PointOfSaleServiceImpl(
+                new TerminalRegistry(60, 100, RejectionPolicy.REJECT, System::nanoTime), journal);
+        service.publishCatalog(getTestPricing());
+        String t = service.activate();
+        service.setPricing(t, Pricing.perUnitPricing("E", new BigDecimal("2.50")));
+        for (int i = 0; i < 1000; i++) {
+            service.scan(t, "A");
+            String closed = service.activate();
+            service.scanAll(closed, quantities("ABCD"));
+            service.calculateTotal(closed);
+        }
+        service.scan(t, "E");
+        journal.awaitCompaction();
+        // a compacted segment of one open terminal, and the segments written since its compaction started
+        assertTrue(segments().size() <= 4, "segments: " + segments());
+        service.close();
+
+        service = open();
+        try {
+            assertEquals(new BigDecimal("1002.75"), service.calculateTotal(t));
+            // the published catalog is restored too
+            String t2 = service.activate();
+            service.scan(t2, "B");
+            assertEquals(new BigDecimal("4.25"), service.calculateTotal(t2));
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void tornRecordIsIgnored() throws IOException {
+        PointOfSaleServiceImpl service = open();
+        service.publishCatalog(getTestPricing());
+        String t = service.activate();
+        service.scanAll(t, quantities("AAAA"));
+        service.close();
+
+        List<Path> segments = segments();
+        Files.write(segments.get(segments.size() - 1), new byte[] {0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        service = open();
+        try {
+            assertEquals(new BigDecimal("4.25"), service.calculateTotal(t));
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void attachedTerminalsAreRestored() {
+        PointOfSaleServiceImpl source = new PointOfSaleServiceImpl(
+                new TerminalRegistry(60, 100, RejectionPolicy.REJECT, System::nanoTime));
+        source.publishCatalog(getTestPricing());
+        String t = source.activate();
+        source.setPricing(t, Pricing.perUnitPricing("E", new BigDecimal("2.50")));
+        source.scanAll(t, quantities("ABCDABE"));
+        TerminalState state = source.detach(t);
+        assertFalse(source.contains(t));
+        assertNull(source.detach(t));
+
+        PointOfSaleServiceImpl before = open();
+        before.attach(state);
+        assertTrue(before.contains(t));
+        before.close();
+
+        PointOfSaleServiceImpl service = open();
+        try {
+            assertEquals(new BigDecimal("15.25"), service.calculateTotal(t));
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    public void attachedBatchesShareTheirPricing() {
+        PointOfSaleServiceImpl source = new PointOfSaleServiceImpl(
+                new TerminalRegistry(60, 100, RejectionPolicy.REJECT, System::nanoTime));
+        source.publishCatalog(getTestPricing());
+        String shared = source.activate();
+        source.scanAll(shared, quantities("ABCD"));
+        String own = source.activate();
+        source.setPricing(own, Pricing.perUnitPricing("E", new BigDecimal("2.50")));
+        source.scanAll(own, quantities("AE"));
+        String sharesOwn = source.activate();
+        source.setPricing(sharesOwn, Pricing.perUnitPricing("E", new BigDecimal("2.50")));
+        source.scanAll(sharesOwn, quantities("EE"));
+
+        PointOfSaleServiceImpl before = open();
+        before.publishCatalog(getTestPricing());
+        TerminalState sharedState = source.detach(shared);
+        assertEquals(before.catalogHash(), sharedState.getPricingHash());
+        TerminalState ownState = source.detach(own);
+        TerminalState sharesOwnState = source.detach(sharesOwn);
+        assertEquals(ownState.getPricingHash(), sharesOwnState.getPricingHash());
+
+        // a state which refers to unknown pricing fails the whole batch
+        assertThrows(PointOfSaleServiceException.class, () ->
+                before.attach(Arrays.asList(sharedState.withoutPricing(), sharesOwnState.withoutPricing())));
+        assertFalse(before.contains(shared));
+
+        before.attach(Arrays.asList(sharedState.withoutPricing(), ownState, sharesOwnState.withoutPricing()));
+        assertTrue(before.contains(shared));
+        before.close();
+
+        PointOfSaleServiceImpl service = open();
+        try {
+            assertEquals(new BigDecimal("7.25"), service.calculateTotal(shared));
+            assertEquals(new BigDecimal("3.75"), service.calculateTotal(own));
+            assertEquals(new BigDecimal("5.00"), service.calculateTotal(sharesOwn));
+        } finally {
+            service.close();
+        }
+    }
+
+    private PointOfSaleServiceImpl open() {
+        return new PointOfSaleServiceImpl(
+                new TerminalRegistry(60, 100, RejectionPolicy.REJECT, System::nanoTime),
+                new FileTerminalJournal(dir, 1024, FsyncPolicy.ALWAYS, 100));
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+}
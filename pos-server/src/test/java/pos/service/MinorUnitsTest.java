@@ -0,0 +1,110 @@
+package pos.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import pos.model.Pricing;
+
+/**
+ * Test arithmetic in minor units against the same operations on {@code BigDecimal}.
+ */
+public class MinorUnitsTest {
+
+    @Test
+    public void roundingMatchesBigDecimal() {
+        Random random = new Random(42);
+        long[] values = {0, 5, -5, 15, -15, 49, 50, -50, 51, 995, -995, 1005, Long.MAX_VALUE, Long.MIN_VALUE + 1};
+        for (int round = 0; round < 10_000; round++) {
+            long value = round < values.length ? values[round] : random.nextLong() >> random.nextInt(64);
+            int fromScale = random.nextInt(MinorUnits.MAX_SCALE + 1);
+            int toScale = random.nextInt(fromScale + 1);
+            BigDecimal expected = BigDecimal.valueOf(value, fromScale).setScale(toScale, RoundingMode.HALF_UP);
+            assertEquals(expected.unscaledValue().longValue(), MinorUnits.round(value, fromScale, toScale),
+                    value + " from scale " + fromScale + " to " + toScale);
+            assertEquals(expected, MinorUnits.toDecimal(value, fromScale, toScale));
+        }
+    }
+
+    @Test
+    public void tiesAreRoundedAwayFromZero() {
+        assertEquals(new BigDecimal("0.13"), MinorUnits.toDecimal(125, 3, 2));
+        assertEquals(new BigDecimal("-0.13"), MinorUnits.toDecimal(-125, 3, 2));
+        assertEquals(new BigDecimal("0.12"), MinorUnits.toDecimal(1249, 4, 2));
+        assertEquals(new BigDecimal("1.50"), MinorUnits.toDecimal(15, 1, 2));
+    }
+
+    @Test
+    public void cartTotalsMatchBigDecimal() {
+        // scales which do not fit into minor units make their products fall back to BigDecimal
+        int[] scales = {0, 1, 2, 3, 4, MinorUnits.MAX_SCALE + 2};
+        Random random = new Random(42);
+        for (PricingStrategy strategy : PricingStrategy.values()) {
+            for (int round = 0; round < 200; round++) {
+                List<Pricing> pricings = new ArrayList<>();
+                for (int product = 0; product < 10; product++) {
+                    String code = "MU" + product;
+                    int scale = scales[random.nextInt(scales.length)];
+                    pricings.add(new Pricing(code, 1, price(random, scale)));
+                    for (int tiers = random.nextInt(3); tiers > 0; tiers--) {
+                        pricings.add(new Pricing(code, 2 + random.nextInt(9), price(random, scales[random.nextInt(scales.length)])));
+                    }
+                }
+                PriceCatalog catalog = PriceCatalog.empty(strategy).withPricing(pricings.toArray(new Pricing[0]));
+                PointOfSaleTerminalImpl terminal = new PointOfSaleTerminalImpl(catalog);
+
+                Map<String, Long> cart = new HashMap<>();
+                for (int scan = random.nextInt(60); scan >= 0; scan--) {
+                    String code = "MU" + random.nextInt(10);
+                    terminal.scan(code);
+                    cart.merge(code, 1L, Long::sum);
+                    if (random.nextInt(8) == 0) {
+                        assertEquals(expectedTotal(strategy, catalog, cart), terminal.subtotal(), strategy + " " + cart);
+                    }
+                }
+                assertEquals(expectedTotal(strategy, catalog, cart), terminal.subtotal(), strategy + " " + cart);
+
+                for (Map.Entry<String, Long> line : cart.entrySet()) {
+                    ProductPricing pricing = catalog.get(line.getKey());
+                    if (pricing.isCompiled()) {
+                        BigDecimal expected = strategy.decimalLineTotal(pricing, line.getValue());
+                        assertEquals(0, expected.compareTo(BigDecimal.valueOf(
+                                strategy.lineTotal(pricing, line.getValue()), pricing.scale())), strategy + " " + line);
+                    }
+                }
+            }
+        }
+    }
+
+    private static BigDecimal price(Random random, int scale) {
+        return new BigDecimal(BigInteger.valueOf(random.nextInt(100_000)), scale);
+    }
+
+    private static BigDecimal expectedTotal(PricingStrategy strategy, PriceCatalog catalog, Map<String, Long> cart) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (Map.Entry<String, Long> line : cart.entrySet()) {
+            total = total.add(strategy.decimalLineTotal(catalog.get(line.getKey()), line.getValue()));
+        }
+        return total.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    @Test
+    public void overflowIsDetected() {
+        assertThrows(ArithmeticException.class, () -> MinorUnits.add(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> MinorUnits.subtract(Long.MIN_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> MinorUnits.multiply(Long.MAX_VALUE / 2, 3));
+        assertThrows(ArithmeticException.class, () -> MinorUnits.round(Long.MAX_VALUE, 0, 2));
+        // the decimal is still returned, when it does not fit into minor units
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE).setScale(2), MinorUnits.toDecimal(Long.MAX_VALUE, 0, 2));
+    }
+
+}
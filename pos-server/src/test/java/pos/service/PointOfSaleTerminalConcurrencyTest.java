@@ -0,0 +1,159 @@
+package pos.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import pos.metrics.Metrics;
+import pos.model.PointOfSaleTerminal;
+import pos.model.PointOfSaleTerminalException;
+import pos.model.Pricing;
+
+/**
+ * Stress test of a single POS terminal used by many threads at once.
+ */
+public class PointOfSaleTerminalConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int SCANS_PER_THREAD = 20_000;
+
+    @Test
+    public void concurrentScansAreNotLost() throws Exception {
+        PointOfSaleTerminal terminal = new PointOfSaleTerminalImpl();
+        terminal.setPricing(Pricing.perUnitPricing("A", new BigDecimal("1.00")));
+
+        runConcurrently(threadNo -> {
+            for (int i = 0; i < SCANS_PER_THREAD; i++) {
+                if (i % 2 == 0) {
+                    terminal.scan("A");
+                } else {
+                    terminal.scanAll(Collections.singletonMap("A", 1));
+                }
+            }
+        });
+
+        assertEquals(new BigDecimal(THREADS * SCANS_PER_THREAD).setScale(2), terminal.calculateTotal());
+    }
+
+    @Test
+    public void pricingUpdatesDoNotDisturbScans() throws Exception {
+        PointOfSaleTerminal terminal = new PointOfSaleTerminalImpl();
+        terminal.setPricing(Pricing.perUnitPricing("A", new BigDecimal("1.00")));
+
+        runConcurrently(threadNo -> {
+            for (int i = 0; i < SCANS_PER_THREAD; i++) {
+                // every thread adds its own products, and scans them right away
+                String code = "P" + threadNo + "-" + (i % 100);
+                if (i < 100) {
+                    terminal.setPricing(Pricing.perUnitPricing(code, new BigDecimal("0.01")));
+                }
+                terminal.scan(code);
+                terminal.scan("A");
+            }
+        });
+
+        BigDecimal expected = new BigDecimal(THREADS * SCANS_PER_THREAD)
+                .add(new BigDecimal("0.01").multiply(new BigDecimal(THREADS * SCANS_PER_THREAD)));
+        assertEquals(expected.setScale(2), terminal.calculateTotal());
+    }
+
+    @Test
+    public void scansRacingReleaseAreEitherInTheCartOrFail() throws Exception {
+        PointOfSaleTerminalImpl terminal = new PointOfSaleTerminalImpl();
+        terminal.setPricing(Pricing.perUnitPricing("A", new BigDecimal("1.00")));
+        AtomicLong scanned = new AtomicLong();
+        AtomicReference<Map<String, Long>> cart = new AtomicReference<>();
+
+        runConcurrently(threadNo -> {
+            if (threadNo == 0) {
+                while (scanned.get() < SCANS_PER_THREAD) {
+                    Thread.yield();
+                }
+                cart.set(terminal.releaseCart());
+                return;
+            }
+            try {
+                while (true) {
+                    terminal.scan("A");
+                    scanned.incrementAndGet();
+                }
+            } catch (PointOfSaleTerminalException e) {
+                // the terminal is closed
+            }
+        });
+
+        assertEquals(Long.valueOf(scanned.get()), cart.get().get("A"));
+    }
+
+    @Test
+    public void scansRacingTotalAreEitherInTheTotalOrFail() throws Exception {
+        PointOfSaleServiceImpl service = new PointOfSaleServiceImpl(
+                new TerminalRegistry(TimeUnit.MINUTES.toSeconds(1), 100, TerminalRegistry.RejectionPolicy.REJECT, System::nanoTime),
+                TerminalJournal.DISABLED, new Metrics(), PointOfSaleServiceImpl.DEFAULT_IMPORT_BATCH_SIZE);
+        String id = service.activate();
+        service.setPricing(id, Pricing.perUnitPricing("A", new BigDecimal("1.00")));
+        AtomicLong scanned = new AtomicLong();
+        AtomicReference<BigDecimal> total = new AtomicReference<>();
+
+        runConcurrently(threadNo -> {
+            if (threadNo == 0) {
+                while (scanned.get() < SCANS_PER_THREAD) {
+                    Thread.yield();
+                }
+                total.set(service.calculateTotal(id));
+                return;
+            }
+            try {
+                while (true) {
+                    service.scan(id, "A");
+                    scanned.incrementAndGet();
+                }
+            } catch (PointOfSaleTerminalException | PointOfSaleServiceException e) {
+                // the terminal is closed, or it is not registered anymore
+            }
+        });
+
+        assertEquals(new BigDecimal(scanned.get()).setScale(2), total.get());
+    }
+
+    private static void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int threadNo = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(threadNo);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+        void run(int threadNo);
+    }
+
+}
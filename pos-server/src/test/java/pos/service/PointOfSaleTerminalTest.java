@@ -4,12 +4,17 @@ import static org.junit.jupiter.api.Assertions.*;
 import static pos.test.TestHelper.*;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 
 import pos.model.PointOfSaleTerminal;
+import pos.model.PointOfSaleTerminalException;
 import pos.model.Pricing;
 
 /**
@@ -51,6 +56,132 @@ public class PointOfSaleTerminalTest {
         assertEquals(new BigDecimal("24.00"), total);
     }
     
+    @Test
+    public void scanAllIsTheSameAsScan() {
+        for (Map.Entry<String, BigDecimal> e : testShoppingCarts().entrySet()) {
+            PointOfSaleTerminal terminal = getTerminal();
+            terminal.setPricing(getTestPricing());
+            terminal.scanAll(quantities(e.getKey()));
+            assertEquals(e.getValue(), terminal.calculateTotal());
+        }
+    }
+    
+    @Test
+    public void scanAllWithUnknownProductScansNothing() {
+        PointOfSaleTerminal terminal = getTerminal();
+        terminal.setPricing(getTestPricing());
+        assertThrows(PointOfSaleTerminalException.class, () -> terminal.scanAll(quantities("ABX")));
+        assertThrows(PointOfSaleTerminalException.class, 
+                () -> terminal.scanAll(Collections.singletonMap("A", 0)));
+        assertEquals(new BigDecimal("0.00"), terminal.calculateTotal());
+    }
+    
+    @Test
+    public void calculateBulkQuantities() {
+        PointOfSaleTerminal terminal = getTerminal();
+        terminal.setPricing(getTestPricing());
+        for (int i = 0; i < 10_000; i++) {
+            terminal.scan("B");
+        }
+        assertEquals(new BigDecimal("42500.00"), terminal.calculateTotal());
+    }
+    
+    @Test
+    public void totalsMatchBigDecimalArithmetic() {
+        Random random = new Random(42);
+        BigDecimal[] prices = {
+                new BigDecimal("0.333"), new BigDecimal("1.005"), new BigDecimal("19.99"),
+                new BigDecimal(0.1), new BigDecimal("1E+2"), new BigDecimal("92233720368547758.07")
+        };
+        for (int round = 0; round < 200; round++) {
+            List<Pricing> pricings = new ArrayList<>();
+            for (String code : new String[] {"X", "Y", "Z"}) {
+                for (int tier = 0; tier < 1 + random.nextInt(4); tier++) {
+                    int count = tier == 0 ? 1 : 2 + random.nextInt(10);
+                    pricings.add(new Pricing(code, count, prices[random.nextInt(prices.length)]));
+                }
+            }
+            PointOfSaleTerminal terminal = getTerminal();
+            terminal.setPricing(pricings.toArray(new Pricing[0]));
+            StringBuilder scans = new StringBuilder();
+            for (int i = 0; i < random.nextInt(100); i++) {
+                scans.append("XYZ".charAt(random.nextInt(3)));
+            }
+            scan(terminal, scans.toString());
+            assertEquals(referenceTotal(pricings, scans.toString()), terminal.calculateTotal());
+        }
+    }
+    
+    @Test
+    public void subtotalFollowsEveryScan() {
+        Random random = new Random(7);
+        List<Pricing> pricings = new ArrayList<>();
+        pricings.add(Pricing.perUnitPricing("X", new BigDecimal("0.333")));
+        pricings.add(Pricing.volumePricing("X", 3, new BigDecimal("0.90")));
+        pricings.add(Pricing.perUnitPricing("Y", new BigDecimal("92233720368547758.07")));
+        pricings.add(Pricing.volumePricing("Y", 2, new BigDecimal("1E+2")));
+        pricings.add(Pricing.perUnitPricing("Z", new BigDecimal("19.99")));
+        PointOfSaleTerminal terminal = getTerminal();
+        terminal.setPricing(pricings.toArray(new Pricing[0]));
+        
+        StringBuilder scans = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            String code = "XYZ".charAt(random.nextInt(3)) + "";
+            if (random.nextBoolean()) {
+                terminal.scan(code);
+                scans.append(code);
+            } else {
+                terminal.scanAll(Collections.singletonMap(code, 2));
+                scans.append(code).append(code);
+            }
+            assertEquals(referenceTotal(pricings, scans.toString()), terminal.subtotal());
+        }
+        assertEquals(referenceTotal(pricings, scans.toString()), terminal.calculateTotal());
+    }
+    
+    @Test
+    public void subtotalFollowsPricingChanges() {
+        PointOfSaleTerminal terminal = getTerminal();
+        terminal.setPricing(Pricing.perUnitPricing("Z", new BigDecimal("2.00")));
+        assertEquals(new BigDecimal("0.00"), terminal.subtotal());
+        scan(terminal, "ZZ");
+        assertEquals(new BigDecimal("4.00"), terminal.subtotal());
+        
+        terminal.setPricing(Pricing.volumePricing("Z", 2, new BigDecimal("3.00")));
+        assertEquals(new BigDecimal("3.00"), terminal.subtotal());
+        scan(terminal, "Z");
+        assertEquals(new BigDecimal("5.00"), terminal.subtotal());
+        assertEquals(new BigDecimal("5.00"), terminal.calculateTotal());
+    }
+    
+    @Test
+    public void invalidPricingThrows() {
+        PointOfSaleTerminal terminal = getTerminal();
+        assertThrows(PointOfSaleTerminalException.class, 
+                () -> terminal.setPricing(Pricing.volumePricing("A", 0, BigDecimal.ONE)));
+        assertThrows(PointOfSaleTerminalException.class, 
+                () -> terminal.setPricing(Pricing.perUnitPricing("A", null)));
+    }
+    
+    // the original implementation, which applies one pricing at a time with BigDecimal arithmetic
+    private static BigDecimal referenceTotal(List<Pricing> pricings, String scans) {
+        BigDecimal total = new BigDecimal(0);
+        for (String code : new String[] {"X", "Y", "Z"}) {
+            int count = (int) scans.chars().filter(c -> c == code.charAt(0)).count();
+            Map<Integer, Pricing> tiers = new HashMap<>();
+            pricings.stream().filter(p -> p.getProductCode().equals(code)).forEach(p -> tiers.putIfAbsent(p.getCount(), p));
+            List<Pricing> sorted = new ArrayList<>(tiers.values());
+            sorted.sort((p1, p2) -> p2.getCount() - p1.getCount());
+            for (Pricing p : sorted) {
+                while (p.getCount() <= count) {
+                    total = total.add(p.getPrice());
+                    count -= p.getCount();
+                }
+            }
+        }
+        return total.setScale(2, BigDecimal.ROUND_HALF_UP);
+    }
+    
     private static PointOfSaleTerminal getTerminal() {
         return new PointOfSaleTerminalImpl();
     }
@@ -0,0 +1,252 @@
+package pos.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pos.test.TestHelper.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import pos.metrics.Metrics;
+import pos.model.PointOfSaleTerminalException;
+import pos.model.Pricing;
+import pos.model.PricingDelta;
+import pos.model.UnknownProductException;
+import pos.service.TerminalRegistry.RejectionPolicy;
+
+/**
+ * Test price catalog versioning and sharing.
+ */
+public class PriceCatalogTest {
+
+    @Test
+    public void catalogContainsPricedProducts() {
+        PriceCatalog catalog = PriceCatalog.of(getTestPricing());
+        assertEquals(4, catalog.size());
+        assertTrue(catalog.contains("A"));
+        assertFalse(catalog.contains("X"));
+        assertEquals(2, catalog.get("A").size());
+        assertEquals(Integer.valueOf(3), catalog.get("A").get(0).getCount());
+    }
+
+    @Test
+    public void addingPricingCreatesNewVersion() {
+        PriceCatalog catalog = PriceCatalog.of(getTestPricing());
+        PriceCatalog updated = catalog.withPricing(Pricing.perUnitPricing("X", new BigDecimal("1.00")));
+        assertNotSame(catalog, updated);
+        assertTrue(updated.getVersion() > catalog.getVersion());
+        assertFalse(catalog.contains("X"));
+        assertTrue(updated.contains("X"));
+        assertSame(catalog.get("A"), updated.get("A"));
+    }
+
+    @Test
+    public void addingKnownPricingKeepsVersion() {
+        PriceCatalog catalog = PriceCatalog.of(getTestPricing());
+        assertSame(catalog, catalog.withPricing(getTestPricing()));
+        assertSame(catalog, catalog.withPricing());
+    }
+
+    @Test
+    public void terminalsShareCatalog() {
+        PriceCatalog catalog = PriceCatalog.of(getTestPricing());
+        PointOfSaleTerminalImpl t1 = new PointOfSaleTerminalImpl(catalog);
+        PointOfSaleTerminalImpl t2 = new PointOfSaleTerminalImpl(catalog);
+        t2.setPricing(getTestPricing());
+        assertEquals(catalog.getVersion(), t1.getCatalogVersion());
+        assertEquals(catalog.getVersion(), t2.getCatalogVersion());
+
+        scan(t1, "ABCDABA");
+        assertEquals(new BigDecimal("13.25"), t1.calculateTotal());
+    }
+
+    @Test
+    public void importedPricingIsSetInBatches() {
+        PointOfSaleServiceImpl service = newService(2);
+        String t = service.activate();
+        assertEquals(6, service.importPricing(t, Arrays.asList(getTestPricing()).iterator()));
+        scanProducts(service, t, "ABCDABA");
+        assertEquals(new BigDecimal("13.25"), service.calculateTotal(t));
+    }
+
+    @Test
+    public void invalidCatalogImportIsNotPublished() {
+        PointOfSaleServiceImpl service = newService(2);
+        Iterator<Pricing> pricings = Arrays.asList(getTestPricing()[0], new Pricing("B", 0, BigDecimal.ONE)).iterator();
+        assertThrows(PointOfSaleTerminalException.class, () -> service.importCatalog(pricings));
+
+        String t = service.activate();
+        assertThrows(PointOfSaleTerminalException.class, () -> service.scan(t, "A"));
+    }
+
+    @Test
+    public void deltasCreateNewVersion() {
+        PriceCatalog catalog = PriceCatalog.of(getTestPricing());
+        PriceCatalog updated = catalog.withDeltas(
+                PricingDelta.upsert(Pricing.volumePricing("A", 3, new BigDecimal("2.50"))),
+                PricingDelta.upsert(Pricing.volumePricing("A", 6, new BigDecimal("4.00"))),
+                PricingDelta.remove("C", 6),
+                PricingDelta.remove("D", 1),
+                PricingDelta.remove("X", 1));
+        assertTrue(updated.getVersion() > catalog.getVersion());
+        assertEquals(new BigDecimal("3"), catalog.get("A").get(0).getPrice());
+        assertEquals(3, updated.get("A").size());
+        assertEquals(new BigDecimal("2.50"), updated.get("A").get(1).getPrice());
+        assertEquals(1, updated.get("C").size());
+        assertFalse(updated.contains("D"));
+        assertNull(updated.get(catalog.get("D").product()));
+        // unchanged products are shared
+        assertSame(catalog.get("B"), updated.get("B"));
+        assertSame(updated, updated.withDeltas(PricingDelta.remove("D", 1),
+                PricingDelta.upsert(Pricing.volumePricing("A", 3, new BigDecimal("2.50")))));
+    }
+
+    @Test
+    public void invalidDeltasChangeNothing() {
+        PriceCatalog catalog = PriceCatalog.of(getTestPricing());
+        assertThrows(PointOfSaleTerminalException.class, () -> catalog.withDeltas(
+                PricingDelta.remove("A", 1), PricingDelta.upsert(new Pricing("B", 2, null))));
+        assertThrows(PointOfSaleTerminalException.class, () -> catalog.withDeltas(PricingDelta.remove("A", 0)));
+        assertThrows(PointOfSaleTerminalException.class, () -> catalog.withDeltas(new PricingDelta(null, "A", 1, null)));
+        assertEquals(2, catalog.get("A").size());
+    }
+
+    @Test
+    public void productsInCartCannotBeRemoved() {
+        PointOfSaleTerminalImpl terminal = new PointOfSaleTerminalImpl(PriceCatalog.of(getTestPricing()));
+        terminal.setPricing(Pricing.perUnitPricing("E", BigDecimal.ONE));
+        scan(terminal, "ABCDABA");
+        assertEquals(new BigDecimal("13.25"), terminal.subtotal());
+        assertThrows(PointOfSaleTerminalException.class, () -> terminal.updatePricing(
+                PricingDelta.remove("B", 1), PricingDelta.upsert(Pricing.perUnitPricing("D", BigDecimal.ONE))));
+        // none of the batch has been applied
+        assertEquals(new BigDecimal("13.25"), terminal.subtotal());
+        // tiers of products in the cart may be removed, as long as some are left
+        terminal.updatePricing(PricingDelta.remove("A", 3), PricingDelta.remove("E", 1));
+        assertEquals(new BigDecimal("14.00"), terminal.subtotal());
+        assertThrows(UnknownProductException.class, () -> terminal.scan("E"));
+        scan(terminal, "D");
+        assertEquals(new BigDecimal("14.75"), terminal.calculateTotal());
+    }
+
+    @Test
+    public void productsAreFoundByPrefixAndRange() {
+        PriceCatalog catalog = PriceCatalog.of(
+                Pricing.perUnitPricing("4006", BigDecimal.ONE),
+                Pricing.perUnitPricing("40061", BigDecimal.ONE),
+                Pricing.volumePricing("40061", 2, BigDecimal.ONE),
+                Pricing.perUnitPricing("4007", BigDecimal.ONE),
+                Pricing.perUnitPricing("500", BigDecimal.ONE),
+                Pricing.perUnitPricing("39", BigDecimal.ONE));
+        assertEquals(Arrays.asList("4006", "40061"), codes(catalog.find("4006", null, null, 10)));
+        assertEquals(Arrays.asList("4006", "40061", "4007"), codes(catalog.find("40", null, null, 10)));
+        assertEquals(Arrays.asList("4006"), codes(catalog.find("40", null, null, 1)));
+        assertEquals(Arrays.asList(), codes(catalog.find("41", null, null, 10)));
+        assertEquals(Arrays.asList("40061", "4007", "500"), codes(catalog.find("", "40060", "6", 10)));
+        assertEquals(Arrays.asList("39", "4006"), codes(catalog.find("", null, "40061", 10)));
+        assertEquals(Arrays.asList("40061"), codes(catalog.find("4006", "40061", "4007", 10)));
+        assertEquals(2, catalog.find("40061", null, null, 10).get(0).size());
+    }
+
+    @Test
+    public void catalogFindsPricingByNumber() {
+        List<Pricing> pricings = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            pricings.add(Pricing.perUnitPricing("N" + i, BigDecimal.ONE));
+        }
+        PriceCatalog catalog = PriceCatalog.of(pricings.toArray(new Pricing[0]));
+        for (Pricing p : pricings) {
+            ProductPricing found = catalog.get(ProductIndex.GLOBAL.find(p.getProductCode()));
+            assertSame(catalog.get(p.getProductCode()), found);
+        }
+        assertEquals(-1, ProductIndex.GLOBAL.find("not priced"));
+        assertNull(PriceCatalog.EMPTY.get(0));
+    }
+
+    @Test
+    public void productIndexIsLimited() {
+        ProductIndex index = new ProductIndex(2);
+        ProductIndex.Code a = index.intern("a");
+        assertEquals(0, a.number());
+        assertEquals(1, index.intern("b").number());
+        assertSame(a, index.intern("a"));
+        assertEquals(0, index.find("a"));
+        assertEquals("a", index.codeOf(0));
+        // "b" is not referenced, so that its number is reused once it has been collected
+        ProductIndex.Code c = null;
+        for (int i = 0; i < 100 && c == null; i++) {
+            System.gc();
+            try {
+                c = index.intern("c");
+            } catch (PointOfSaleTerminalException e) {
+                assertEquals(2, index.size());
+            }
+        }
+        assertNotNull(c);
+        assertEquals(1, c.number());
+        assertEquals(-1, index.find("b"));
+        assertEquals("c", index.codeOf(1));
+        assertThrows(PointOfSaleTerminalException.class, () -> index.intern("d"));
+        assertEquals(2, index.size());
+        assertSame(a, index.intern("a"));
+    }
+
+    @Test
+    public void codeIndexFindsExactCodes() {
+        // the codes are referenced, so that their numbers stay in use
+        ProductIndex.Code[] codes = {ProductIndex.GLOBAL.intern("b"), ProductIndex.GLOBAL.intern("a\uffff"),
+                ProductIndex.GLOBAL.intern("a"), ProductIndex.GLOBAL.intern("c")};
+        int[] products = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            products[i] = codes[i].number();
+        }
+        ProductCodeIndex index = ProductCodeIndex.of(products);
+        assertEquals("a", index.code(0));
+        assertEquals(3, index.find("c"));
+        assertEquals(-1, index.find("bb"));
+        assertEquals(2, index.prefixEnd("a"));
+        assertEquals(4, index.prefixEnd("\uffff"));
+        assertEquals("b", ProductCodeIndex.successor("a\uffff"));
+        assertNull(ProductCodeIndex.successor(""));
+        assertEquals("b", codes[0].code());
+    }
+
+    @Test
+    public void serviceFindsCatalogAndTerminalPricing() {
+        PointOfSaleServiceImpl service = newService(10);
+        service.publishCatalog(getTestPricing());
+        assertEquals(2, service.findCatalogPricing("A", null, null, 10).length);
+        assertEquals(3, service.findCatalogPricing("", "B", "D", 10).length);
+        String t = service.activate();
+        service.setPricing(t, Pricing.perUnitPricing("AB", BigDecimal.ONE));
+        assertEquals(3, service.findPricing(t, "A", null, null, 10).length);
+        assertEquals(0, service.findCatalogPricing("AB", null, null, 10).length);
+        assertThrows(PointOfSaleServiceException.class, () -> service.findCatalogPricing("", null, null, 0));
+    }
+
+    private static List<String> codes(List<ProductPricing> pricings) {
+        List<String> codes = new ArrayList<>();
+        for (ProductPricing p : pricings) {
+            codes.add(p.get(0).getProductCode());
+        }
+        return codes;
+    }
+
+    private static PointOfSaleServiceImpl newService(int importBatchSize) {
+        return new PointOfSaleServiceImpl(
+                new TerminalRegistry(TimeUnit.MINUTES.toSeconds(1), 100, RejectionPolicy.REJECT, System::nanoTime),
+                TerminalJournal.DISABLED, new Metrics(), importBatchSize);
+    }
+
+    private static void scanProducts(PointOfSaleServiceImpl service, String terminalId, String productCodes) {
+        for (char c : productCodes.toCharArray()) {
+            service.scan(terminalId, c + "");
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package pos.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pos.test.TestHelper.*;
+
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import pos.metrics.Metrics;
+import pos.model.PointOfSaleTerminalException;
+import pos.model.Pricing;
+import pos.model.PricingDigest;
+import pos.model.UnknownProductException;
+import pos.service.TerminalRegistry.RejectionPolicy;
+
+/**
+ * Test caching of pricing by its content hash.
+ */
+public class PricingCacheTest {
+
+    private static final Pricing E = Pricing.perUnitPricing("E", new BigDecimal("2.50"));
+
+    @Test
+    public void cachedPricingIsSetByHash() {
+        PointOfSaleServiceImpl service = newService();
+        service.publishCatalog(getTestPricing());
+        String t1 = service.activate();
+        String t2 = service.activate();
+        String hash = service.setPricing(t1, E);
+        assertEquals(PricingDigest.of(E), hash);
+
+        assertFalse(service.setCachedPricing(t2, PricingDigest.of(getTestPricing())));
+        assertThrows(UnknownProductException.class, () -> service.scan(t2, "E"));
+        assertTrue(service.setCachedPricing(t2, hash));
+        service.scanAll(t2, quantities("ABCDABE"));
+        assertEquals(new BigDecimal("15.25"), service.calculateTotal(t2));
+        assertThrows(PointOfSaleServiceException.class, () -> service.setCachedPricing("unknown", hash));
+    }
+
+    @Test
+    public void terminalsShareCatalogOfCachedPricing() {
+        PriceCatalog catalog = PriceCatalog.of(getTestPricing());
+        PricingCache cache = new PricingCache(10);
+        PointOfSaleTerminalImpl t1 = new PointOfSaleTerminalImpl(catalog);
+        PointOfSaleTerminalImpl t2 = new PointOfSaleTerminalImpl(catalog);
+        t1.setPricing(cache.put(E));
+        t2.setPricing(cache.get(PricingDigest.of(E)));
+        assertNotEquals(catalog.getVersion(), t1.getCatalogVersion());
+        assertEquals(t1.getCatalogVersion(), t2.getCatalogVersion());
+
+        // pricing added to another catalog creates another version
+        PointOfSaleTerminalImpl t3 = new PointOfSaleTerminalImpl(PriceCatalog.of(getTestPricing()));
+        t3.setPricing(cache.get(PricingDigest.of(E)));
+        assertNotEquals(t1.getCatalogVersion(), t3.getCatalogVersion());
+        assertTrue(t3.getCatalog().contains("E"));
+    }
+
+    @Test
+    public void cachedPricingDoesNotKeepCatalogs() throws InterruptedException {
+        PricingCache.Entry entry = new PricingCache(10).put(E);
+        PriceCatalog catalog = PriceCatalog.of(getTestPricing());
+        PriceCatalog result = entry.addTo(catalog);
+        assertSame(result, entry.addTo(catalog));
+        WeakReference<PriceCatalog> base = new WeakReference<>(catalog);
+        WeakReference<PriceCatalog> compiled = new WeakReference<>(result);
+        catalog = null;
+        result = null;
+        for (int i = 0; i < 50 && (base.get() != null || compiled.get() != null); i++) {
+            System.gc();
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertNull(base.get());
+        assertNull(compiled.get());
+    }
+
+    @Test
+    public void leastRecentlyUsedPricingIsEvicted() {
+        PricingCache cache = new PricingCache(2);
+        Pricing[] a = {Pricing.perUnitPricing("A", BigDecimal.ONE)};
+        Pricing[] b = {Pricing.perUnitPricing("B", BigDecimal.ONE)};
+        Pricing[] c = {Pricing.perUnitPricing("C", BigDecimal.ONE)};
+        PricingCache.Entry entry = cache.put(a);
+        assertSame(entry, cache.put(a));
+        cache.put(b);
+        assertSame(entry, cache.get(PricingDigest.of(a)));
+        cache.put(c);
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(PricingDigest.of(a)));
+        assertNull(cache.get(PricingDigest.of(b)));
+        assertNotNull(cache.get(PricingDigest.of(c)));
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void disabledCacheKeepsNothing() {
+        PricingCache cache = new PricingCache(0);
+        PricingCache.Entry entry = cache.put(E);
+        assertNull(entry.getHash());
+        assertEquals(0, cache.size());
+        assertNull(cache.get(PricingDigest.of(E)));
+        assertThrows(IllegalArgumentException.class, () -> new PricingCache(-1));
+    }
+
+    @Test
+    public void hashDependsOnContent() {
+        Pricing[] pricing = getTestPricing();
+        assertEquals(PricingDigest.of(pricing), PricingDigest.of(getTestPricing()));
+        assertEquals(64, PricingDigest.of(pricing).length());
+        Pricing[] reordered = pricing.clone();
+        reordered[0] = pricing[1];
+        reordered[1] = pricing[0];
+        assertNotEquals(PricingDigest.of(pricing), PricingDigest.of(reordered));
+        assertNotEquals(PricingDigest.of(E), PricingDigest.of(Pricing.perUnitPricing("E", new BigDecimal("2.51"))));
+    }
+
+    @Test
+    public void invalidPricingIsNotCached() {
+        PointOfSaleServiceImpl service = newService();
+        String t = service.activate();
+        Pricing invalid = new Pricing("X", 0, BigDecimal.ONE);
+        assertThrows(PointOfSaleTerminalException.class, () -> service.setPricing(t, invalid));
+        assertFalse(service.setCachedPricing(t, PricingDigest.of(invalid)));
+    }
+
+    private static PointOfSaleServiceImpl newService() {
+        return new PointOfSaleServiceImpl(
+                new TerminalRegistry(TimeUnit.MINUTES.toSeconds(1), 100, RejectionPolicy.REJECT, System::nanoTime),
+                TerminalJournal.DISABLED, new Metrics(), PointOfSaleServiceImpl.DEFAULT_IMPORT_BATCH_SIZE);
+    }
+
+}
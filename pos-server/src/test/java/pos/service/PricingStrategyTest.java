@@ -0,0 +1,156 @@
+package pos.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static pos.test.TestHelper.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import pos.model.Pricing;
+
+/**
+ * Test greedy and optimal pricing of product quantities.
+ */
+public class PricingStrategyTest {
+
+    @Test
+    public void optimalPricingCombinesSmallerPacks() {
+        ProductPricing pricing = pricing(
+                Pricing.perUnitPricing("X", new BigDecimal("1.00")),
+                Pricing.volumePricing("X", 3, new BigDecimal("2.00")),
+                Pricing.volumePricing("X", 5, new BigDecimal("3.50")));
+        // greedy: 5 + 1 = 4.50, optimal: 3 + 3 = 4.00
+        assertEquals(new BigDecimal("4.50"), PricingStrategy.GREEDY.decimalLineTotal(pricing, 6));
+        assertEquals(new BigDecimal("4.00"), PricingStrategy.OPTIMAL.decimalLineTotal(pricing, 6));
+        assertEquals(400, PricingStrategy.OPTIMAL.lineTotal(pricing, 6));
+    }
+
+    @Test
+    public void optimalPricingMatchesFullTable() {
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            List<Pricing> tiers = new ArrayList<>();
+            for (int tier = 0; tier < 1 + random.nextInt(4); tier++) {
+                int count = 1 + random.nextInt(12);
+                tiers.add(new Pricing("X", count, BigDecimal.valueOf(1 + random.nextInt(5000), 2)));
+            }
+            ProductPricing pricing = pricing(tiers.toArray(new Pricing[0]));
+            long[] expected = cheapestPrices(pricing, 5000);
+            for (int q = 0; q < expected.length; q++) {
+                long optimal = PricingStrategy.OPTIMAL.lineTotal(pricing, q);
+                assertEquals(expected[q], optimal, "quantity " + q + " of " + tiers);
+                assertEquals(BigDecimal.valueOf(optimal, 2), PricingStrategy.OPTIMAL.decimalLineTotal(pricing, q).setScale(2));
+                assertTrue(optimal <= PricingStrategy.GREEDY.lineTotal(pricing, q));
+            }
+        }
+    }
+
+    @Test
+    public void largeQuantitiesArePricedByPeriod() {
+        ProductPricing pricing = pricing(
+                Pricing.perUnitPricing("X", new BigDecimal("1.00")),
+                Pricing.volumePricing("X", 7, new BigDecimal("5.00")),
+                Pricing.volumePricing("X", 11, new BigDecimal("8.00")));
+        long[] expected = cheapestPrices(pricing, 1_000_000);
+        for (int q = 999_000; q < expected.length; q++) {
+            assertEquals(expected[q], PricingStrategy.OPTIMAL.lineTotal(pricing, q));
+        }
+        // 7-packs are the cheapest per unit
+        long quantity = 7L * Integer.MAX_VALUE;
+        assertEquals(500L * Integer.MAX_VALUE, PricingStrategy.OPTIMAL.lineTotal(pricing, quantity));
+    }
+
+    @Test
+    public void memoGrowsUpToLargestQuantityPriced() {
+        ProductPricing pricing = pricing(
+                Pricing.perUnitPricing("X", new BigDecimal("1.00")),
+                Pricing.volumePricing("X", 1000, new BigDecimal("900.00")));
+        OptimalPricing.MemoBudget budget = new OptimalPricing.MemoBudget(1L << 20);
+        OptimalPricing optimal = new OptimalPricing(pricing, budget);
+        assertEquals(0, optimal.memoSize());
+        assertEquals(100, optimal.lineTotal(1));
+        assertTrue(optimal.memoSize() <= 16);
+        assertEquals(90_000 + 100, optimal.lineTotal(1001));
+        assertTrue(optimal.memoSize() < 4096);
+        assertEquals(optimal.memoSize() * (long) Long.BYTES, budget.usedBytes());
+    }
+
+    @Test
+    public void exhaustedBudgetPricesWithoutMemo() {
+        ProductPricing pricing = pricing(
+                Pricing.perUnitPricing("X", new BigDecimal("1.00")),
+                Pricing.volumePricing("X", 7, new BigDecimal("5.00")),
+                Pricing.volumePricing("X", 11, new BigDecimal("8.00")));
+        OptimalPricing memoized = new OptimalPricing(pricing, new OptimalPricing.MemoBudget(1L << 20));
+        OptimalPricing limited = new OptimalPricing(pricing, new OptimalPricing.MemoBudget(16 * Long.BYTES));
+        long[] expected = cheapestPrices(pricing, 1000);
+        for (int q = 0; q < expected.length; q++) {
+            assertEquals(expected[q], memoized.lineTotal(q));
+            assertEquals(expected[q], limited.lineTotal(q));
+            assertEquals(0, BigDecimal.valueOf(expected[q], 2).compareTo(limited.decimalLineTotal(q)));
+        }
+        assertEquals(16, limited.memoSize());
+    }
+
+    @Test
+    public void unitsNotCoveredByPricingAreFree() {
+        ProductPricing pricing = pricing(
+                Pricing.volumePricing("X", 3, new BigDecimal("2.00")),
+                Pricing.volumePricing("X", 5, new BigDecimal("3.00")));
+        assertEquals(0, PricingStrategy.OPTIMAL.lineTotal(pricing, 2));
+        // one 5-pack and a free unit is cheaper than two 3-packs
+        assertEquals(300, PricingStrategy.OPTIMAL.lineTotal(pricing, 6));
+        // two 3-packs and two free units are cheaper than a 5-pack and a 3-pack
+        assertEquals(400, PricingStrategy.OPTIMAL.lineTotal(pricing, 8));
+    }
+
+    @Test
+    public void catalogPricesCartsWithItsStrategy() {
+        Pricing[] pricings = {
+                Pricing.perUnitPricing("X", new BigDecimal("1.00")),
+                Pricing.volumePricing("X", 3, new BigDecimal("2.00")),
+                Pricing.volumePricing("X", 5, new BigDecimal("3.50"))
+        };
+        PriceCatalog greedy = PriceCatalog.empty(PricingStrategy.GREEDY).withPricing(pricings);
+        PriceCatalog optimal = PriceCatalog.empty(PricingStrategy.OPTIMAL).withPricing(pricings);
+        assertSame(PriceCatalog.EMPTY, PriceCatalog.empty(PricingStrategy.GREEDY));
+        assertEquals(PricingStrategy.OPTIMAL, optimal.withPricing(getTestPricing()).getStrategy());
+        assertEquals(PricingStrategy.OPTIMAL, optimal.toBuilder().build().getStrategy());
+
+        PointOfSaleTerminalImpl t1 = new PointOfSaleTerminalImpl(greedy);
+        PointOfSaleTerminalImpl t2 = new PointOfSaleTerminalImpl(optimal);
+        scan(t1, "XXXXXX");
+        scan(t2, "XXXXXX");
+        assertEquals(new BigDecimal("4.50"), t1.calculateTotal());
+        assertEquals(new BigDecimal("4.00"), t2.calculateTotal());
+    }
+
+    private static ProductPricing pricing(Pricing... tiers) {
+        ProductPricing pricing = ProductPricing.of(tiers[0]);
+        for (int i = 1; i < tiers.length; i++) {
+            pricing = pricing.with(tiers[i]);
+        }
+        return pricing;
+    }
+
+    // cheapest prices in minor units by dynamic programming over all the quantities
+    private static long[] cheapestPrices(ProductPricing pricing, int quantities) {
+        long[] prices = new long[quantities];
+        for (int q = 0; q < quantities; q++) {
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < pricing.size(); i++) {
+                int count = pricing.get(i).getCount();
+                if (count <= q) {
+                    min = Math.min(min, pricing.get(i).getPrice().movePointRight(2).longValueExact() + prices[q - count]);
+                }
+            }
+            prices[q] = min == Long.MAX_VALUE ? 0 : min;
+        }
+        return prices;
+    }
+
+}
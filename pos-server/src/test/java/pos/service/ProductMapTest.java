@@ -0,0 +1,73 @@
+package pos.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import pos.model.Pricing;
+
+/**
+ * Test the persistent map of catalog pricings.
+ */
+public class ProductMapTest {
+
+    @Test
+    public void mapBehavesLikeHashMap() {
+        List<ProductPricing> pricings = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            pricings.add(ProductPricing.of(new Pricing("PM" + i, 1, BigDecimal.ONE)));
+        }
+        ProductMap map = ProductMap.EMPTY;
+        Map<Integer, ProductPricing> expected = new HashMap<>();
+        List<ProductMap> versions = new ArrayList<>();
+        List<Map<Integer, ProductPricing>> expectedVersions = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            ProductPricing p = pricings.get(random.nextInt(pricings.size()));
+            if (random.nextInt(3) == 0) {
+                expected.remove(p.product());
+                map = map.without(p.product());
+            } else {
+                expected.put(p.product(), p);
+                map = map.with(p);
+            }
+            assertEquals(expected.size(), map.size());
+            if (i % 10_000 == 0) {
+                versions.add(map);
+                expectedVersions.add(new HashMap<>(expected));
+            }
+        }
+        versions.add(ProductMap.of(expected.values()));
+        expectedVersions.add(expected);
+
+        // earlier versions are not changed by later ones
+        for (int v = 0; v < versions.size(); v++) {
+            ProductMap version = versions.get(v);
+            for (ProductPricing p : pricings) {
+                assertSame(expectedVersions.get(v).get(p.product()), version.get(p.product()));
+            }
+            Map<Integer, ProductPricing> entries = new HashMap<>();
+            version.forEach(p -> entries.put(p.product(), p));
+            assertEquals(expectedVersions.get(v), entries);
+        }
+    }
+
+    @Test
+    public void unchangedMapIsReturned() {
+        ProductPricing a = ProductPricing.of(new Pricing("PMA", 1, BigDecimal.ONE));
+        ProductPricing b = ProductPricing.of(new Pricing("PMB", 1, BigDecimal.ONE));
+        ProductMap map = ProductMap.EMPTY.with(a);
+        assertSame(map, map.with(a));
+        assertSame(map, map.without(b.product()));
+        assertSame(ProductMap.EMPTY, map.without(a.product()));
+        assertNull(map.get(b.product()));
+    }
+
+}
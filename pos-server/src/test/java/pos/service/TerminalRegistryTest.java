@@ -0,0 +1,105 @@
+package pos.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import pos.model.PointOfSaleTerminal;
+import pos.service.TerminalRegistry.RejectionPolicy;
+
+/**
+ * Test idle terminal eviction and terminal limits of the registry.
+ */
+public class TerminalRegistryTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void idleTerminalsAreEvicted() {
+        TerminalRegistry registry = new TerminalRegistry(60, 10, RejectionPolicy.REJECT, clock::get);
+        PointOfSaleTerminal idle = new PointOfSaleTerminalImpl();
+        PointOfSaleTerminal active = new PointOfSaleTerminalImpl();
+        registry.add(idle);
+        registry.add(active);
+
+        advance(45);
+        assertSame(active, registry.get(active.getId()));
+        advance(30);
+        assertEquals(1, registry.sweep());
+
+        assertNull(registry.get(idle.getId()));
+        assertSame(active, registry.get(active.getId()));
+        assertEquals(1, registry.size());
+        assertEquals(1, registry.getIdleEvictions());
+    }
+
+    @Test
+    public void fullRegistryRejectsTerminals() {
+        TerminalRegistry registry = new TerminalRegistry(60, 2, RejectionPolicy.REJECT, clock::get);
+        registry.add(new PointOfSaleTerminalImpl());
+        PointOfSaleTerminal t = new PointOfSaleTerminalImpl();
+        registry.add(t);
+        assertThrows(TerminalLimitExceededException.class, () -> registry.add(new PointOfSaleTerminalImpl()));
+        assertEquals(1, registry.getRejections());
+
+        registry.remove(t.getId());
+        assertDoesNotThrow(() -> registry.add(new PointOfSaleTerminalImpl()));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void fullRegistryEvictsLeastRecentlyUsedTerminal() {
+        TerminalRegistry registry = new TerminalRegistry(60, 2, RejectionPolicy.EVICT_LEAST_RECENTLY_USED, clock::get);
+        PointOfSaleTerminal t1 = new PointOfSaleTerminalImpl();
+        PointOfSaleTerminal t2 = new PointOfSaleTerminalImpl();
+        registry.add(t1);
+        advance(1);
+        registry.add(t2);
+        advance(1);
+        registry.get(t1.getId());
+
+        PointOfSaleTerminal t3 = new PointOfSaleTerminalImpl();
+        registry.add(t3);
+        assertNull(registry.get(t2.getId()));
+        assertSame(t1, registry.get(t1.getId()));
+        assertSame(t3, registry.get(t3.getId()));
+        assertEquals(2, registry.size());
+        assertEquals(1, registry.getCapacityEvictions());
+    }
+
+    @Test
+    public void terminalsAreEvictedInOrderOfTheirUse() {
+        TerminalRegistry registry = new TerminalRegistry(3600, 100, RejectionPolicy.EVICT_LEAST_RECENTLY_USED, clock::get);
+        List<PointOfSaleTerminal> terminals = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            PointOfSaleTerminal t = new PointOfSaleTerminalImpl();
+            registry.add(t);
+            terminals.add(t);
+            advance(1);
+        }
+        // every odd terminal is used, after the registry has been scanned for the first evictions
+        registry.add(new PointOfSaleTerminalImpl());
+        for (int i = 1; i < 100; i += 2) {
+            registry.get(terminals.get(i).getId());
+            advance(1);
+        }
+        for (int i = 0; i < 49; i++) {
+            registry.add(new PointOfSaleTerminalImpl());
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 1, registry.contains(terminals.get(i).getId()), "terminal " + i);
+        }
+        assertEquals(100, registry.size());
+        assertEquals(50, registry.getCapacityEvictions());
+    }
+
+    private void advance(long seconds) {
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+}
@@ -0,0 +1,27 @@
+package pos.service;
+
+import pos.model.PointOfSaleTerminal;
+
+/**
+ * In-process terminals for tests outside of the service package, such as tests of clients
+ * with a terminal in place of the service
+ */
+public final class TestTerminals {
+
+    private TestTerminals() {}
+
+    /**
+     * Create a terminal with no pricing, which does not belong to any service
+     */
+    public static PointOfSaleTerminal newTerminal() {
+        return new PointOfSaleTerminalImpl();
+    }
+
+    /**
+     * Close the terminal created by {@link #newTerminal()}, so that all its subsequent scans fail
+     */
+    public static void close(PointOfSaleTerminal terminal) {
+        ((PointOfSaleTerminalImpl) terminal).release();
+    }
+
+}
@@ -9,5 +9,5 @@ import org.springframework.context.annotation.Configuration;
  */
 @Configuration
 @EnableAutoConfiguration
-@ComponentScan(basePackages = {"pos.controller", "pos.service"})
+@ComponentScan(basePackages = {"pos.controller", "pos.service", "pos.metrics", "pos.cluster"})
 public class TestConfiguration {}
\ No newline at end of file
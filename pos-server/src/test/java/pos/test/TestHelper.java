@@ -3,6 +3,8 @@ package pos.test;
 import static pos.model.Pricing.*;
 
 import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import pos.model.PointOfSaleTerminal;
 import pos.model.Pricing;
@@ -20,6 +22,17 @@ public final class TestHelper {
         }
     }
     
+    /**
+     * Count how many times every product code (a single character) occurs in the string
+     */
+    public static Map<String, Integer> quantities(String s) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (int i = 0; i < s.length(); i++) {
+            quantities.merge(s.charAt(i) + "", 1, Integer::sum);
+        }
+        return quantities;
+    }
+    
     public static Pricing[] getTestPricing() {
         return new Pricing[] {
                 perUnitPricing("A", new BigDecimal(1.25)),